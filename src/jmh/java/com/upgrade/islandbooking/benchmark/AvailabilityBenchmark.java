@@ -0,0 +1,108 @@
+package com.upgrade.islandbooking.benchmark;
+
+import com.upgrade.islandbooking.domain.entity.Booking;
+import com.upgrade.islandbooking.service.AvailabilityCache;
+import com.upgrade.islandbooking.service.AvailabilityChangeBroadcaster;
+import com.upgrade.islandbooking.service.BookedEmailFilter;
+import com.upgrade.islandbooking.service.BookingMetrics;
+import com.upgrade.islandbooking.service.BookingService;
+import com.upgrade.islandbooking.service.OccupancyIndex;
+import com.upgrade.islandbooking.service.RedisOccupancyCalendar;
+import com.upgrade.islandbooking.service.SiteCatalog;
+import com.upgrade.islandbooking.util.DateUtil;
+import com.upgrade.islandbooking.vo.DateIntervalVo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Availability queries over windows of different sizes and booking densities (ratio of taken nights).
+ * The legacy benchmark is the per booking list removal done before the occupancy index, as a reference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AvailabilityBenchmark {
+
+    private static final String SITE = "default";
+    private static final int NIGHTS_PER_BOOKING = 3;
+
+    @Param({"30", "365", "1000"})
+    private int days;
+
+    @Param({"0.1", "0.5", "0.9"})
+    private double density;
+
+    private LocalDate from;
+    private LocalDate to;
+    private List<Booking> bookings;
+    private BookingService cachedService;
+    private BookingService uncachedService;
+
+    @Setup
+    public void setUp() {
+        from = LocalDate.now().plusDays(1);
+        to = from.plusDays(days);
+
+        //Each block of nights of the window is booked with the given probability
+        bookings = new ArrayList<>();
+        Random random = new Random(1);
+        for (LocalDate night = from; night.isBefore(to); night = night.plusDays(NIGHTS_PER_BOOKING)) {
+            if (random.nextDouble() < density) {
+                bookings.add(new Booking(SITE, null, night, night.plusDays(NIGHTS_PER_BOOKING)));
+            }
+        }
+
+        cachedService = createService(1000);
+        uncachedService = createService(0);
+    }
+
+    private BookingService createService(int cacheSize) {
+        OccupancyIndex occupancyIndex = new OccupancyIndex(null);
+        bookings.forEach(b -> occupancyIndex.occupy(SITE, b.getFromDate(), b.getToDate()));
+        AvailabilityCache availabilityCache = new AvailabilityCache(cacheSize);
+        return new BookingService(null, null, null, null, occupancyIndex, new RedisOccupancyCalendar(null),
+                availabilityCache,
+                new AvailabilityChangeBroadcaster(occupancyIndex, availabilityCache, null),
+                new BookingMetrics(new SimpleMeterRegistry()), new SiteCatalog(new String[]{SITE}),
+                new BookedEmailFilter(null, null, new SimpleMeterRegistry(), false, 0, 0, 0));
+    }
+
+    @Benchmark
+    public List<LocalDate> legacyGetAvailableDays() {
+        List<LocalDate> possibleDates = DateUtil.getDatesBetween(from, to);
+        for (Booking b : bookings) {
+            possibleDates = DateUtil.removeDateRange(possibleDates, b.getFromDate(), b.getToDate());
+        }
+        return possibleDates;
+    }
+
+    @Benchmark
+    public List<LocalDate> getAvailableDays() {
+        return uncachedService.getAvailableDays(SITE, from, to);
+    }
+
+    @Benchmark
+    public List<LocalDate> getAvailableDaysCached() {
+        return cachedService.getAvailableDays(SITE, from, to);
+    }
+
+    @Benchmark
+    public List<DateIntervalVo> getAvailableIntervals() {
+        return uncachedService.getAvailableIntervals(SITE, from, to);
+    }
+
+    @Benchmark
+    public void streamAvailableDays(Blackhole blackhole) {
+        uncachedService.streamAvailableDays(SITE, from, to).forEach(blackhole::consume);
+    }
+}
@@ -0,0 +1,49 @@
+package com.upgrade.islandbooking.benchmark;
+
+import com.upgrade.islandbooking.util.DateUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Date list helpers at the sizes of the availability windows
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DateUtilBenchmark {
+
+    @Param({"30", "365", "1000"})
+    private int days;
+
+    private LocalDate from;
+    private LocalDate to;
+    private List<LocalDate> dates;
+
+    @Setup
+    public void setUp() {
+        from = LocalDate.now().plusDays(1);
+        to = from.plusDays(days);
+        dates = DateUtil.getDatesBetween(from, to);
+    }
+
+    @Benchmark
+    public List<LocalDate> getDatesBetween() {
+        return DateUtil.getDatesBetween(from, to);
+    }
+
+    /**
+     * Removes a 3 nights booking in the middle of the window, as done once per booking before the occupancy index
+     */
+    @Benchmark
+    public List<LocalDate> removeDateRange() {
+        LocalDate bookingFrom = from.plusDays(days / 2);
+        return DateUtil.removeDateRange(new ArrayList<>(dates), bookingFrom, bookingFrom.plusDays(3));
+    }
+}
@@ -0,0 +1,140 @@
+package com.upgrade.islandbooking.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import com.upgrade.islandbooking.service.AuditLogger;
+import com.upgrade.islandbooking.vo.BookingReserveVo;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost for the request threads of the logging done by the booking hot path. The debug ones compare eager
+ * concatenation with parameterized messages while DEBUG is disabled (see gc.alloc.rate.norm for the allocations),
+ * the audit ones compare writing the audit line to the file right away with handing it to the asynchronous appender.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggingBenchmark {
+
+    private static final String AUDIT_FORMAT = "operation={} bookingId={} from={} to={} nights={} outcome={} error={} "
+            + "lockWaitUs={} durationUs={}";
+
+    private LoggerContext context;
+    private Logger disabledLogger;
+    private Logger syncAuditLogger;
+    private Logger asyncAuditLogger;
+    private File directory;
+
+    private BookingReserveVo request;
+    private String bookingId;
+
+    @Setup
+    public void setUp() throws IOException {
+        context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        directory = Files.createTempDirectory("logging-benchmark").toFile();
+
+        disabledLogger = logger("benchmark.disabled", Level.INFO);
+
+        syncAuditLogger = logger("benchmark.audit.sync", Level.INFO);
+        syncAuditLogger.addAppender(fileAppender("sync.log"));
+
+        //Same settings as the AsyncAudit appender of logback-spring.xml
+        AsyncAppender asyncAppender = new AsyncAppender();
+        asyncAppender.setContext(context);
+        asyncAppender.setQueueSize(8192);
+        asyncAppender.setDiscardingThreshold(0);
+        asyncAppender.setNeverBlock(true);
+        asyncAppender.addAppender(fileAppender("async.log"));
+        asyncAppender.start();
+        asyncAuditLogger = logger("benchmark.audit.async", Level.INFO);
+        asyncAuditLogger.addAppender(asyncAppender);
+
+        LocalDate from = LocalDate.now().plusDays(1);
+        request = new BookingReserveVo("javier@foo.com", "Javier", "Digruttola", from, from.plusDays(3));
+        bookingId = "0190a4b8-2c1e-7a3f-8b2d-4c5e6f708192";
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (String name : new String[]{"benchmark.audit.sync", "benchmark.audit.async"}) {
+            context.getLogger(name).detachAndStopAllAppenders();
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private Logger logger(String name, Level level) {
+        Logger logger = context.getLogger(name);
+        logger.setLevel(level);
+        logger.setAdditive(false);
+        return logger;
+    }
+
+    private Appender<ILoggingEvent> fileAppender(String fileName) {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{ISO8601} %m%n");
+        encoder.start();
+
+        FileAppender<ILoggingEvent> appender = new FileAppender<>();
+        appender.setContext(context);
+        appender.setFile(new File(directory, fileName).getAbsolutePath());
+        appender.setEncoder(encoder);
+        appender.start();
+        return appender;
+    }
+
+    /**
+     * How the hot path logged before, the message is built even though it is discarded
+     */
+    @Benchmark
+    public void debugEager() {
+        disabledLogger.debug("Creating a new booking for email " + request.getPersonEmail()
+                + " and date range " + request.getFrom() + " - " + request.getTo());
+    }
+
+    @Benchmark
+    public void debugParameterized() {
+        disabledLogger.debug("Creating a new booking for email {} and date range {} - {}", request.getPersonEmail(),
+                request.getFrom(), request.getTo());
+    }
+
+    @Benchmark
+    public void auditSync() {
+        audit(syncAuditLogger);
+    }
+
+    /**
+     * Only the enqueueing is measured, events are dropped if the writer thread falls behind
+     */
+    @Benchmark
+    public void auditAsync() {
+        audit(asyncAuditLogger);
+    }
+
+    private void audit(Logger logger) {
+        logger.info(AUDIT_FORMAT, "RESERVE", bookingId, request.getFrom(), request.getTo(), 3L,
+                AuditLogger.Outcome.SUCCESS, "-", 120L, 4500L);
+    }
+}
@@ -0,0 +1,141 @@
+package com.upgrade.islandbooking.benchmark;
+
+import com.upgrade.islandbooking.IslandBookingApplication;
+import com.upgrade.islandbooking.service.BookingService;
+import com.upgrade.islandbooking.vo.BookingReserveVo;
+import com.upgrade.islandbooking.vo.BookingUpdateVo;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reserve and update through the whole service (transaction, distributed locks and persistence) against
+ * embedded H2 and embedded Redis. Every thread works on its own nights, so it measures the cost of the path
+ * rather than the contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ReservationBenchmark {
+
+    private static final int REDIS_PORT = 6391;
+
+    private RedisServer redisServer;
+    private ConfigurableApplicationContext context;
+    private BookingService service;
+
+    private LocalDate reserveStart;
+    private final AtomicLong nextReserveNight = new AtomicLong();
+    private final AtomicInteger nextUpdateThread = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        redisServer = new RedisServer(REDIS_PORT);
+        redisServer.start();
+
+        try {
+            //As arguments, since default properties would be overridden by application.properties
+            context = new SpringApplicationBuilder(IslandBookingApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .run("--spring.redis.port=" + REDIS_PORT,
+                            "--spring.datasource.url=jdbc:h2:mem:benchmark",
+                            "--spring.jpa.show-sql=false",
+                            "--logging.level.com.upgrade.islandbooking=WARN",
+                            "--logging.level.org.hibernate=WARN");
+        } catch (RuntimeException e) {
+            redisServer.stop();
+            throw e;
+        }
+        service = context.getBean(BookingService.class);
+
+        //Far enough from the nights used by the updates
+        reserveStart = LocalDate.now().plusDays(1000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        redisServer.stop();
+    }
+
+    /**
+     * A booking per thread moved back and forth between two ranges of nights only used by that thread
+     */
+    @State(Scope.Thread)
+    public static class UpdateState {
+        private String bookingId;
+        private BookingUpdateVo first;
+        private BookingUpdateVo second;
+        private boolean moved;
+
+        @Setup(Level.Trial)
+        public void setUp(ReservationBenchmark benchmark) {
+            int thread = benchmark.nextUpdateThread.getAndIncrement();
+            LocalDate from = LocalDate.now().plusDays(1 + thread * 10L);
+            bookingId = benchmark.service.reserve(new BookingReserveVo("update" + thread + "@foo.com",
+                    "First", "Last", from, from.plusDays(2)));
+            first = new BookingUpdateVo(null, null, from, from.plusDays(2));
+            second = new BookingUpdateVo(null, null, from.plusDays(4), from.plusDays(6));
+        }
+    }
+
+    private String reserve() {
+        long night = nextReserveNight.getAndAdd(3);
+        LocalDate from = reserveStart.plusDays(night);
+        return service.reserve(new BookingReserveVo("reserve" + night + "@foo.com", "First", "Last",
+                from, from.plusDays(2)));
+    }
+
+    private boolean update(UpdateState state) {
+        state.moved = !state.moved;
+        //The service fills the missing dates of the request, so a copy is sent every time
+        BookingUpdateVo vo = state.moved ? state.second : state.first;
+        return service.update(state.bookingId, new BookingUpdateVo(null, null, vo.getFrom(), vo.getTo()));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String reserve1Thread() {
+        return reserve();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String reserve4Threads() {
+        return reserve();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String reserve16Threads() {
+        return reserve();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean update1Thread(UpdateState state) {
+        return update(state);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean update4Threads(UpdateState state) {
+        return update(state);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean update16Threads(UpdateState state) {
+        return update(state);
+    }
+}
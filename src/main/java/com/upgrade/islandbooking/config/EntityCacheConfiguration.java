@@ -0,0 +1,42 @@
+package com.upgrade.islandbooking.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Enables the second-level cache of the entities annotated with {@link org.hibernate.annotations.Cache}. It needs
+ * Redis to evict the entities changed by other nodes, so it stays disabled without it (e.g. nights table profile).
+ */
+@Configuration(proxyBeanMethods = false)
+public class EntityCacheConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityCacheConfiguration.class);
+
+    @Bean
+    public HibernatePropertiesCustomizer entityCacheCustomizer(@Value("${entity.cache.enabled}") boolean enabled,
+                                                               @Value("${entity.cache.maxSize}") int maxSize,
+                                                               @Value("${entity.cache.ttl}") long ttl,
+                                                               ObjectProvider<RedissonClient> redissonClient,
+                                                               MeterRegistry meterRegistry) {
+        return properties -> {
+            RedissonClient client = redissonClient.getIfAvailable();
+            if (!enabled || client == null) {
+                LOGGER.info("Entity cache is disabled");
+                properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, false);
+                return;
+            }
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, false);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY,
+                    new EntityCacheRegionFactory(client, maxSize, ttl, meterRegistry));
+        };
+    }
+}
@@ -0,0 +1,303 @@
+package com.upgrade.islandbooking.config;
+
+import com.upgrade.islandbooking.vo.EntityCacheInvalidationVo;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.cfg.spi.EntityDataCachingConfig;
+import org.hibernate.cache.internal.SimpleCacheKeysFactory;
+import org.hibernate.cache.spi.CacheKeysFactory;
+import org.hibernate.cache.spi.DomainDataRegion;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.cache.spi.support.DomainDataRegionTemplate;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.cache.spi.support.EntityReadWriteAccess;
+import org.hibernate.cache.spi.support.RegionFactoryTemplate;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.BaseStatusListener;
+import org.redisson.codec.SerializationCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hibernate second-level cache made of a bounded {@link EntityCacheStorage} per entity and node. Entities changed or
+ * deleted by a committed transaction are evicted from the other nodes through Redis pub/sub, with one message per
+ * transaction published before the transaction's locks are released.
+ * Only read-write entity regions are supported. The query cache is not, since invalidating the update timestamps
+ * of other nodes would make them take stale query results as up to date.
+ */
+public class EntityCacheRegionFactory extends RegionFactoryTemplate {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityCacheRegionFactory.class);
+
+    private static final String TOPIC_KEY = "entity_cache_invalidations";
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final int maxSize;
+    private final long ttl;
+    private final RTopic topic;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, EntityCacheStorage> storages = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private int messageListenerId;
+    private int statusListenerId;
+
+    public EntityCacheRegionFactory(RedissonClient redissonClient, int maxSize, long ttl,
+                                    MeterRegistry meterRegistry) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.topic = redissonClient.getTopic(TOPIC_KEY, new SerializationCodec());
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void prepareForUse(SessionFactoryOptions settings, Map configValues) {
+        messageListenerId = topic.addListener(EntityCacheInvalidationVo.class, (channel, invalidation) -> {
+            if (!nodeId.equals(invalidation.getNodeId())) {
+                LOGGER.debug("Evicting entities changed by another node: {}", invalidation.getKeys());
+                invalidation.getKeys().forEach(this::evictLocally);
+            }
+        });
+
+        //Invalidations published while this node was not subscribed are lost, so everything is evicted
+        statusListenerId = topic.addListener(new BaseStatusListener() {
+            @Override
+            public void onSubscribe(String channel) {
+                if (!subscribed.compareAndSet(false, true)) {
+                    LOGGER.info("Subscribed again to the entity cache invalidations, clearing the entity cache...");
+                    storages.values().forEach(storage -> storage.invalidate(null));
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void releaseFromUse() {
+        topic.removeListener(messageListenerId, statusListenerId);
+        storages.values().forEach(EntityCacheStorage::release);
+    }
+
+    private void evictLocally(String regionName, Set<Object> keys) {
+        EntityCacheStorage storage = storages.get(regionName);
+        if (storage == null) {
+            return;
+        }
+        if (keys == null) {
+            storage.invalidate(null);
+        } else {
+            keys.forEach(storage::invalidate);
+        }
+    }
+
+    /**
+     * Ids are the keys, each entity has its own region
+     */
+    @Override
+    protected CacheKeysFactory getImplicitCacheKeysFactory() {
+        return SimpleCacheKeysFactory.INSTANCE;
+    }
+
+    @Override
+    public DomainDataRegion buildDomainDataRegion(DomainDataRegionConfig regionConfig,
+                                                  DomainDataRegionBuildingContext buildingContext) {
+        verifyStarted();
+        return new InvalidatedRegion(regionConfig, this, createDomainDataStorageAccess(regionConfig, buildingContext),
+                getImplicitCacheKeysFactory(), buildingContext);
+    }
+
+    @Override
+    protected DomainDataStorageAccess createDomainDataStorageAccess(DomainDataRegionConfig regionConfig,
+                                                                    DomainDataRegionBuildingContext buildingContext) {
+        String regionName = regionConfig.getRegionName();
+        EntityCacheStorage storage = new EntityCacheStorage(maxSize, ttl);
+        storages.put(regionName, storage);
+        bindMetrics(regionName, storage);
+        return storage;
+    }
+
+    private void bindMetrics(String regionName, EntityCacheStorage storage) {
+        FunctionCounter.builder("entity.cache.hits", storage, EntityCacheStorage::getHits)
+                .description("Entity lookups answered from the cache, each one is a database query saved")
+                .tag("region", regionName)
+                .register(meterRegistry);
+        FunctionCounter.builder("entity.cache.misses", storage, EntityCacheStorage::getMisses)
+                .description("Entity lookups not found in the cache")
+                .tag("region", regionName)
+                .register(meterRegistry);
+        FunctionCounter.builder("entity.cache.evictions", storage, EntityCacheStorage::getEvictions)
+                .description("Entities evicted because the cache was full or they expired")
+                .tag("region", regionName)
+                .register(meterRegistry);
+        FunctionCounter.builder("entity.cache.invalidations", storage, EntityCacheStorage::getInvalidations)
+                .description("Entities evicted because another node changed them")
+                .tag("region", regionName)
+                .register(meterRegistry);
+        Gauge.builder("entity.cache.size", storage, EntityCacheStorage::size)
+                .description("Entities currently cached")
+                .tag("region", regionName)
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected StorageAccess createQueryResultsRegionStorageAccess(String regionName,
+                                                                  SessionFactoryImplementor sessionFactory) {
+        throw new CacheException("The query cache is not supported");
+    }
+
+    @Override
+    protected StorageAccess createTimestampsRegionStorageAccess(String regionName,
+                                                                SessionFactoryImplementor sessionFactory) {
+        throw new CacheException("The query cache is not supported");
+    }
+
+    /**
+     * Tells the other nodes to evict the entity, or the whole region when key is null. Within a transaction it is
+     * done once it is committed, along with the other entities it changed.
+     */
+    void invalidate(String regionName, Object key) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            Map<String, Set<Object>> keys = new HashMap<>();
+            addKey(keys, regionName, key);
+            publish(keys);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Set<Object>> keys = (Map<String, Set<Object>>) TransactionSynchronizationManager.getResource(this);
+        if (keys == null) {
+            Map<String, Set<Object>> transactionKeys = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(this, transactionKeys);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(transactionKeys);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(EntityCacheRegionFactory.this);
+                }
+            });
+            keys = transactionKeys;
+        }
+        addKey(keys, regionName, key);
+    }
+
+    //A null set stands for the whole region
+    private static void addKey(Map<String, Set<Object>> keys, String regionName, Object key) {
+        if (key == null) {
+            keys.put(regionName, null);
+        } else if (!keys.containsKey(regionName) || keys.get(regionName) != null) {
+            keys.computeIfAbsent(regionName, r -> new HashSet<>()).add(key);
+        }
+    }
+
+    //The change is already committed, so a failure only leaves the other nodes with stale entries until they expire
+    private void publish(Map<String, Set<Object>> keys) {
+        try {
+            topic.publish(new EntityCacheInvalidationVo(nodeId, keys));
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not publish the entity cache invalidation of {}", keys, e);
+        }
+    }
+
+    /**
+     * Regions whose read-write entity access tells the other nodes about the entities changed. Access strategies are
+     * generated by the super constructor, so they reach the factory through the region instead of a field.
+     */
+    private static final class InvalidatedRegion extends DomainDataRegionTemplate {
+
+        private InvalidatedRegion(DomainDataRegionConfig regionConfig, EntityCacheRegionFactory regionFactory,
+                                  DomainDataStorageAccess storageAccess, CacheKeysFactory keysFactory,
+                                  DomainDataRegionBuildingContext buildingContext) {
+            super(regionConfig, regionFactory, storageAccess, keysFactory, buildingContext);
+        }
+
+        @Override
+        protected EntityDataAccess generateReadWriteEntityAccess(EntityDataCachingConfig entityAccessConfig) {
+            return new InvalidatedEntityAccess(this, getEffectiveKeysFactory(), getCacheStorageAccess(),
+                    entityAccessConfig);
+        }
+
+        @Override
+        protected EntityDataAccess generateNonStrictReadWriteEntityAccess(EntityDataCachingConfig entityAccessConfig) {
+            throw new CacheException("Only read-write entity regions are invalidated across nodes");
+        }
+    }
+
+    /**
+     * Inserted entities are not sent, other nodes could not have them cached. Updated and deleted ones are sent when
+     * their soft lock is released, that is once the transaction is completed.
+     */
+    private static final class InvalidatedEntityAccess extends EntityReadWriteAccess {
+
+        private InvalidatedEntityAccess(DomainDataRegion region, CacheKeysFactory keysFactory,
+                                        DomainDataStorageAccess storageAccess,
+                                        EntityDataCachingConfig entityAccessConfig) {
+            super(region, keysFactory, storageAccess, entityAccessConfig);
+        }
+
+        private void invalidate(Object key) {
+            ((EntityCacheRegionFactory) getRegion().getRegionFactory()).invalidate(getRegion().getName(), key);
+        }
+
+        @Override
+        public boolean afterUpdate(SharedSessionContractImplementor session, Object key, Object value,
+                                   Object currentVersion, Object previousVersion, SoftLock lock) {
+            invalidate(key);
+            return super.afterUpdate(session, key, value, currentVersion, previousVersion, lock);
+        }
+
+        @Override
+        public void unlockItem(SharedSessionContractImplementor session, Object key, SoftLock lock) {
+            invalidate(key);
+            super.unlockItem(session, key, lock);
+        }
+
+        @Override
+        public void remove(SharedSessionContractImplementor session, Object key) {
+            invalidate(key);
+            super.remove(session, key);
+        }
+
+        @Override
+        public void removeAll(SharedSessionContractImplementor session) {
+            invalidate(null);
+            super.removeAll(session);
+        }
+
+        @Override
+        public void evict(Object key) {
+            invalidate(key);
+            super.evict(key);
+        }
+
+        @Override
+        public void evictAll() {
+            invalidate(null);
+            super.evictAll();
+        }
+    }
+}
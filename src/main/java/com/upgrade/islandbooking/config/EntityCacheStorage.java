@@ -0,0 +1,130 @@
+package com.upgrade.islandbooking.config;
+
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-local storage of a second-level cache region. It is bounded, the least recently used entries are evicted
+ * first, and entries expire ttl milliseconds after being put, which bounds how stale an entry can be if an
+ * invalidation from another node is missed.
+ */
+public class EntityCacheStorage implements DomainDataStorageAccess {
+
+    private final int maxSize;
+    private final long ttl;
+
+    private final Map<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+            if (size() > maxSize) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public EntityCacheStorage(int maxSize, long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+    }
+
+    @Override
+    public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+        Object value = get(key);
+        (value == null ? misses : hits).incrementAndGet();
+        return value;
+    }
+
+    private synchronized Object get(Object key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.putAt >= ttl) {
+            entries.remove(key);
+            evictions.incrementAndGet();
+            return null;
+        }
+        return entry.value;
+    }
+
+    @Override
+    public synchronized void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+        if (maxSize > 0) {
+            entries.put(key, new Entry(value, System.nanoTime()));
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(Object key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public synchronized void evictData() {
+        entries.clear();
+    }
+
+    @Override
+    public synchronized void evictData(Object key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Drops entries changed by another node, or all of them when key is null
+     */
+    void invalidate(Object key) {
+        invalidations.incrementAndGet();
+        if (key == null) {
+            evictData();
+        } else {
+            evictData(key);
+        }
+    }
+
+    @Override
+    public void release() {
+        evictData();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long putAt;
+
+        private Entry(Object value, long putAt) {
+            this.value = value;
+            this.putAt = putAt;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.upgrade.islandbooking.config;
+
+import com.upgrade.islandbooking.controller.BookingController;
+import com.upgrade.islandbooking.service.AvailabilityChangeBroadcaster;
+import com.upgrade.islandbooking.service.AvailabilityChangeStream;
+import com.upgrade.islandbooking.service.OccupancySnapshot;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Beans still created at startup when lazy initialization is on (fastStart profile). The ones following the changes
+ * made by other nodes would miss them until created, and the booking API, along with the services and the JPA setup
+ * it needs, would be created by the first requests instead of before the node is ready.
+ */
+@Configuration(proxyBeanMethods = false)
+public class FastStartConfiguration {
+
+    @Bean
+    public static LazyInitializationExcludeFilter eagerBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(AvailabilityChangeBroadcaster.class,
+                AvailabilityChangeStream.class, OccupancySnapshot.class, BookingController.class);
+    }
+}
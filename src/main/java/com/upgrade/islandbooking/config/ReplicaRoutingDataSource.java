@@ -0,0 +1,188 @@
+package com.upgrade.islandbooking.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gives the connections of read-only transactions from the replica and every other one from the primary, so reads
+ * never take the connections writers need. The replica is skipped (the primary is used instead) when:
+ * <ul>
+ *     <li>the application is still starting, what is loaded at startup must not miss any booking</li>
+ *     <li>this node committed a write less than readYourWritesWindow milliseconds ago</li>
+ *     <li>the last check found it down, or lagging more than maxLag milliseconds</li>
+ *     <li>it fails to give a connection, until the next check finds it back</li>
+ * </ul>
+ * It must be wrapped in a LazyConnectionDataSourceProxy, since the transaction is only known to be read-only after
+ * the transaction manager asks for the connection.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource
+        implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    public enum Target {
+        PRIMARY, REPLICA
+    }
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final long readYourWritesWindow;
+    private final String lagQuery;
+    private final long maxLag;
+    private final long checkInterval;
+    private final Counter primaryConnections;
+    private final Counter replicaConnections;
+    private final ScheduledExecutorService checker;
+
+    private volatile boolean ready;
+    private volatile boolean replicaUsable = true;
+    private volatile long lastWriteAt;
+
+    /**
+     * @param lagQuery query returning the replication lag of the replica in milliseconds, it is not checked when null
+     */
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, long readYourWritesWindow,
+                                    @Nullable String lagQuery, long maxLag, long checkInterval,
+                                    MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replica = replica;
+        this.readYourWritesWindow = TimeUnit.MILLISECONDS.toNanos(readYourWritesWindow);
+        this.lagQuery = lagQuery == null || lagQuery.isBlank() ? null : lagQuery;
+        this.maxLag = maxLag;
+        this.checkInterval = checkInterval;
+        this.lastWriteAt = System.nanoTime() - this.readYourWritesWindow;
+        this.primaryConnections = connectionCounter(meterRegistry, Target.PRIMARY);
+        this.replicaConnections = connectionCounter(meterRegistry, Target.REPLICA);
+        Gauge.builder("datasource.replica.usable", () -> replicaUsable ? 1 : 0)
+                .description("Whether read-only transactions can use the replica (1) or go to the primary (0)")
+                .register(meterRegistry);
+        this.checker = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("replica-check-"));
+    }
+
+    private static Counter connectionCounter(MeterRegistry meterRegistry, Target target) {
+        return Counter.builder("datasource.connections.routed")
+                .description("Connections given by the routing datasource")
+                .tag("target", target.name().toLowerCase())
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!ready) {
+            ready = true;
+            checker.scheduleWithFixedDelay(this::checkReplica, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        checker.shutdownNow();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (useReplica()) {
+            try {
+                Connection connection = replica.getConnection();
+                replicaConnections.increment();
+                return connection;
+            } catch (SQLException e) {
+                LOGGER.warn("Replica is not available, using the primary until the next check: {}", e.getMessage());
+                replicaUsable = false;
+            }
+        }
+        trackWrite();
+        primaryConnections.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new UnsupportedOperationException("The primary and the replica have their own credentials");
+    }
+
+    /**
+     * @return the target the next connection would come from
+     */
+    public Target getCurrentTarget() {
+        return useReplica() ? Target.REPLICA : Target.PRIMARY;
+    }
+
+    private boolean useReplica() {
+        return ready && replicaUsable && TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && System.nanoTime() - lastWriteAt >= readYourWritesWindow;
+    }
+
+    //Writes are only known once committed, rolled back ones do not make the replica stale
+    private void trackWrite() {
+        if (readYourWritesWindow > 0 && TransactionSynchronizationManager.isSynchronizationActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    lastWriteAt = System.nanoTime();
+                }
+            });
+        }
+    }
+
+    /**
+     * Tells whether the replica can be used: it must give a valid connection and, when there is a lag query, be
+     * behind the primary by maxLag milliseconds at most
+     */
+    void checkReplica() {
+        boolean usable;
+        try (Connection connection = replica.getConnection()) {
+            usable = lagQuery == null ? connection.isValid(1) : getLag(connection) <= maxLag;
+        } catch (SQLException e) {
+            LOGGER.debug("Replica check failed: {}", e.getMessage());
+            usable = false;
+        }
+        if (usable != replicaUsable) {
+            LOGGER.info("Replica is {}", usable ? "back, read-only transactions use it again"
+                    : "down or lagging, read-only transactions use the primary");
+            replicaUsable = usable;
+        }
+    }
+
+    private long getLag(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(lagQuery)) {
+            long lag = resultSet.next() ? resultSet.getLong(1) : Long.MAX_VALUE;
+            LOGGER.debug("Replica lag: {} ms", lag);
+            return lag;
+        }
+    }
+
+    //Boot finds the settings of the primary pool (e.g. auto-commit) through it
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? (T) this : primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+}
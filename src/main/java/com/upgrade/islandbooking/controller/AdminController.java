@@ -0,0 +1,100 @@
+package com.upgrade.islandbooking.controller;
+
+import com.upgrade.islandbooking.service.BookingService;
+import com.upgrade.islandbooking.service.BookingTransfer;
+import com.upgrade.islandbooking.service.BookingTransfer.Format;
+import com.upgrade.islandbooking.vo.BookingImportResultVo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdminController.class);
+
+    private static final String TEXT_CSV_VALUE = "text/csv";
+
+    final private BookingService service;
+    final private BookingTransfer bookingTransfer;
+
+    public AdminController(BookingService service, BookingTransfer bookingTransfer) {
+        this.service = service;
+        this.bookingTransfer = bookingTransfer;
+    }
+
+    /**
+     * Rebuilds the shared occupancy calendar from the existing bookings
+     */
+    @PostMapping("/calendar/rebuild")
+    public void rebuildCalendar() {
+        LOGGER.info("Rebuilding the occupancy calendar");
+        service.rebuildCalendar();
+    }
+
+    /**
+     * Every booking as CSV, written while they are read from the database
+     */
+    @GetMapping(value = "/bookings", produces = TEXT_CSV_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportCsv() {
+        return export(Format.CSV, MediaType.parseMediaType(TEXT_CSV_VALUE), "bookings.csv");
+    }
+
+    /**
+     * Every booking as newline delimited JSON, written while they are read from the database
+     */
+    @GetMapping(value = "/bookings", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportNdjson() {
+        return export(Format.NDJSON, MediaType.APPLICATION_NDJSON, "bookings.ndjson");
+    }
+
+    private ResponseEntity<StreamingResponseBody> export(Format format, MediaType mediaType, String fileName) {
+        LOGGER.info("Exporting the bookings as {}", format);
+        StreamingResponseBody body = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            bookingTransfer.export(format, writer);
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build()
+                        .toString())
+                .body(body);
+    }
+
+    /**
+     * Creates the bookings of a CSV file like the one exported, read while they are created
+     */
+    @PostMapping(value = "/bookings", consumes = TEXT_CSV_VALUE)
+    public BookingImportResultVo importCsv(InputStream inputStream) throws IOException {
+        LOGGER.info("Importing bookings from CSV");
+        return bookingTransfer.importBookings(Format.CSV, new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates the bookings of a newline delimited JSON file like the one exported, read while they are created
+     */
+    @PostMapping(value = "/bookings", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public BookingImportResultVo importNdjson(InputStream inputStream) throws IOException {
+        LOGGER.info("Importing bookings from newline delimited JSON");
+        return bookingTransfer.importBookings(Format.NDJSON,
+                new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+}
@@ -1,16 +1,50 @@
 package com.upgrade.islandbooking.controller;
 
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ServiceException;
+import com.upgrade.islandbooking.vo.BookingBatchResultVo;
 import com.upgrade.islandbooking.vo.BookingReserveVo;
 import com.upgrade.islandbooking.vo.BookingResponseVo;
 import com.upgrade.islandbooking.vo.BookingUpdateVo;
+import com.upgrade.islandbooking.vo.BookingVo;
+import com.upgrade.islandbooking.vo.DateIntervalVo;
+import com.upgrade.islandbooking.vo.ReservationStatusVo;
+import com.upgrade.islandbooking.service.AuditLogger;
+import com.upgrade.islandbooking.service.AuditLogger.Outcome;
+import com.upgrade.islandbooking.service.AvailabilityChangeStream;
+import com.upgrade.islandbooking.service.BookingMetrics;
+import com.upgrade.islandbooking.service.BookingMetrics.Operation;
 import com.upgrade.islandbooking.service.BookingService;
+import com.upgrade.islandbooking.service.IdempotencyStore;
+import com.upgrade.islandbooking.service.ReservationQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/booking")
@@ -18,34 +52,252 @@ public class BookingController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BookingController.class);
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    @Value("${rule.batch.max}")
+    private Integer maxBatchSize;
+
+    @Value("${reservation.queue.maxWait}")
+    private Long maxReservationWait;
+
     final private BookingService service;
+    final private Validator validator;
+    final private BookingMetrics metrics;
+    final private ReservationQueue reservationQueue;
+    final private IdempotencyStore idempotencyStore;
+    final private AvailabilityChangeStream availabilityChangeStream;
+    final private AuditLogger auditLogger;
 
-    public BookingController(BookingService service) {
+    public BookingController(BookingService service, Validator validator, BookingMetrics metrics,
+                             ReservationQueue reservationQueue, IdempotencyStore idempotencyStore,
+                             AvailabilityChangeStream availabilityChangeStream, AuditLogger auditLogger) {
         this.service = service;
+        this.validator = validator;
+        this.metrics = metrics;
+        this.reservationQueue = reservationQueue;
+        this.idempotencyStore = idempotencyStore;
+        this.availabilityChangeStream = availabilityChangeStream;
+        this.auditLogger = auditLogger;
     }
 
+    /**
+     * Requests retried with the same Idempotency-Key header get the response of the first attempt
+     */
     @PostMapping
-    public BookingResponseVo reserve(@Valid @RequestBody BookingReserveVo request) {
-        LOGGER.debug("Request data: " + request.toString());
-        String bookingId = service.reserve(request);
+    public BookingResponseVo reserve(@Valid @RequestBody BookingReserveVo request,
+                                     @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        LOGGER.debug("Request data: {}", request);
+        String bookingId = metrics.timeRequest(Operation.RESERVE, () -> auditLogger.record(Operation.RESERVE, null,
+                request.getFrom(), request.getTo(), () -> idempotencyStore.execute(idempotencyKey, Operation.RESERVE,
+                        request.toString(), () -> service.reserve(request))));
         return new BookingResponseVo(bookingId);
     }
 
+    /**
+     * Queues the reservation and answers right away with 202 (Accepted) and the ticket to poll its result,
+     * or with 503 (Service Unavailable) if the queue is full
+     */
+    @PostMapping("/requests")
+    public ResponseEntity<ReservationStatusVo> reserveAsync(@Valid @RequestBody BookingReserveVo request) {
+        LOGGER.debug("Async request data: {}", request);
+        String ticket = reservationQueue.submit(request);
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentRequest().path("/{ticket}").buildAndExpand(ticket).toUri())
+                .body(ReservationStatusVo.pending(ticket));
+    }
+
+    /**
+     * Gets the status of a queued reservation. When wait (milliseconds) is given and the reservation is still
+     * pending, the response is held until it is processed or the wait is over
+     */
+    @GetMapping("/requests/{ticket}")
+    public DeferredResult<ReservationStatusVo> getReservationStatus(@PathVariable String ticket,
+                                                                    @RequestParam(defaultValue = "0") long wait) {
+        LOGGER.debug("Getting status of reservation request {}", ticket);
+        CompletableFuture<ReservationStatusVo> result = reservationQueue.getResult(ticket);
+        ReservationStatusVo pending = ReservationStatusVo.pending(ticket);
+
+        long timeout = Math.min(wait, maxReservationWait);
+        DeferredResult<ReservationStatusVo> deferredResult = new DeferredResult<>(Math.max(timeout, 1L), pending);
+        if (timeout <= 0 || result.isDone()) {
+            deferredResult.setResult(result.getNow(pending));
+        } else {
+            result.thenAccept(deferredResult::setResult);
+        }
+        return deferredResult;
+    }
+
+    /**
+     * Creates many bookings at once. Each one is validated and created on its own, so the response has
+     * the booking ID or the error of each request, in the same order
+     */
+    @PostMapping("/batch")
+    public List<BookingBatchResultVo> reserveBatch(@RequestBody List<BookingReserveVo> requests) {
+        LOGGER.debug("Batch request with {} bookings", requests.size());
+        return metrics.timeRequest(Operation.RESERVE_BATCH, () -> doReserveBatch(requests));
+    }
+
+    private List<BookingBatchResultVo> doReserveBatch(List<BookingReserveVo> requests) {
+        long start = System.nanoTime();
+        metrics.takeLockWait();
+        if (requests.size() > maxBatchSize) {
+            throw new ServiceException(Error.BOOKING_BATCH_MAX_SIZE, new Object[]{maxBatchSize, requests.size()});
+        }
+
+        BookingBatchResultVo[] results = new BookingBatchResultVo[requests.size()];
+        List<BookingReserveVo> validRequests = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            //A null element of the JSON array cannot be validated, it is rejected as any other invalid request
+            Set<ConstraintViolation<BookingReserveVo>> violations = requests.get(i) == null
+                    ? null
+                    : validator.validate(requests.get(i));
+            if (violations != null && violations.isEmpty()) {
+                validRequests.add(requests.get(i));
+            } else {
+                LOGGER.debug("Batch request {} is not valid: {}", i, violations);
+                results[i] = BookingBatchResultVo.rejected(Error.BOOKING_NOTVALID_REQUEST);
+                metrics.countError(Error.BOOKING_NOTVALID_REQUEST);
+            }
+        }
+
+        //Fills the gaps left by the invalid requests with the results of the valid ones, which keep their order
+        Iterator<BookingBatchResultVo> validResults = service.reserveBatch(validRequests).iterator();
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = validResults.next();
+            }
+        }
+        auditBatch(requests, results, start);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * One audit line per booking of the batch, all of them with the timings of the whole batch
+     */
+    private void auditBatch(List<BookingReserveVo> requests, BookingBatchResultVo[] results, long start) {
+        if (!auditLogger.isEnabled()) {
+            return;
+        }
+        long lockWait = metrics.takeLockWait();
+        long duration = System.nanoTime() - start;
+        for (int i = 0; i < results.length; i++) {
+            BookingReserveVo request = requests.get(i);
+            BookingBatchResultVo result = results[i];
+            auditLogger.log(Operation.RESERVE_BATCH, result.getBookingId(), request == null ? null : request.getFrom(),
+                    request == null ? null : request.getTo(),
+                    result.getError() == null ? Outcome.SUCCESS : Outcome.REJECTED, result.getError(), lockWait,
+                    duration);
+        }
+    }
+
+    @GetMapping("/{id}")
+    public BookingVo getBooking(@PathVariable String id) {
+        LOGGER.debug("Getting booking with ID {}", id);
+        return service.getBooking(id);
+    }
+
     @PutMapping("/{id}")
-    public void update(@PathVariable String id, @Valid @RequestBody BookingUpdateVo request) {
-        LOGGER.debug("Updating booking with ID " + id + " Request data: " + request.toString());
-        service.update(id, request);
+    public void update(@PathVariable String id, @Valid @RequestBody BookingUpdateVo request,
+                       @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        LOGGER.debug("Updating booking with ID {} Request data: {}", id, request);
+        metrics.timeRequest(Operation.UPDATE, () -> auditLogger.record(Operation.UPDATE, id, request.getFrom(),
+                request.getTo(), () -> idempotencyStore.execute(idempotencyKey, Operation.UPDATE,
+                        id + ":" + request, () -> {
+                            service.update(id, request);
+                            return id;
+                        })));
     }
 
     @DeleteMapping("/{id}")
     public void delete(@PathVariable String id) {
-        LOGGER.debug("Deleting booking with ID  " + id);
-        service.delete(id);
+        LOGGER.debug("Deleting booking with ID {}", id);
+        metrics.timeRequest(Operation.DELETE, () -> auditLogger.record(Operation.DELETE, id, null, null, () -> {
+            service.delete(id);
+            return id;
+        }));
     }
 
+    /**
+     * Answers with 304 (Not Modified) when the availability did not change since the ETag sent by the client, whichever
+     * node gave it. The default site is used when it is not given
+     */
     @GetMapping
-    public List<LocalDate> getAvailableDates(@RequestParam LocalDate from, @RequestParam LocalDate to) {
-        LOGGER.debug("Getting available date from: " + from + " to " + to);
-        return service.getAvailableDays(from, to);
+    public ResponseEntity<List<LocalDate>> getAvailableDates(@RequestParam LocalDate from, @RequestParam LocalDate to,
+                                                             @RequestParam(required = false) String site,
+                                                             WebRequest webRequest) {
+        LOGGER.debug("Getting available date of site {} from: {} to {}", site, from, to);
+        return answerAvailability(service.getAvailabilityETag(site, from, to, BookingService.AVAILABLE_DAYS),
+                () -> service.getAvailableDays(site, from, to), webRequest);
+    }
+
+    /**
+     * Same as {@link #getAvailableDates(LocalDate, LocalDate, String, WebRequest)} but grouping consecutive dates
+     * in [start, end) intervals
+     */
+    @GetMapping("/intervals")
+    public ResponseEntity<List<DateIntervalVo>> getAvailableIntervals(@RequestParam LocalDate from,
+                                                                      @RequestParam LocalDate to,
+                                                                      @RequestParam(required = false) String site,
+                                                                      WebRequest webRequest) {
+        LOGGER.debug("Getting available intervals of site {} from: {} to {}", site, from, to);
+        return answerAvailability(service.getAvailabilityETag(site, from, to, BookingService.AVAILABLE_INTERVALS),
+                () -> service.getAvailableIntervals(site, from, to), webRequest);
+    }
+
+    /**
+     * The availability is only computed when it is not answered with 304. Without a version of the availability, its
+     * ETag is computed from its content
+     */
+    private static <T> ResponseEntity<List<T>> answerAvailability(String eTag, Supplier<List<T>> availability,
+                                                                  WebRequest webRequest) {
+        if (eTag != null && webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+        List<T> body = availability.get();
+        if (eTag == null) {
+            eTag = BookingService.getAvailabilityETag(body);
+            if (webRequest.checkNotModified(eTag)) {
+                return null;
+            }
+        }
+        return ResponseEntity.ok().eTag(eTag).body(body);
+    }
+
+    /**
+     * Same as {@link #getAvailableDates(LocalDate, LocalDate, String, WebRequest)} but written as newline delimited
+     * JSON while the range is walked, so long ranges neither build the whole list nor delay the first byte
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAvailableDates(@RequestParam LocalDate from,
+                                                                      @RequestParam LocalDate to,
+                                                                      @RequestParam(required = false) String site) {
+        LOGGER.debug("Streaming available date of site {} from: {} to {}", site, from, to);
+        //Created before answering, so an unknown site is still reported with its status code
+        Stream<LocalDate> availableDays = service.streamAvailableDays(site, from, to);
+        StreamingResponseBody body = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            boolean first = true;
+            for (Iterator<LocalDate> it = availableDays.iterator(); it.hasNext(); ) {
+                writer.write('"');
+                writer.write(it.next().toString());
+                writer.write("\"\n");
+                if (first) {
+                    writer.flush();
+                    first = false;
+                }
+            }
+            writer.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Server-Sent Events with the nights taken and released by every booking change, so clients can load the
+     * availability once and keep it updated. Reconnections resume from the Last-Event-ID header.
+     */
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        LOGGER.debug("Subscribing to availability changes from event {}", lastEventId);
+        return availabilityChangeStream.subscribe(lastEventId);
     }
 }
@@ -1,19 +1,21 @@
 package com.upgrade.islandbooking.controller;
 
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ErrorCatalog;
 import com.upgrade.islandbooking.exception.ServiceException;
+import com.upgrade.islandbooking.service.BookingMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.context.annotation.PropertySource;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
-import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
-import java.text.MessageFormat;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
@@ -21,48 +23,50 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 @ControllerAdvice
-@PropertySource("classpath:error.properties")
 public class GlobalExceptionHandlerController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GlobalExceptionHandlerController.class);
 
-    private final Environment environment;
+    //Errors are always JSON, even for the endpoints producing other media types (NDJSON)
+    private static final HttpHeaders JSON_HEADERS;
 
-    public GlobalExceptionHandlerController(Environment environment) {
-        this.environment = environment;
+    static {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        JSON_HEADERS = HttpHeaders.readOnlyHttpHeaders(headers);
     }
 
-    @ExceptionHandler(ServiceException.class)
-    public ResponseEntity<Object> businessExceptionHandler(ServiceException e) {
-        LOGGER.debug("Handling Business Exception with code label " + e.getCodeLabel() );
-
-        // Since HTTP code is optional, checks if it was specified
-        HttpStatus httpStatus;
-        String httpCode = environment.getProperty(e.getHttpCodeLabel());
-        if(httpCode != null) {
-            httpStatus = HttpStatus.resolve(Integer.parseInt(httpCode));
-            LOGGER.debug("The exception contains a custom HTTP status: " + httpStatus.toString());
-        } else {
-            httpStatus = HttpStatus.BAD_REQUEST;
-            LOGGER.debug("The exception does not contain a specific HTTP status. Using the default: " + httpStatus.toString());
-        }
+    private final ErrorCatalog errorCatalog;
+    private final BookingMetrics metrics;
 
-        // Gets mandatory fields
-        String code = environment.getProperty(e.getCodeLabel());
-        String message = environment.getProperty(e.getMessageLabel());
+    public GlobalExceptionHandlerController(ErrorCatalog errorCatalog, BookingMetrics metrics) {
+        this.errorCatalog = errorCatalog;
+        this.metrics = metrics;
+    }
 
-        //Checks if the message has dynamic parameters
-        if(e.getParameters() != null  && e.getParameters().length > 0) {
-            LOGGER.debug("The exception has parameters to add in the error message. Length: " + e.getParameters().length);
-            MessageFormat messageFormat = new MessageFormat(message);
-            message = messageFormat.format(e.getParameters());
+    /**
+     * Answers from the catalog resolved at startup, so the only work per error is formatting its parameters
+     */
+    @ExceptionHandler(ServiceException.class)
+    public ResponseEntity<Object> businessExceptionHandler(ServiceException e) {
+        LOGGER.debug("Handling Business Exception {}", e.getError());
+        metrics.countError(e.getError());
+
+        ErrorCatalog.Entry entry = errorCatalog.get(e.getError());
+        ErrorInfo errorInfo = new ErrorInfo(entry.getCode(), entry.getMessage(e.getParameters()),
+                entry.getHttpStatusText());
+        //The cause is already logged where the exception is raised
+        LOGGER.debug("{}", errorInfo);
+
+        // Lock contention is temporary, so clients are told when to retry
+        HttpHeaders headers = JSON_HEADERS;
+        if (e.getError() == Error.LOCK_CONTENTION) {
+            headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(e.getParameters()[0]));
         }
 
-        ErrorInfo errorInfo = new ErrorInfo(code, message, httpStatus);
-        LOGGER.error(errorInfo.toString());
-
-
-        return new ResponseEntity<>(errorInfo, httpStatus);
+        return new ResponseEntity<>(errorInfo, headers, entry.getHttpStatus());
     }
 
     @ExceptionHandler(value = {BindException.class, MethodArgumentNotValidException.class})
@@ -80,17 +84,17 @@ public class GlobalExceptionHandlerController {
         return new ResponseEntity(body, HttpStatus.BAD_REQUEST);
     }
 
-    public final class ErrorInfo {
+    public static final class ErrorInfo {
         private final LocalDateTime localDateTime;
         private final String internalErrorCode;
         private final String message;
         private final String httpStatus;
 
-        public ErrorInfo(String internalErrorCode, String message, HttpStatus httpStatus) {
+        public ErrorInfo(String internalErrorCode, String message, String httpStatus) {
             this.localDateTime = LocalDateTime.now();
             this.internalErrorCode = internalErrorCode;
             this.message = message;
-            this.httpStatus = httpStatus.toString();
+            this.httpStatus = httpStatus;
         }
 
         public String getInternalErrorCode() {
@@ -3,32 +3,54 @@ package com.upgrade.islandbooking.domain.entity;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.*;
 import java.time.LocalDate;
+import java.util.UUID;
 
 @NoArgsConstructor
 @Data
 @EqualsAndHashCode
 @Entity
-@Table(name = "booking")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(name = "booking", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_booking_site_from_date", columnNames = {"site", "fromDate"}),
+        @UniqueConstraint(name = "uk_booking_site_to_date", columnNames = {"site", "toDate"})})
 public class Booking {
     @Id
-    @GeneratedValue(generator = "uuid2")
-    @GenericGenerator(name = "uuid2", strategy = "org.hibernate.id.UUIDGenerator")
-    private String id;
+    @GeneratedValue(generator = "bookingId")
+    @GenericGenerator(name = "bookingId", strategy = "com.upgrade.islandbooking.domain.entity.BookingIdGenerator")
+    @Column(columnDefinition = "binary(16)")
+    private UUID id;
+
+    /**
+     * Each site has its own nights, bookings of different sites never overlap
+     */
+    @Column(nullable = false, length = 32)
+    private String site;
 
     @OneToOne
     private Person person;
 
-    @Column(nullable = false, unique = true)
+    @Column(nullable = false)
     private LocalDate fromDate;
 
-    @Column(nullable = false, unique = true)
+    @Column(nullable = false)
     private LocalDate toDate;
 
-    public Booking(Person person, LocalDate fromDate, LocalDate toDate) {
+    /**
+     * ID it is persisted with instead of a new one, e.g. the one it was exported with
+     */
+    @Transient
+    @EqualsAndHashCode.Exclude
+    private UUID assignedId;
+
+    public Booking(String site, Person person, LocalDate fromDate, LocalDate toDate) {
+        this.site = site;
         this.person = person;
         this.fromDate = fromDate;
         this.toDate = toDate;
@@ -0,0 +1,74 @@
+package com.upgrade.islandbooking.domain.entity;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Generates the booking IDs according to the strategy set in the hibernate property {@value #STRATEGY_SETTING}:
+ * <ul>
+ *     <li>time-ordered (default): UUID version 7, they start with the creation time in milliseconds, so new
+ *     IDs are appended at the end of the primary key index instead of being spread all over it</li>
+ *     <li>random: UUID version 4</li>
+ * </ul>
+ * Both are secure random enough to be unguessable, since the ID is the only thing needed to update or delete
+ * a booking. Bookings with an assigned ID (imported ones) keep it.
+ */
+public class BookingIdGenerator implements IdentifierGenerator, Configurable {
+
+    public static final String STRATEGY_SETTING = "booking.id.strategy";
+    public static final String TIME_ORDERED = "time-ordered";
+    public static final String RANDOM = "random";
+
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    private boolean timeOrdered = true;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        Object strategy = serviceRegistry.getService(ConfigurationService.class).getSettings().get(STRATEGY_SETTING);
+        if (strategy == null || TIME_ORDERED.equals(strategy.toString())) {
+            timeOrdered = true;
+        } else if (RANDOM.equals(strategy.toString())) {
+            timeOrdered = false;
+        } else {
+            throw new MappingException("Unknown booking ID strategy '" + strategy + "', it must be "
+                    + TIME_ORDERED + " or " + RANDOM);
+        }
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        if (object instanceof Booking && ((Booking) object).getAssignedId() != null) {
+            return ((Booking) object).getAssignedId();
+        }
+        return timeOrdered ? timeOrderedUuid() : UUID.randomUUID();
+    }
+
+    /**
+     * @return a UUID version 7: 48 bits of unix time in milliseconds, the version, 12 random bits,
+     * the variant and 62 random bits
+     */
+    public static UUID timeOrderedUuid() {
+        byte[] random = new byte[10];
+        SECURE_RANDOM.nextBytes(random);
+        ByteBuffer buffer = ByteBuffer.wrap(random);
+
+        long mostSigBits = (System.currentTimeMillis() << 16)
+                | 0x7000L
+                | (buffer.getShort() & 0x0FFFL);
+        long leastSigBits = (buffer.getLong() & 0x3FFFFFFFFFFFFFFFL)
+                | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+}
@@ -0,0 +1,56 @@
+package com.upgrade.islandbooking.domain.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import java.time.LocalDate;
+
+/**
+ * A night taken by a booking. The site and the night are the primary key, so the database rejects two bookings
+ * for the same night of a site.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@Data
+@Entity
+@IdClass(BookingNightId.class)
+@Table(name = "booking_night")
+public class BookingNight implements Persistable<BookingNightId> {
+    @Id
+    @Column(length = 32)
+    private String site;
+
+    @Id
+    private LocalDate night;
+
+    @ManyToOne(optional = false)
+    private Booking booking;
+
+    public BookingNight(LocalDate night, Booking booking) {
+        this(booking.getSite(), night, booking);
+    }
+
+    @Override
+    public BookingNightId getId() {
+        return new BookingNightId(site, night);
+    }
+
+    /**
+     * Nights are always inserted, never merged, otherwise saving a taken night would silently move it
+     * to another booking instead of violating the primary key
+     */
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
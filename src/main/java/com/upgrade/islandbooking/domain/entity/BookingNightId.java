@@ -0,0 +1,21 @@
+package com.upgrade.islandbooking.domain.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Primary key of {@link BookingNight}
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@Data
+public class BookingNightId implements Serializable {
+    private String site;
+    private LocalDate night;
+}
@@ -0,0 +1,17 @@
+package com.upgrade.islandbooking.domain.repository;
+
+import com.upgrade.islandbooking.domain.entity.Booking;
+import com.upgrade.islandbooking.domain.entity.BookingNight;
+import com.upgrade.islandbooking.domain.entity.BookingNightId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BookingNightRepository extends JpaRepository<BookingNight, BookingNightId> {
+    @Modifying
+    @Query("delete from BookingNight n where n.booking = :booking")
+    void deleteByBooking(@Param("booking") Booking booking);
+}
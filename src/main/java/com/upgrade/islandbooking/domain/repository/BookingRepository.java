@@ -2,17 +2,67 @@ package com.upgrade.islandbooking.domain.repository;
 
 import com.upgrade.islandbooking.domain.entity.Booking;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
-public interface BookingRepository extends JpaRepository<Booking, String> {
-    List<Booking> findByFromDateBetween(LocalDate fromDate, LocalDate toDate);
+public interface BookingRepository extends JpaRepository<Booking, UUID> {
+    /**
+     * Not read-only, so it always reads from the primary. The in-memory index and the shared calendar are rebuilt
+     * from it, and a lagging read replica would leave bookings out of them
+     */
+    @Override
+    @Transactional
+    List<Booking> findAll();
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<Booking> findWithLockById(UUID id);
+
+    /**
+     * The booking along with its person, always read from the database instead of the second-level cache. It is
+     * meant for reads under the booking lock, where an entry not yet evicted after a change made by another node
+     * would be validated and written back as if it were current. The cache is refreshed with what is read
+     */
+    @QueryHints(@QueryHint(name = HINT_CACHE_MODE, value = "REFRESH"))
+    @Query("select b from Booking b join fetch b.person where b.id = :id")
+    Optional<Booking> findFreshById(@Param("id") UUID id);
+
+    List<Booking> findBySiteAndFromDateBetween(String site, LocalDate fromDate, LocalDate toDate);
+
+    @Query("select b.id from Booking b where b.id in :ids")
+    List<UUID> findExistingIds(@Param("ids") Collection<UUID> ids);
+
+    Long countBySiteAndFromDateBetweenAndToDateGreaterThan(String site, LocalDate fromFrom, LocalDate fromTo,
+                                                           LocalDate to);
 
-    Long countByFromDateBetweenAndToDateGreaterThan(LocalDate fromFrom, LocalDate fromTo, LocalDate to);
+    Long countBySiteAndIdIsNotAndFromDateBetweenAndToDateGreaterThan(String site, UUID id, LocalDate fromFrom,
+                                                                     LocalDate fromTo, LocalDate to);
 
-    Long countByIdIsNotAndFromDateBetweenAndToDateGreaterThan(String id, LocalDate fromFrom,
-                                                                      LocalDate fromTo, LocalDate to);
+    /**
+     * Forward-only cursor over every booking along with its person, fetched in rounds of 500 rows. They are loaded
+     * read-only and skip the second-level cache, so walking the whole table neither keeps snapshots nor evicts the
+     * cached entities. It must be consumed and closed within a transaction
+     */
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_CACHE_MODE, value = "IGNORE")})
+    @Query("select b from Booking b join fetch b.person")
+    Stream<Booking> streamAllWithPerson();
 }
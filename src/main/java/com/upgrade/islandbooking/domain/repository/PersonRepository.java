@@ -2,8 +2,20 @@ package com.upgrade.islandbooking.domain.repository;
 
 import com.upgrade.islandbooking.domain.entity.Person;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
 
 @Repository
 public interface PersonRepository extends JpaRepository<Person, String> {
+
+    /**
+     * Not read-only, so it always reads from the primary. The booked email filter is rebuilt from it, and a lagging
+     * read replica would leave emails out of it
+     */
+    @Transactional
+    @Query("select p.email from Person p")
+    List<String> findAllEmails();
 }
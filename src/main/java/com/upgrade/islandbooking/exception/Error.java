@@ -6,7 +6,16 @@ public enum Error {
     PERSON_HAS_BOOKING("booking.personHasBooking"),
     BOOKING_NOTVALID_DATE_RANGE("booking.validDateRange"),
     BOOKING_NOTVALID_DATE_FROM("booking.validDateFrom"),
-    BOOKING_MAX_DATE_RANGE("booking.maxDateRange");
+    BOOKING_MAX_DATE_RANGE("booking.maxDateRange"),
+    BOOKING_NOTVALID_REQUEST("booking.validRequest"),
+    BOOKING_BATCH_MAX_SIZE("booking.batchMaxSize"),
+    RESERVATION_NOT_FOUND("booking.reservationNotFound"),
+    RESERVATION_QUEUE_FULL("booking.reservationQueueFull"),
+    LOCK_CONTENTION("booking.lockContention"),
+    IDEMPOTENCY_KEY_REUSED("booking.idempotencyKeyReused"),
+    IDEMPOTENT_REQUEST_IN_PROGRESS("booking.idempotentRequestInProgress"),
+    SITE_NOT_FOUND("booking.siteNotFound"),
+    BOOKING_ALREADY_EXISTS("booking.alreadyExists");
 
     private final String key;
 
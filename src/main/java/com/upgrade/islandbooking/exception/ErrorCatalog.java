@@ -0,0 +1,100 @@
+package com.upgrade.islandbooking.exception;
+
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * HTTP status, code and message of every {@link Error}, read from error.properties once at startup. A missing entry
+ * fails the startup instead of the first request raising that error.
+ */
+@Component
+@PropertySource("classpath:error.properties")
+public class ErrorCatalog {
+
+    private static final String LABEL_CODE = ".code";
+    private static final String LABEL_MESSAGE = ".message";
+    private static final String LABEL_HTTP_CODE = ".httpCode";
+
+    private final Map<Error, Entry> entries;
+
+    public ErrorCatalog(Environment environment) {
+        Map<Error, Entry> entries = new EnumMap<>(Error.class);
+        for (Error error : Error.values()) {
+            entries.put(error, new Entry(getHttpStatus(environment, error),
+                    getRequiredProperty(environment, error.getKey() + LABEL_CODE),
+                    getRequiredProperty(environment, error.getKey() + LABEL_MESSAGE)));
+        }
+        this.entries = Collections.unmodifiableMap(entries);
+    }
+
+    //Since HTTP code is optional, BAD_REQUEST is used when it is not specified
+    private static HttpStatus getHttpStatus(Environment environment, Error error) {
+        String httpCode = environment.getProperty(error.getKey() + LABEL_HTTP_CODE);
+        if (httpCode == null) {
+            return HttpStatus.BAD_REQUEST;
+        }
+        HttpStatus httpStatus = HttpStatus.resolve(Integer.parseInt(httpCode.trim()));
+        if (httpStatus == null) {
+            throw new IllegalStateException("Unknown HTTP code " + httpCode + " for error " + error);
+        }
+        return httpStatus;
+    }
+
+    private static String getRequiredProperty(Environment environment, String key) {
+        String value = environment.getProperty(key);
+        if (value == null) {
+            throw new IllegalStateException("Missing property " + key + " in error.properties");
+        }
+        return value;
+    }
+
+    public Entry get(Error error) {
+        return entries.get(error);
+    }
+
+    public static final class Entry {
+        private final HttpStatus httpStatus;
+        private final String httpStatusText;
+        private final String code;
+        private final String message;
+        private final MessageFormat format;
+
+        private Entry(HttpStatus httpStatus, String code, String message) {
+            this.httpStatus = httpStatus;
+            this.httpStatusText = httpStatus.toString();
+            this.code = code;
+            this.message = message;
+            this.format = new MessageFormat(message);
+        }
+
+        public HttpStatus getHttpStatus() {
+            return httpStatus;
+        }
+
+        public String getHttpStatusText() {
+            return httpStatusText;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        /**
+         * MessageFormat is not thread safe, so the parsed one is cloned, which is cheaper than parsing it again
+         * @return the message with the parameters, or as it is in the catalog when there are none
+         */
+        public String getMessage(Object[] parameters) {
+            if (parameters == null || parameters.length == 0) {
+                return message;
+            }
+            return ((MessageFormat) format.clone()).format(parameters);
+        }
+    }
+}
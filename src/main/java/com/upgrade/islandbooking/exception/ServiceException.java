@@ -1,36 +1,28 @@
 package com.upgrade.islandbooking.exception;
 
+/**
+ * Business errors are expected, and most of them are raised on every rejected booking, so they neither capture the
+ * stack trace nor keep suppressed exceptions. The error is enough to know where they come from.
+ */
 public class ServiceException extends RuntimeException {
 
-    private static final String LABEL_CODE = ".code";
-    private static final String LABEL_MESSAGE = ".message";
-    private static final String LABEL_HTTP_CODE = ".httpCode";
-
     private final Error error;
     private final Object[] parameters;
 
     public ServiceException(Error error) {
-        super();
+        super(error.name(), null, false, false);
         this.error = error;
         this.parameters = null;
     }
 
     public ServiceException(Error error, Object[] parameters) {
-        super();
+        super(error.name(), null, false, false);
         this.error = error;
         this.parameters = parameters;
     }
 
-    public String getCodeLabel() {
-        return error.getKey() + LABEL_CODE;
-    }
-
-    public String getMessageLabel() {
-        return error.getKey() + LABEL_MESSAGE;
-    }
-
-    public String getHttpCodeLabel() {
-        return error.getKey() + LABEL_HTTP_CODE;
+    public Error getError() {
+        return error;
     }
 
     public Object[] getParameters() {
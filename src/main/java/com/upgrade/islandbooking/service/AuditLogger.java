@@ -0,0 +1,88 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ServiceException;
+import com.upgrade.islandbooking.service.BookingMetrics.Operation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Audit trail of the reservations, updates and deletions, one line per booking with a fixed set of key=value fields.
+ * The "audit" logger writes to its own rolling file through a bounded asynchronous appender (see logback-spring.xml),
+ * so request threads never wait for the disk. Nothing is built when the logger is disabled.
+ */
+@Component
+public class AuditLogger {
+
+    private static final Logger AUDIT = LoggerFactory.getLogger("audit");
+
+    private static final String FORMAT = "operation={} bookingId={} from={} to={} nights={} outcome={} error={} "
+            + "lockWaitUs={} durationUs={}";
+    private static final String NONE = "-";
+
+    public enum Outcome {
+        SUCCESS,
+        REJECTED,
+        FAILED
+    }
+
+    final private BookingMetrics metrics;
+
+    public AuditLogger(BookingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Runs the request recording its outcome and timings. When the booking ID is not known beforehand
+     * (reservations), it is taken from the result.
+     */
+    public String record(Operation operation, @Nullable String bookingId, @Nullable LocalDate from,
+                         @Nullable LocalDate to, Supplier<String> request) {
+        if (!isEnabled()) {
+            return request.get();
+        }
+
+        long start = System.nanoTime();
+        //Discards the waits of whatever this thread ran before
+        metrics.takeLockWait();
+        try {
+            String result = request.get();
+            log(operation, bookingId != null ? bookingId : result, from, to, Outcome.SUCCESS, null,
+                    metrics.takeLockWait(), System.nanoTime() - start);
+            return result;
+        } catch (ServiceException e) {
+            log(operation, bookingId, from, to, Outcome.REJECTED, e.getError(), metrics.takeLockWait(),
+                    System.nanoTime() - start);
+            throw e;
+        } catch (RuntimeException e) {
+            log(operation, bookingId, from, to, Outcome.FAILED, null, metrics.takeLockWait(),
+                    System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    public void log(Operation operation, @Nullable String bookingId, @Nullable LocalDate from, @Nullable LocalDate to,
+                    Outcome outcome, @Nullable Error error, long lockWaitNanos, long durationNanos) {
+        if (!isEnabled()) {
+            return;
+        }
+        long nights = from != null && to != null ? ChronoUnit.DAYS.between(from, to) : 0;
+        AUDIT.info(FORMAT, operation, orNone(bookingId), orNone(from), orNone(to), nights, outcome, orNone(error),
+                TimeUnit.NANOSECONDS.toMicros(lockWaitNanos), TimeUnit.NANOSECONDS.toMicros(durationNanos));
+    }
+
+    public boolean isEnabled() {
+        return AUDIT.isInfoEnabled();
+    }
+
+    private static Object orNone(Object value) {
+        return value != null ? value : NONE;
+    }
+}
@@ -0,0 +1,176 @@
+package com.upgrade.islandbooking.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Node-local and size bounded cache of the available days per site and date window. The least recently used windows
+ * are evicted first, and the windows overlapping the nights changed by any node are invalidated. Every site has its
+ * own windows and lock, so the bookings of one site never invalidate nor block the windows of another one.
+ */
+@Component
+public class AvailabilityCache implements MeterBinder {
+
+    /**
+     * Maximum number of windows cached per site
+     */
+    private final int maxSize;
+
+    private final ConcurrentMap<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public AvailabilityCache(@Value("${availability.cache.maxSize}") int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the cached available days of the site window, or the ones given by the loader if they are not cached
+     */
+    public List<LocalDate> get(String site, LocalDate from, LocalDate to, Supplier<List<LocalDate>> loader) {
+        Partition partition = partitions.computeIfAbsent(site, s -> new Partition());
+        Window window = new Window(from.toEpochDay(), to.toEpochDay());
+        long loadedGeneration;
+
+        synchronized (partition) {
+            List<LocalDate> cached = partition.windows.get(window);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            loadedGeneration = partition.generation;
+        }
+
+        misses.incrementAndGet();
+        List<LocalDate> loaded = Collections.unmodifiableList(loader.get());
+
+        synchronized (partition) {
+            if (maxSize > 0 && loadedGeneration == partition.generation) {
+                partition.windows.put(window, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Drops the cached windows of the site overlapping the nights between from (inclusive) and to (exclusive)
+     */
+    public void invalidate(String site, LocalDate from, LocalDate to) {
+        long start = from.toEpochDay();
+        long end = to.toEpochDay();
+        Partition partition = partitions.computeIfAbsent(site, s -> new Partition());
+        synchronized (partition) {
+            partition.generation++;
+            partition.windows.keySet().removeIf(w -> w.from < end && start < w.to);
+        }
+    }
+
+    public void clear() {
+        for (Partition partition : partitions.values()) {
+            synchronized (partition) {
+                partition.generation++;
+                partition.windows.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Partition partition : partitions.values()) {
+            synchronized (partition) {
+                size += partition.windows.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("availability.cache.hits", this, AvailabilityCache::getHits)
+                .description("Availability windows answered from the cache")
+                .register(registry);
+        FunctionCounter.builder("availability.cache.misses", this, AvailabilityCache::getMisses)
+                .description("Availability windows not found in the cache")
+                .register(registry);
+        FunctionCounter.builder("availability.cache.evictions", this, AvailabilityCache::getEvictions)
+                .description("Availability windows evicted because the cache was full")
+                .register(registry);
+        Gauge.builder("availability.cache.size", this, AvailabilityCache::size)
+                .description("Availability windows currently cached")
+                .register(registry);
+    }
+
+    private final class Partition {
+        private final Map<Window, List<LocalDate>> windows = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Window, List<LocalDate>> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        /**
+         * Increased on every invalidation, so a window computed while the nights were changing is not cached
+         */
+        private long generation;
+    }
+
+    private static final class Window {
+        private final long from;
+        private final long to;
+
+        private Window(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Window)) {
+                return false;
+            }
+            Window window = (Window) o;
+            return from == window.from && to == window.to;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(from, to);
+        }
+    }
+}
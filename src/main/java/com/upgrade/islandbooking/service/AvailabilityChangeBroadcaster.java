@@ -0,0 +1,299 @@
+package com.upgrade.islandbooking.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.upgrade.islandbooking.vo.AvailabilityChangeVo;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.BaseStatusListener;
+import org.redisson.codec.JsonJacksonCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies the committed changes of nights to the local occupancy index and availability cache,
+ * and shares them with the other app server instances through Redis pub/sub.
+ */
+@Component
+public class AvailabilityChangeBroadcaster {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AvailabilityChangeBroadcaster.class);
+
+    private static final String TOPIC_KEY = "availability_changes";
+    private static final String SEQUENCE_KEY = "availability_changes:sequence";
+
+    /**
+     * Notified of every change applied to the local availability, and when it is reloaded because changes
+     * could have been missed
+     */
+    public interface Listener {
+        void changed(AvailabilityChangeVo change);
+
+        void reloaded();
+    }
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final OccupancyIndex occupancyIndex;
+    private final AvailabilityCache availabilityCache;
+    private final RTopic topic;
+    private final RAtomicLong sequence;
+    private final AtomicLong localSequence = new AtomicLong();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Milliseconds a missing change is waited for before taking the ones after it as applied, since its node could
+     * have failed to publish it
+     */
+    @Value("${availability.changes.gapTimeout}")
+    private long gapTimeout;
+
+    /**
+     * Sequence up to which every change is applied in this node, and the changes applied after a missing one
+     */
+    private long appliedSequence;
+    private final NavigableSet<Long> appliedAhead = new TreeSet<>();
+    private long gapSince;
+
+    /**
+     * Increased when the local availability changes without its sequence telling it: the index is reloaded, or
+     * a change without sequence or arriving after its gap was given up is applied
+     */
+    private long epoch;
+
+    /**
+     * Whether the local availability includes every change up to the applied sequence, which is not the case while
+     * an outdated index is used
+     */
+    private boolean upToDate = true;
+
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private int messageListenerId;
+    private int statusListenerId;
+
+    /**
+     * Without redisson client the changes are only applied locally
+     */
+    public AvailabilityChangeBroadcaster(OccupancyIndex occupancyIndex, AvailabilityCache availabilityCache,
+                                         @Nullable RedissonClient redissonClient) {
+        this.occupancyIndex = occupancyIndex;
+        this.availabilityCache = availabilityCache;
+        this.topic = redissonClient == null
+                ? null
+                : redissonClient.getTopic(TOPIC_KEY,
+                        new JsonJacksonCodec(new ObjectMapper().registerModule(new JavaTimeModule())));
+        this.sequence = redissonClient == null ? null : redissonClient.getAtomicLong(SEQUENCE_KEY);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        if (topic == null) {
+            return;
+        }
+        synchronized (this) {
+            appliedSequence = getSequence();
+        }
+
+        messageListenerId = topic.addListener(AvailabilityChangeVo.class, (channel, change) -> {
+            if (!nodeId.equals(change.getNodeId())) {
+                LOGGER.debug("Applying availability change from another node: {}", change);
+                apply(change);
+            }
+        });
+
+        //Messages published while this node was not subscribed are lost, so everything is reloaded after a reconnection
+        statusListenerId = topic.addListener(new BaseStatusListener() {
+            @Override
+            public void onSubscribe(String channel) {
+                if (!subscribed.compareAndSet(false, true)) {
+                    LOGGER.info("Subscribed again to the availability changes, rebuilding the occupancy index...");
+                    reload();
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        if (topic != null) {
+            topic.removeListener(messageListenerId, statusListenerId);
+        }
+    }
+
+    /**
+     * Rebuilds the local availability from the existing bookings, for when changes could have been missed
+     */
+    public void reload() {
+        //Changes up to the current sequence are committed already, so the rebuilt index includes them
+        long current = getSequence();
+        occupancyIndex.rebuild();
+        availabilityCache.clear();
+        synchronized (this) {
+            appliedSequence = Math.max(appliedSequence, current);
+            appliedAhead.headSet(appliedSequence, true).clear();
+            epoch++;
+            upToDate = true;
+        }
+        listeners.forEach(Listener::reloaded);
+    }
+
+    public void nightsTaken(String site, LocalDate from, LocalDate to) {
+        broadcast(new AvailabilityChangeVo(nodeId, site, null, null, from, to, null));
+    }
+
+    public void nightsReleased(String site, LocalDate from, LocalDate to) {
+        broadcast(new AvailabilityChangeVo(nodeId, site, from, to, null, null, null));
+    }
+
+    public void nightsMoved(String site, LocalDate releasedFrom, LocalDate releasedTo, LocalDate takenFrom,
+                            LocalDate takenTo) {
+        broadcast(new AvailabilityChangeVo(nodeId, site, releasedFrom, releasedTo, takenFrom, takenTo, null));
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return the sequence of the latest change made by any node, or 0 if it is not available
+     */
+    public long getSequence() {
+        if (sequence == null) {
+            return localSequence.get();
+        }
+        try {
+            return sequence.get();
+        } catch (RuntimeException e) {
+            LOGGER.error("The sequence of the availability changes could not be read", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Identifies the availability answered by this node without computing it: every change up to the sequence is
+     * applied, and nodes that applied the same changes give the same version. Changes applied after a missing one
+     * only count once it arrives, or once it is given up after availability.changes.gapTimeout.
+     * @return the version of the local availability, or null if the sequence is not shared by all the nodes
+     */
+    public synchronized String getAvailabilityVersion() {
+        if (sequence == null || !upToDate) {
+            return null;
+        }
+        if (!appliedAhead.isEmpty() && System.currentTimeMillis() - gapSince >= gapTimeout) {
+            LOGGER.debug("Availability changes {} to {} did not arrive, giving them up", appliedSequence + 1,
+                    appliedAhead.first() - 1);
+            appliedSequence = appliedAhead.first() - 1;
+            advance();
+        }
+        return appliedSequence + "-" + epoch;
+    }
+
+    /**
+     * The local availability could be missing changes until it is reloaded, so it has no version meanwhile
+     */
+    public synchronized void outdated() {
+        upToDate = false;
+    }
+
+    private synchronized void applied(Long changeSequence) {
+        if (changeSequence == null || changeSequence <= appliedSequence) {
+            //Either it cannot be tracked or its gap was given up, so the versions given before do not match anymore
+            epoch++;
+            return;
+        }
+        if (appliedAhead.isEmpty()) {
+            gapSince = System.currentTimeMillis();
+        }
+        appliedAhead.add(changeSequence);
+        advance();
+    }
+
+    /**
+     * Takes the changes following the applied sequence as applied too. The next gap is waited for from now on
+     */
+    private void advance() {
+        boolean advanced = false;
+        while (!appliedAhead.isEmpty() && appliedAhead.first() == appliedSequence + 1) {
+            appliedSequence = appliedAhead.pollFirst();
+            advanced = true;
+        }
+        if (advanced) {
+            gapSince = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return whether the sequence is the one shared by all the nodes through Redis, instead of a local one
+     */
+    public boolean isSequenceShared() {
+        return sequence != null;
+    }
+
+    /**
+     * The sequence is shared by all the nodes through Redis, so clients can resume the stream of changes on any of
+     * them. Without Redis it is only local.
+     */
+    private Long nextSequence() {
+        if (sequence == null) {
+            return localSequence.incrementAndGet();
+        }
+        try {
+            return sequence.incrementAndGet();
+        } catch (RuntimeException e) {
+            LOGGER.error("The sequence of the availability changes could not be increased", e);
+            return null;
+        }
+    }
+
+    private void broadcast(AvailabilityChangeVo change) {
+        change.setSequence(nextSequence());
+        apply(change);
+
+        if (topic != null) {
+            try {
+                topic.publish(change);
+            } catch (RuntimeException e) {
+                //The booking is already committed. If Redis is unavailable the other nodes lose their subscription too,
+                //so they rebuild their index once they subscribe again
+                LOGGER.error("The availability change could not be published: {}", change, e);
+            }
+        }
+    }
+
+    private void apply(AvailabilityChangeVo change) {
+        String site = change.getSite();
+        if (change.getReleasedFrom() != null) {
+            occupancyIndex.release(site, change.getReleasedFrom(), change.getReleasedTo());
+            availabilityCache.invalidate(site, change.getReleasedFrom(), change.getReleasedTo());
+        }
+
+        if (change.getTakenFrom() != null) {
+            occupancyIndex.occupy(site, change.getTakenFrom(), change.getTakenTo());
+            availabilityCache.invalidate(site, change.getTakenFrom(), change.getTakenTo());
+        }
+        if (sequence != null) {
+            applied(change.getSequence());
+        }
+
+        listeners.forEach(listener -> listener.changed(change));
+    }
+}
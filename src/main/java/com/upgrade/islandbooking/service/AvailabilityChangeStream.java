@@ -0,0 +1,299 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.vo.AvailabilityChangeVo;
+import com.upgrade.islandbooking.vo.AvailabilityDeltaVo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Pushes the availability changes applied in this node, whichever node made them, to the clients subscribed
+ * through Server-Sent Events. The event IDs are the sequence of the changes, and the latest ones are kept so a client
+ * reconnecting with Last-Event-ID gets the changes it missed. If they are not kept anymore, it gets a reset event and
+ * must load the availability again.
+ * Changes can arrive out of order, as their sequence is taken before they are applied and published, so they are sent
+ * in sequence order. A change missing for too long is skipped, as its node could have failed to publish it, and if it
+ * arrives afterwards clients get a reset event, since the ones resuming after a later change would miss it.
+ * Events are queued per client and sent by dedicated threads, so neither the committing threads nor the pubsub ones
+ * wait for slow clients. A client whose queue is full is disconnected, and resumes with Last-Event-ID when it
+ * reconnects.
+ */
+@Component
+public class AvailabilityChangeStream implements AvailabilityChangeBroadcaster.Listener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AvailabilityChangeStream.class);
+
+    static final String CHANGE_EVENT = "change";
+    static final String RESET_EVENT = "reset";
+    static final String READY_EVENT = "ready";
+
+    private final long timeout;
+    private final int replaySize;
+    private final long gapTimeout;
+    private final int queueSize;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final NavigableMap<Long, AvailabilityDeltaVo> replay = new TreeMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService senders;
+
+    /**
+     * Changes waiting for the ones before them
+     */
+    private final NavigableMap<Long, AvailabilityDeltaVo> pending = new TreeMap<>();
+    private ScheduledFuture<?> gapCheck;
+
+    /**
+     * Sequence of the latest change sent, starting with the one of the changes made before this node started
+     */
+    private long lastSequence;
+
+    public AvailabilityChangeStream(AvailabilityChangeBroadcaster broadcaster,
+                                    @Value("${availability.stream.timeout}") long timeout,
+                                    @Value("${availability.stream.replaySize}") int replaySize,
+                                    @Value("${availability.stream.heartbeat}") long heartbeatInterval,
+                                    @Value("${availability.changes.gapTimeout}") long gapTimeout,
+                                    @Value("${availability.stream.queueSize}") int queueSize,
+                                    @Value("${availability.stream.senders}") int senders) {
+        this.timeout = timeout;
+        this.replaySize = replaySize;
+        this.gapTimeout = gapTimeout;
+        this.queueSize = queueSize;
+        this.lastSequence = broadcaster.getSequence();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("availability-sse-"));
+        this.senders = Executors.newFixedThreadPool(senders, new CustomizableThreadFactory("availability-sse-sender-"));
+        this.scheduler.scheduleWithFixedDelay(this::sendHeartbeat, heartbeatInterval, heartbeatInterval,
+                TimeUnit.MILLISECONDS);
+        broadcaster.addListener(this);
+    }
+
+    /**
+     * Clients without a last event ID get a ready event with the ID to resume from, so they should subscribe before
+     * loading the availability
+     */
+    public synchronized SseEmitter subscribe(@Nullable Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        Subscriber subscriber = new Subscriber(emitter, lastEventId == null ? lastSequence : lastEventId);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscribers.remove(subscriber));
+
+        //The emitter is not bound to the response yet, so these are only buffered and can be sent right away
+        if (lastEventId == null) {
+            send(subscriber, () -> SseEmitter.event().name(READY_EVENT).id(String.valueOf(lastSequence)).data(""));
+        } else {
+            List<Map.Entry<Long, AvailabilityDeltaVo>> missed = getChangesAfter(lastEventId);
+            if (missed == null) {
+                LOGGER.debug("Changes after {} are not kept anymore, sending a reset event", lastEventId);
+                send(subscriber, AvailabilityChangeStream::resetEvent);
+            } else {
+                missed.forEach(change -> send(subscriber, () -> changeEvent(change.getKey(), change.getValue())));
+            }
+        }
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    /**
+     * @return the changes after the given sequence, or null if some of them are not kept anymore
+     */
+    synchronized List<Map.Entry<Long, AvailabilityDeltaVo>> getChangesAfter(long sequence) {
+        if (sequence >= lastSequence) {
+            return List.of();
+        }
+        if (replay.isEmpty() || replay.firstKey() > sequence + 1) {
+            return null;
+        }
+        return new ArrayList<>(replay.tailMap(sequence, false).entrySet());
+    }
+
+    @Override
+    public synchronized void changed(AvailabilityChangeVo change) {
+        //Without a sequence the change cannot be resumed, so clients are told to load everything again
+        if (change.getSequence() == null) {
+            reloaded();
+            return;
+        }
+
+        long sequence = change.getSequence();
+        if (sequence <= lastSequence) {
+            LOGGER.debug("Availability change {} arrived after later ones were sent, sending a reset event", sequence);
+            reloaded();
+            return;
+        }
+
+        pending.put(sequence, AvailabilityDeltaVo.of(change));
+        sendPending();
+        if (!pending.isEmpty() && gapCheck == null) {
+            gapCheck = scheduler.schedule(this::skipGap, gapTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends the pending changes that follow the latest one sent
+     */
+    private void sendPending() {
+        while (!pending.isEmpty() && pending.firstKey() == lastSequence + 1) {
+            Map.Entry<Long, AvailabilityDeltaVo> change = pending.pollFirstEntry();
+            long sequence = change.getKey();
+            AvailabilityDeltaVo delta = change.getValue();
+            replay.put(sequence, delta);
+            if (replay.size() > replaySize) {
+                replay.pollFirstEntry();
+            }
+            lastSequence = sequence;
+            subscribers.stream()
+                    .filter(subscriber -> sequence > subscriber.after)
+                    .forEach(subscriber -> enqueue(subscriber, () -> changeEvent(sequence, delta)));
+        }
+    }
+
+    private synchronized void skipGap() {
+        gapCheck = null;
+        if (pending.isEmpty()) {
+            return;
+        }
+        LOGGER.debug("Availability changes {} to {} did not arrive, skipping them", lastSequence + 1,
+                pending.firstKey() - 1);
+        replay.clear();
+        lastSequence = pending.firstKey() - 1;
+        sendPending();
+        if (!pending.isEmpty()) {
+            gapCheck = scheduler.schedule(this::skipGap, gapTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Changes could have been missed, so the kept ones cannot be used to resume anymore
+     */
+    @Override
+    public synchronized void reloaded() {
+        replay.clear();
+        subscribers.forEach(subscriber -> enqueue(subscriber, AvailabilityChangeStream::resetEvent));
+    }
+
+    private static SseEmitter.SseEventBuilder resetEvent() {
+        return SseEmitter.event().name(RESET_EVENT).data("");
+    }
+
+    private static SseEmitter.SseEventBuilder changeEvent(long sequence, AvailabilityDeltaVo delta) {
+        return SseEmitter.event().name(CHANGE_EVENT).id(String.valueOf(sequence)).data(delta);
+    }
+
+    /**
+     * Keeps idle connections open through proxies, and finds the clients that went away
+     */
+    private void sendHeartbeat() {
+        subscribers.forEach(subscriber -> enqueue(subscriber, () -> SseEmitter.event().comment("")));
+    }
+
+    /**
+     * Queues the event to be sent by the sender threads, disconnecting the client if it is too far behind.
+     * Event builders are changed when they are sent, so each client builds its own
+     */
+    private void enqueue(Subscriber subscriber, Supplier<SseEmitter.SseEventBuilder> event) {
+        if (!subscriber.queue.offer(event)) {
+            LOGGER.debug("Availability changes client is too slow, disconnecting it");
+            subscribers.remove(subscriber);
+            subscriber.emitter.complete();
+            return;
+        }
+        if (subscriber.draining.compareAndSet(false, true)) {
+            try {
+                senders.execute(() -> drain(subscriber));
+            } catch (RejectedExecutionException e) {
+                //Shutting down
+                subscriber.draining.set(false);
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            do {
+                Supplier<SseEmitter.SseEventBuilder> event;
+                while ((event = subscriber.queue.poll()) != null) {
+                    if (!send(subscriber, event)) {
+                        subscriber.queue.clear();
+                        return;
+                    }
+                }
+                subscriber.draining.set(false);
+                //Events queued after the queue was found empty but before the flag was cleared are not lost
+            } while (!subscriber.queue.isEmpty() && subscriber.draining.compareAndSet(false, true));
+        } catch (RuntimeException e) {
+            LOGGER.error("Availability changes could not be sent to a client, disconnecting it", e);
+            subscribers.remove(subscriber);
+            subscriber.queue.clear();
+            subscriber.draining.set(false);
+            subscriber.emitter.completeWithError(e);
+        }
+    }
+
+    private boolean send(Subscriber subscriber, Supplier<SseEmitter.SseEventBuilder> event) {
+        try {
+            subscriber.emitter.send(event.get());
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            LOGGER.debug("Availability changes client is gone: {}", e.getMessage());
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    public int getSubscribers() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        senders.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        /**
+         * Sequence of the latest change the client has, so the ones sent by other nodes before it resumed are skipped
+         */
+        private final long after;
+
+        private final BlockingQueue<Supplier<SseEmitter.SseEventBuilder>> queue = new ArrayBlockingQueue<>(queueSize);
+
+        /**
+         * Whether a sender thread is sending the queued events, so they are sent by one thread at a time and in order
+         */
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter, long after) {
+            this.emitter = emitter;
+            this.after = after;
+        }
+    }
+}
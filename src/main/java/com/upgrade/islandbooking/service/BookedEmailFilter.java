@@ -0,0 +1,199 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.domain.repository.PersonRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bloom filter of the emails with a booking, shared by every node through Redis. An email it does not contain
+ * certainly has no booking, so the person does not need to be looked up. The ones it contains could be false
+ * positives and are confirmed against the database.
+ * Emails cannot be removed from it, so it is rebuilt from the existing people once rebuildAfterRemovals bookings were
+ * deleted. An email missing from it by mistake (e.g. booked while it was being rebuilt) is still rejected by the
+ * primary key of the person table.
+ */
+@Component
+public class BookedEmailFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookedEmailFilter.class);
+
+    private static final String FILTER_KEY = "booked_emails";
+    private static final String CONFIG_KEY = "{booked_emails}:config";
+    private static final String REBUILD_KEY = "booked_emails:rebuild";
+    private static final String REMOVALS_KEY = "booked_emails:removals";
+    private static final String REBUILD_LOCK_KEY = "booked_emails:rebuild_lock";
+
+    private final PersonRepository personRepository;
+    private final RedissonClient redissonClient;
+    private final long expectedInsertions;
+    private final double falseProbability;
+    private final long rebuildAfterRemovals;
+    private final RAtomicLong removals;
+    private final ExecutorService rebuilder;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private final Counter absent;
+    private final Counter present;
+    private final Counter falsePositive;
+
+    private volatile RBloomFilter<String> filter;
+
+    /**
+     * Without redisson client (or when it is disabled) every email could be booked, so all of them are looked up
+     */
+    public BookedEmailFilter(PersonRepository personRepository, @Nullable RedissonClient redissonClient,
+                             MeterRegistry meterRegistry,
+                             @Value("${person.filter.enabled}") boolean enabled,
+                             @Value("${person.filter.expectedInsertions}") long expectedInsertions,
+                             @Value("${person.filter.falseProbability}") double falseProbability,
+                             @Value("${person.filter.rebuildAfterRemovals}") long rebuildAfterRemovals) {
+        this.personRepository = personRepository;
+        this.redissonClient = enabled ? redissonClient : null;
+        this.expectedInsertions = expectedInsertions;
+        this.falseProbability = falseProbability;
+        this.rebuildAfterRemovals = rebuildAfterRemovals;
+        this.removals = this.redissonClient == null ? null : this.redissonClient.getAtomicLong(REMOVALS_KEY);
+        this.rebuilder = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("email-filter-"));
+        this.absent = checkCounter(meterRegistry, "absent");
+        this.present = checkCounter(meterRegistry, "present");
+        this.falsePositive = checkCounter(meterRegistry, "false_positive");
+    }
+
+    private static Counter checkCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("person.filter.checks")
+                .description("Emails checked against the filter, the absent ones did not need a database query")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Builds the filter if no other node did it before
+     */
+    @PostConstruct
+    public void init() {
+        if (redissonClient == null) {
+            return;
+        }
+        //The filter is initialized once its config exists, its bits only once an email is added
+        if (redissonClient.getKeys().countExists(CONFIG_KEY) == 0) {
+            rebuild();
+        }
+        filter = redissonClient.getBloomFilter(FILTER_KEY);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdownNow();
+    }
+
+    /**
+     * @return false if the email certainly has no booking
+     */
+    public boolean mightBeBooked(String email) {
+        RBloomFilter<String> current = filter;
+        if (current == null) {
+            return true;
+        }
+        try {
+            if (current.contains(email)) {
+                return true;
+            }
+            absent.increment();
+            return false;
+        } catch (RuntimeException e) {
+            //e.g. rebuilt with other settings by another node, the config is read again next time
+            LOGGER.warn("Could not check the email filter, looking up the person: {}", e.getMessage());
+            filter = redissonClient.getBloomFilter(FILTER_KEY);
+            return true;
+        }
+    }
+
+    /**
+     * Tells whether an email the filter could contain was really booked, to measure its false positives
+     */
+    public void confirmed(boolean booked) {
+        (booked ? present : falsePositive).increment();
+    }
+
+    /**
+     * To be called once the booking of the email is committed
+     */
+    public void booked(String email) {
+        RBloomFilter<String> current = filter;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.add(email);
+        } catch (RuntimeException e) {
+            //Only makes the filter miss it, the primary key of the person still rejects a second booking
+            LOGGER.error("Could not add {} to the email filter", email, e);
+        }
+    }
+
+    /**
+     * To be called once the booking of the email is deleted. The email stays in the filter as a false positive until
+     * it is rebuilt.
+     */
+    public void released(String email) {
+        if (removals == null || rebuildAfterRemovals <= 0) {
+            return;
+        }
+        try {
+            //Only the node counting the removal that completes each round rebuilds it
+            if (removals.incrementAndGet() % rebuildAfterRemovals == 0 && rebuilding.compareAndSet(false, true)) {
+                rebuilder.execute(() -> {
+                    try {
+                        rebuild();
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Could not rebuild the email filter", e);
+                    } finally {
+                        rebuilding.set(false);
+                    }
+                });
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not count the removal of {} from the email filter", email, e);
+        }
+    }
+
+    /**
+     * Replaces the shared filter with one built from the existing people. It is built aside and renamed, so nodes
+     * never use a partially built filter, and one node at a time builds it.
+     */
+    public void rebuild() {
+        RLock lock = redissonClient.getLock(REBUILD_LOCK_KEY);
+        lock.lock();
+        try {
+            LOGGER.info("Building the email filter from the existing people...");
+            RBloomFilter<String> rebuilt = redissonClient.getBloomFilter(REBUILD_KEY);
+            rebuilt.delete();
+            rebuilt.tryInit(expectedInsertions, falseProbability);
+            long count = 0;
+            for (String email : personRepository.findAllEmails()) {
+                rebuilt.add(email);
+                count++;
+            }
+            rebuilt.rename(FILTER_KEY);
+            LOGGER.info("Email filter built from {} people", count);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Timers of each stage of the booking operations (lock wait, lock hold, validation queries, persist and commit),
+ * of the whole request, and counters of the errors raised. Meters are created once and reused, so recording only
+ * costs a clock read, and nothing else when they are disabled with management.metrics.enable.booking=false.
+ */
+@Component
+public class BookingMetrics {
+
+    public enum Operation {
+        RESERVE("reserve"),
+        RESERVE_BATCH("reserve_batch"),
+        UPDATE("update"),
+        DELETE("delete");
+
+        private final String tag;
+
+        Operation(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private static final String OUTCOME_SUCCESS = "success";
+    private static final String OUTCOME_EXCEPTION = "exception";
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final MeterRegistry registry;
+
+    private final Map<Operation, Timer> lockWaitTimers = new EnumMap<>(Operation.class);
+    private final Map<Operation, Timer> lockHoldTimers = new EnumMap<>(Operation.class);
+    private final Map<Operation, Timer> validationTimers = new EnumMap<>(Operation.class);
+    private final Map<Operation, Timer> persistTimers = new EnumMap<>(Operation.class);
+    private final Map<Operation, Timer> commitTimers = new EnumMap<>(Operation.class);
+    private final Map<Operation, Timer> successTimers = new EnumMap<>(Operation.class);
+    //Per outcome of the failed requests, created the first time each one happens
+    private final Map<Operation, Map<String, Timer>> failureTimers = new EnumMap<>(Operation.class);
+    private final Map<Error, Counter> errorCounters = new EnumMap<>(Error.class);
+
+    private final AtomicInteger lockWaiters = new AtomicInteger();
+    private final AtomicLong lockHoldAverage = new AtomicLong();
+    //Lock wait of the request being run by each thread, for the audit log
+    private final ThreadLocal<long[]> threadLockWait = ThreadLocal.withInitial(() -> new long[1]);
+
+    public BookingMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Operation operation : Operation.values()) {
+            lockWaitTimers.put(operation, timer("booking.lock.wait", "Time waiting to acquire the locks", operation));
+            lockHoldTimers.put(operation, timer("booking.lock.hold", "Time the locks are held", operation));
+            validationTimers.put(operation, timer("booking.validation", "Time of the validation queries", operation));
+            persistTimers.put(operation, timer("booking.persist", "Time writing to the database", operation));
+            commitTimers.put(operation, timer("booking.commit", "Time flushing and committing the transaction",
+                    operation));
+            successTimers.put(operation, requestTimer(operation, OUTCOME_SUCCESS));
+            failureTimers.put(operation, new ConcurrentHashMap<>());
+        }
+        for (Error error : Error.values()) {
+            errorCounters.put(error, Counter.builder("booking.errors")
+                    .description("Errors raised by the booking operations")
+                    .tag("error", error.name())
+                    .register(registry));
+        }
+        Gauge.builder("booking.lock.waiters", lockWaiters, AtomicInteger::get)
+                .description("Requests of this node waiting to acquire the locks")
+                .register(registry);
+    }
+
+    private Timer timer(String name, String description, Operation operation) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("operation", operation.tag)
+                .register(registry);
+    }
+
+    private Timer requestTimer(Operation operation, String outcome) {
+        return Timer.builder("booking.request")
+                .description("End-to-end time of the booking requests")
+                .tag("operation", operation.tag)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private Timer failureTimer(Operation operation, String outcome) {
+        return failureTimers.get(operation).computeIfAbsent(outcome, key -> requestTimer(operation, key));
+    }
+
+    private static void record(Timer timer, long startNanos) {
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the start of the wait, to be recorded with {@link #recordLockWait} whether the locks are acquired or not
+     */
+    public long startLockWait() {
+        lockWaiters.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void recordLockWait(Operation operation, long startNanos) {
+        lockWaiters.decrementAndGet();
+        long waitNanos = System.nanoTime() - startNanos;
+        lockWaitTimers.get(operation).record(waitNanos, TimeUnit.NANOSECONDS);
+        threadLockWait.get()[0] += waitNanos;
+    }
+
+    /**
+     * @return the time the current thread waited for locks since the last call, which resets it
+     */
+    public long takeLockWait() {
+        long[] wait = threadLockWait.get();
+        long waitNanos = wait[0];
+        wait[0] = 0;
+        return waitNanos;
+    }
+
+    /**
+     * Also keeps an exponentially weighted average of the hold times, which gives more weight to the latest ones
+     */
+    public void recordLockHold(Operation operation, long startNanos) {
+        long holdNanos = System.nanoTime() - startNanos;
+        lockHoldTimers.get(operation).record(holdNanos, TimeUnit.NANOSECONDS);
+        lockHoldAverage.accumulateAndGet(holdNanos,
+                (average, hold) -> average == 0 ? hold : average + (hold - average) / 5);
+    }
+
+    /**
+     * Estimates when the locks could be free, assuming every request waiting for them holds them for the average time
+     * @return the seconds to wait before retrying, at least one
+     */
+    public long getRetryAfterSeconds() {
+        long estimate = lockHoldAverage.get() * (lockWaiters.get() + 1);
+        return Math.max(1, (estimate + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+    }
+
+    public void recordValidation(Operation operation, long startNanos) {
+        record(validationTimers.get(operation), startNanos);
+    }
+
+    public void recordPersist(Operation operation, long startNanos) {
+        record(persistTimers.get(operation), startNanos);
+    }
+
+    public void recordCommit(Operation operation, long startNanos) {
+        record(commitTimers.get(operation), startNanos);
+    }
+
+    public void countError(Error error) {
+        errorCounters.get(error).increment();
+    }
+
+    /**
+     * Runs the request recording its end-to-end time, tagged with the error raised if it fails
+     */
+    public <T> T timeRequest(Operation operation, Supplier<T> request) {
+        long start = System.nanoTime();
+        try {
+            T result = request.get();
+            record(successTimers.get(operation), start);
+            return result;
+        } catch (ServiceException e) {
+            record(failureTimer(operation, e.getError().name()), start);
+            throw e;
+        } catch (RuntimeException e) {
+            record(failureTimer(operation, OUTCOME_EXCEPTION), start);
+            throw e;
+        }
+    }
+
+    public void timeRequest(Operation operation, Runnable request) {
+        timeRequest(operation, () -> {
+            request.run();
+            return null;
+        });
+    }
+}
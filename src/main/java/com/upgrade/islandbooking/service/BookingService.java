@@ -1,27 +1,63 @@
 package com.upgrade.islandbooking.service;
 
 import com.upgrade.islandbooking.domain.entity.Booking;
+import com.upgrade.islandbooking.domain.entity.BookingNight;
 import com.upgrade.islandbooking.domain.entity.Person;
+import com.upgrade.islandbooking.domain.repository.BookingNightRepository;
 import com.upgrade.islandbooking.domain.repository.BookingRepository;
 import com.upgrade.islandbooking.domain.repository.PersonRepository;
 import com.upgrade.islandbooking.exception.Error;
 import com.upgrade.islandbooking.exception.ServiceException;
-import com.upgrade.islandbooking.util.DateUtil;
+import com.upgrade.islandbooking.service.BookingMetrics.Operation;
+import com.upgrade.islandbooking.vo.BookingBatchResultVo;
+import com.upgrade.islandbooking.vo.BookingImportVo;
 import com.upgrade.islandbooking.vo.BookingReserveVo;
 import com.upgrade.islandbooking.vo.BookingUpdateVo;
+import com.upgrade.islandbooking.vo.BookingVo;
+import com.upgrade.islandbooking.vo.DateIntervalVo;
+import org.hibernate.exception.ConstraintViolationException;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
-
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityExistsException;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class BookingService {
@@ -30,33 +66,151 @@ public class BookingService {
 
     private static final String LOCK_KEY = "resource_lock";
 
+    private static final int STREAM_WINDOW = 366;
+
+    //Representations of the availability, identified by different ETags
+    public static final String AVAILABLE_DAYS = "days";
+    public static final String AVAILABLE_INTERVALS = "intervals";
+
     @Value("${rule.dateRange.max}")
     private Integer maxDateRangeSize;
 
     @Value("${locking.timeout}")
     private Long lockingTimeout;
 
+    @Value("${locking.maxWait}")
+    private Long lockingMaxWait;
+
+    @Value("${locking.nightTable.enabled:false}")
+    private boolean nightTableEnabled;
+
+    @Value("${availability.calendar.redis.enabled:false}")
+    private boolean redisCalendarEnabled;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     final private BookingRepository bookingRepository;
     final private PersonRepository personRepository;
+    final private BookingNightRepository bookingNightRepository;
     final private RedissonClient redissonClient;
-
-    public BookingService(BookingRepository bookingRepository, PersonRepository personRepository, RedissonClient redissonClient) {
+    final private OccupancyIndex occupancyIndex;
+    final private RedisOccupancyCalendar occupancyCalendar;
+    final private AvailabilityCache availabilityCache;
+    final private AvailabilityChangeBroadcaster availabilityChangeBroadcaster;
+    final private BookingMetrics metrics;
+    final private SiteCatalog siteCatalog;
+    final private BookedEmailFilter bookedEmailFilter;
+
+    /**
+     * The redisson client is optional because it is not needed when the database is the one enforcing the
+     * exclusion of nights (booking_night table)
+     */
+    public BookingService(BookingRepository bookingRepository, PersonRepository personRepository,
+                          BookingNightRepository bookingNightRepository, @Nullable RedissonClient redissonClient,
+                          OccupancyIndex occupancyIndex, RedisOccupancyCalendar occupancyCalendar,
+                          AvailabilityCache availabilityCache,
+                          AvailabilityChangeBroadcaster availabilityChangeBroadcaster, BookingMetrics metrics,
+                          SiteCatalog siteCatalog, BookedEmailFilter bookedEmailFilter) {
         this.bookingRepository = bookingRepository;
         this.personRepository = personRepository;
+        this.bookingNightRepository = bookingNightRepository;
         this.redissonClient = redissonClient;
+        this.occupancyIndex = occupancyIndex;
+        this.occupancyCalendar = occupancyCalendar;
+        this.availabilityCache = availabilityCache;
+        this.availabilityChangeBroadcaster = availabilityChangeBroadcaster;
+        this.metrics = metrics;
+        this.siteCatalog = siteCatalog;
+        this.bookedEmailFilter = bookedEmailFilter;
+    }
+
+    /**
+     * Builds the shared calendars if they are enabled and no other node did it before
+     */
+    @PostConstruct
+    public void initCalendar() {
+        if (redisCalendarEnabled && !siteCatalog.getSites().stream().allMatch(occupancyCalendar::exists)) {
+            rebuildCalendar();
+        }
+    }
+
+    /**
+     * Replaces the shared calendars with the nights of the existing bookings. Changes committed while they are being
+     * rebuilt could be lost, so it should be done when no bookings are being made.
+     * The bookings are always read from the primary, a lagging read replica would leave some of them out.
+     */
+    public void rebuildCalendar() {
+        occupancyCalendar.rebuild(siteCatalog.getSites(), bookingRepository.findAll());
+    }
+
+    /**
+     * Runs the action once the current transaction is committed, or right away if there is no transaction.
+     * It avoids exposing changes in memory that could still be rolled back.
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Records the time taken by the flush and the commit of the current transaction, if there is one
+     */
+    private void timeCommit(Operation operation) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                private long start;
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    start = System.nanoTime();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED && start > 0) {
+                        metrics.recordCommit(operation, start);
+                    }
+                }
+            });
+        }
     }
 
-    private Booking getExistingBooking(String id) {
-        LOGGER.debug("Checking if the booking with ID " + id + " exists...");
-        Optional<Booking> booking = bookingRepository.findById(id);
+    /**
+     * IDs are opaque for clients, so the ones that are not well formed simply do not exist
+     */
+    private static UUID parseId(String id) {
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Booking with ID {} does not exist", id);
+            throw new ServiceException(Error.BOOKING_NOT_FOUND, new Object[]{id});
+        }
+    }
+
+    private Booking getExistingBooking(UUID id) {
+        LOGGER.debug("Checking if the booking with ID {} exists...", id);
+        //Without distributed locks, the row lock is the one avoiding concurrent changes over the same booking.
+        //Either way it is read from the database, the second-level cache could still hold a previous version
+        Optional<Booking> booking = nightTableEnabled
+                ? bookingRepository.findWithLockById(id)
+                : bookingRepository.findFreshById(id);
         if(booking == null || booking.isEmpty()) {
-            LOGGER.error("Booking with ID " + id + " does not exist");
+            LOGGER.error("Booking with ID {} does not exist", id);
             throw new ServiceException(Error.BOOKING_NOT_FOUND, new Object[]{id});
         }
         return booking.get();
     }
 
-    private void validateDateRangeForUpdate(Booking booking, BookingUpdateVo vo) {
+    private void validateDatesForUpdate(Booking booking, BookingUpdateVo vo) {
         if(vo.getFrom() == null) {
             vo.setFrom(booking.getFromDate());
         }
@@ -66,23 +220,32 @@ public class BookingService {
         }
 
         if(!vo.isValidDateFrom()) {
-            LOGGER.error("Date from must be greater than today " + vo.getFrom().toString());
+            LOGGER.error("Date from must be greater than today {}", vo.getFrom());
             throw new ServiceException(Error.BOOKING_NOTVALID_DATE_FROM, new Object[]{vo.getFrom()});
         }
 
         if(!vo.isValidDateRange()) {
-            LOGGER.error("Date from must be less than date to: from "
-                    + vo.getFrom().toString() + " - to " + vo.getTo().toString());
+            LOGGER.error("Date from must be less than date to: from {} - to {}", vo.getFrom(), vo.getTo());
             throw new ServiceException(Error.BOOKING_NOTVALID_DATE_RANGE, new Object[]{vo.getFrom(), vo.getTo()});
         }
 
         if(!vo.isLessThanMaxRange()) {
-            LOGGER.error("The max range date is 3 days: from "
-                    + vo.getFrom().toString() + " - to " + vo.getTo().toString());
+            LOGGER.error("The max range date is 3 days: from {} - to {}", vo.getFrom(), vo.getTo());
             throw new ServiceException(Error.BOOKING_MAX_DATE_RANGE, new Object[]{vo.getFrom(), vo.getTo()});
         }
+    }
+
+    private void validateDateRangeForUpdate(Booking booking, String site, BookingUpdateVo vo) {
+        //The nights of the booking itself are not a conflict, unless it is moved to another site
+        if (redisCalendarEnabled) {
+            boolean sameSite = site.equals(booking.getSite());
+            validateCalendarRange(site, vo.getFrom(), vo.getTo(), sameSite ? booking.getFromDate() : null,
+                    sameSite ? booking.getToDate() : null);
+            return;
+        }
 
-        Long count = bookingRepository.countByIdIsNotAndFromDateBetweenAndToDateGreaterThan(booking.getId(),
+        Long count = bookingRepository.countBySiteAndIdIsNotAndFromDateBetweenAndToDateGreaterThan(site,
+                booking.getId(),
                 vo.getFrom().minusDays(maxDateRangeSize),
                 vo.getTo().minusDays(1),
                 vo.getFrom());
@@ -90,14 +253,19 @@ public class BookingService {
         //Validates if the date rage is not available
         LOGGER.debug("Checking if date range is not being used for other booking(s)...");
         if(count != null && count.longValue() > 0) {
-            LOGGER.error("Date range is being used partially or totally for other booking(s): from "
-                    + vo.getFrom().toString() + " - to " + vo.getTo().toString());
+            LOGGER.error("Date range is being used partially or totally for other booking(s): from {} - to {}",
+                    vo.getFrom(), vo.getTo());
             throw new ServiceException(Error.DATE_RANGE_IS_BEING_USED, new Object[]{vo.getFrom(), vo.getTo()});
         }
     }
 
-    private void validateDateRangeForReserve(LocalDate from, LocalDate to) {
-        Long count = bookingRepository.countByFromDateBetweenAndToDateGreaterThan(
+    private void validateDateRangeForReserve(String site, LocalDate from, LocalDate to) {
+        if (redisCalendarEnabled) {
+            validateCalendarRange(site, from, to, null, null);
+            return;
+        }
+
+        Long count = bookingRepository.countBySiteAndFromDateBetweenAndToDateGreaterThan(site,
                 from.minusDays(maxDateRangeSize),
                 to.minusDays(1),
                 from);
@@ -105,73 +273,472 @@ public class BookingService {
         //Validates if the date rage is not available
         LOGGER.debug("Checking if date range is not being used for other booking(s)...");
         if(count != null && count.longValue() > 0) {
-            LOGGER.error("Date range is being used partially or totally for other booking(s): from "
-                    + from.toString() + " - to " + to.toString());
+            LOGGER.error("Date range is being used partially or totally for other booking(s): from {} - to {}",
+                    from, to);
+            throw new ServiceException(Error.DATE_RANGE_IS_BEING_USED, new Object[]{from, to});
+        }
+    }
+
+    private void validateCalendarRange(String site, LocalDate from, LocalDate to, LocalDate ignoredFrom,
+                                       LocalDate ignoredTo) {
+        LOGGER.debug("Checking in the calendar if date range is not being used for other booking(s)...");
+        if (!occupancyCalendar.isFree(site, from, to, ignoredFrom, ignoredTo)) {
+            LOGGER.error("Date range is being used partially or totally for other booking(s): from {} - to {}",
+                    from, to);
             throw new ServiceException(Error.DATE_RANGE_IS_BEING_USED, new Object[]{from, to});
         }
     }
 
+    /**
+     * Marks the nights as taken in the shared calendar while they are still locked and before the commit, so a
+     * calendar that cannot be updated makes the change fail instead of letting other requests take the same nights.
+     * If the transaction is rolled back they are released again, except the kept ones, still taken by the booking
+     */
+    private void occupyCalendar(String site, LocalDate from, LocalDate to, @Nullable LocalDate keptFrom,
+                                @Nullable LocalDate keptTo) {
+        if (!redisCalendarEnabled) {
+            return;
+        }
+        occupancyCalendar.occupy(site, from, to);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        releaseCalendar(site, from, to, keptFrom, keptTo);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Marks the nights as free in the shared calendar once the change is committed, except the kept ones, now taken
+     * by the booking. If it fails they are shown as taken until the calendar is rebuilt, but never booked twice
+     */
+    private void releaseCalendar(String site, LocalDate from, LocalDate to, @Nullable LocalDate keptFrom,
+                                 @Nullable LocalDate keptTo) {
+        if (!redisCalendarEnabled) {
+            return;
+        }
+        try {
+            occupancyCalendar.release(site, from, to, keptFrom, keptTo);
+        } catch (RuntimeException e) {
+            LOGGER.error("The occupancy calendar could not be updated, it must be rebuilt to show the nights as free",
+                    e);
+        }
+    }
+
     private void validatePerson(String email) {
-        //Validates if the person already exists, that means the person has another existing booking
+        //Validates if the person already exists, that means the person has another existing booking.
+        //Most emails are not booked, and the filter tells it without going to the database
+        if (!bookedEmailFilter.mightBeBooked(email)) {
+            return;
+        }
         LOGGER.debug("Checking if the person already exists...");
         Optional<Person> person = personRepository.findById(email);
+        bookedEmailFilter.confirmed(person != null && person.isPresent());
         if(person != null && !person.isEmpty()) {
-            LOGGER.error("There is already a person with email " + email);
+            LOGGER.error("There is already a person with email {}", email);
             throw new ServiceException(Error.PERSON_HAS_BOOKING, new Object[]{email});
         }
 
     }
 
+    private Person savePerson(Person person) {
+        //Reservations for different nights do not share locks, so the same person could be booking twice at once.
+        //Persisted instead of saved, so the primary key also rejects the people the email filter missed instead of
+        //merging them, and flushed so the violation shows up here instead of at commit time
+        try {
+            entityManager.persist(person);
+            entityManager.flush();
+            return person;
+        } catch (EntityExistsException e) {
+            LOGGER.error("There is already a person with email {}", person.getEmail());
+            throw new ServiceException(Error.PERSON_HAS_BOOKING, new Object[]{person.getEmail()});
+        } catch (PersistenceException e) {
+            //The person is the only change flushed here and its primary key its only constraint, any other failure
+            //(e.g. a lost connection) is not about the person having a booking
+            if (!(e.getCause() instanceof ConstraintViolationException)) {
+                throw e;
+            }
+            LOGGER.error("There is already a person with email {}", person.getEmail());
+            throw new ServiceException(Error.PERSON_HAS_BOOKING, new Object[]{person.getEmail()});
+        }
+    }
+
+    @Nullable
+    private static UUID getAssignedId(BookingReserveVo vo) {
+        return vo instanceof BookingImportVo && ((BookingImportVo) vo).getBookingId() != null
+                ? UUID.fromString(((BookingImportVo) vo).getBookingId())
+                : null;
+    }
+
+    /**
+     * People are inserted by statements of their own, so a violation raised by one of them is an email already
+     * booked. Any other one comes from the bookings or their nights
+     */
+    private static boolean isPersonViolation(ConstraintViolationException e) {
+        return e.getSQL() != null && e.getSQL().trim().toLowerCase(Locale.ROOT).startsWith("insert into person ");
+    }
+
+    /**
+     * Inserts a row per night of the booking. The site and the night are the primary key, so the database rejects
+     * the nights already taken by other bookings, including the ones of transactions still in progress.
+     */
+    private void saveNights(Booking booking) {
+        List<BookingNight> nights = booking.getFromDate().datesUntil(booking.getToDate())
+                .map(night -> new BookingNight(night, booking))
+                .collect(Collectors.toList());
+
+        try {
+            bookingNightRepository.saveAllAndFlush(nights);
+        } catch (DataIntegrityViolationException | PessimisticLockingFailureException e) {
+            LOGGER.error("Date range is being used partially or totally for other booking(s): from {} - to {}",
+                    booking.getFromDate(), booking.getToDate());
+            throw new ServiceException(Error.DATE_RANGE_IS_BEING_USED,
+                    new Object[]{booking.getFromDate(), booking.getToDate()});
+        }
+    }
+
+    /**
+     * The lock keys are also used by the reactive mode, so its nodes and these ones exclude each other
+     */
+    public static String getNightLockKey(String site, LocalDate night) {
+        return LOCK_KEY + ":" + site + ":" + night.toEpochDay();
+    }
+
+    public static String getBookingLockKey(UUID id) {
+        return LOCK_KEY + ":booking:" + id;
+    }
+
+    private List<RLock> lockBooking(Operation operation, UUID id) {
+        if (nightTableEnabled) {
+            return Collections.emptyList();
+        }
+
+        RLock lock = redissonClient.getLock(getBookingLockKey(id));
+        acquire(operation, lock);
+        return List.of(lock);
+    }
+
+    /**
+     * Waits for the lock up to locking.maxWait, so request threads do not pile up behind a busy lock. Requests
+     * not getting it are rejected with a hint of when to retry.
+     */
+    private void acquire(Operation operation, RLock lock) {
+        boolean acquired;
+        long start = metrics.startLockWait();
+        try {
+            acquired = lock.tryLock(lockingMaxWait, lockingTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        } finally {
+            metrics.recordLockWait(operation, start);
+        }
+
+        if (!acquired) {
+            long retryAfter = metrics.getRetryAfterSeconds();
+            LOGGER.error("The locks for {} were not acquired after {} ms", operation, lockingMaxWait);
+            throw new ServiceException(Error.LOCK_CONTENTION, new Object[]{retryAfter});
+        }
+    }
+
+    private static SortedSet<LocalDate> getNights(LocalDate from, LocalDate to) {
+        SortedSet<LocalDate> nights = new TreeSet<>();
+        if (from != null && to != null && from.isBefore(to)) {
+            from.datesUntil(to).forEach(nights::add);
+        }
+        return nights;
+    }
+
+    private static SortedSet<String> getNightLockKeys(String site, Collection<LocalDate> nights) {
+        SortedSet<String> keys = new TreeSet<>();
+        nights.forEach(night -> keys.add(getNightLockKey(site, night)));
+        return keys;
+    }
+
+    /**
+     * Locks every given night at once. Lock keys are sorted, so the locks are always requested in the same order
+     * and requests for disjoint nights, or for different sites, never wait for each other.
+     * @return the locks to release once the work is done
+     */
+    private List<RLock> lockNights(Operation operation, SortedSet<String> keys) {
+        if (nightTableEnabled || keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        RLock[] locks = keys.stream()
+                .map(redissonClient::getLock)
+                .toArray(RLock[]::new);
+        acquire(operation, redissonClient.getMultiLock(locks));
+        return Arrays.asList(locks);
+    }
+
+    /**
+     * Releases the locks once the current transaction is completed, or right away if there is no transaction.
+     * Releasing them before the commit would let other requests validate against data not yet visible.
+     * @param lockedAt when the first of the locks was acquired
+     */
+    private void unlockAfterCompletion(Operation operation, List<RLock> locks, long lockedAt) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    unlock(operation, locks, lockedAt);
+                }
+            });
+        } else {
+            unlock(operation, locks, lockedAt);
+        }
+    }
+
+    private void unlock(Operation operation, List<RLock> locks, long lockedAt) {
+        if (locks.isEmpty()) {
+            return;
+        }
+        for (RLock lock : locks) {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+        metrics.recordLockHold(operation, lockedAt);
+    }
+
     @Transactional(isolation = Isolation.READ_COMMITTED)
     public String reserve(BookingReserveVo vo) {
-        LOGGER.debug("Creating a new booking for email " + vo.getPersonEmail()
-            + "and date range " + vo.getFrom() + " - " + vo.getTo());
+        String site = siteCatalog.resolve(vo.getSite());
+        LOGGER.debug("Creating a new booking for email {}, site {} and date range {} - {}", vo.getPersonEmail(), site,
+                vo.getFrom(), vo.getTo());
 
         //Manages resource locking to avoid issues regarding concurrency in case of having multiple app server instances
-        RLock lock = redissonClient.getLock(LOCK_KEY);
+        List<RLock> locks = lockNights(Operation.RESERVE, getNightLockKeys(site, getNights(vo.getFrom(), vo.getTo())));
+        long lockedAt = System.nanoTime();
 
         try {
-            lock.lock(lockingTimeout, TimeUnit.MILLISECONDS);
-
-            //Date range validations
-            validateDateRangeForReserve(vo.getFrom(), vo.getTo());
+            //Date range validations, the nights table does it by itself when it is enabled
+            if (!nightTableEnabled) {
+                validateDateRangeForReserve(site, vo.getFrom(), vo.getTo());
+            }
 
             //Person validations
             validatePerson(vo.getPersonEmail());
+            metrics.recordValidation(Operation.RESERVE, lockedAt);
 
             //Creates/Updates person
-            Person person = personRepository.save(
+            long persistStart = System.nanoTime();
+            Person person = savePerson(
                     new Person(vo.getPersonEmail(), vo.getPersonFirstName(), vo.getPersonLastName()));
 
             //Creates booking
-            Booking booking = new Booking(person, vo.getFrom(), vo.getTo());
+            Booking booking = new Booking(site, person, vo.getFrom(), vo.getTo());
             booking = bookingRepository.save(booking);
-
-            LOGGER.info("Booking with ID " + booking.getId() + " was successfully created");
-            return booking.getId();
+            if (nightTableEnabled) {
+                saveNights(booking);
+            }
+            occupyCalendar(site, vo.getFrom(), vo.getTo(), null, null);
+            metrics.recordPersist(Operation.RESERVE, persistStart);
+            timeCommit(Operation.RESERVE);
+            afterCommit(() -> {
+                availabilityChangeBroadcaster.nightsTaken(site, vo.getFrom(), vo.getTo());
+                bookedEmailFilter.booked(vo.getPersonEmail());
+            });
+
+            LOGGER.info("Booking with ID {} was successfully created", booking.getId());
+            return booking.getId().toString();
         } finally {
-            if(lock.isLocked() && lock.isHeldByCurrentThread()) {
-                lock.unlock();
+            unlockAfterCompletion(Operation.RESERVE, locks, lockedAt);
+        }
+    }
+
+    /**
+     * Creates many bookings at once. They are validated against each other and against the existing bookings
+     * with a single query and a single lock acquisition, and persisted with JDBC batch inserts.
+     * Each booking is accepted or rejected on its own, so a rejected one does not prevent the others.
+     * Imported bookings ({@link BookingImportVo}) keep their ID when they have one and no other booking has it.
+     * @return the result of each booking, in the same order
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public List<BookingBatchResultVo> reserveBatch(List<BookingReserveVo> vos) {
+        LOGGER.debug("Creating a batch of {} bookings", vos.size());
+        if (vos.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        //Bookings for unknown sites are rejected on their own, like the other validations
+        List<String> sites = new ArrayList<>(vos.size());
+        Map<String, SortedSet<LocalDate>> siteNights = new HashMap<>();
+        for (BookingReserveVo vo : vos) {
+            String site = vo.getSite() == null ? siteCatalog.getDefault() : vo.getSite();
+            if (!siteCatalog.exists(site)) {
+                site = null;
+            }
+            sites.add(site);
+            if (site != null) {
+                siteNights.computeIfAbsent(site, s -> new TreeSet<>()).addAll(getNights(vo.getFrom(), vo.getTo()));
             }
         }
+
+        //Manages resource locking to avoid issues regarding concurrency in case of having multiple app server instances
+        SortedSet<String> lockKeys = new TreeSet<>();
+        siteNights.forEach((site, nights) -> lockKeys.addAll(getNightLockKeys(site, nights)));
+        List<RLock> locks = lockNights(Operation.RESERVE_BATCH, lockKeys);
+        long lockedAt = System.nanoTime();
+
+        try {
+            //Nights and people already booked, gotten with a single query per site and a single one for all people
+            Map<String, Set<LocalDate>> takenNights = new HashMap<>();
+            siteNights.forEach((site, nights) -> {
+                Set<LocalDate> siteTakenNights = new HashSet<>();
+                bookingRepository.findBySiteAndFromDateBetween(site, nights.first().minusDays(maxDateRangeSize),
+                                nights.last())
+                        .forEach(b -> siteTakenNights.addAll(getNights(b.getFromDate(), b.getToDate())));
+                takenNights.put(site, siteTakenNights);
+            });
+
+            Set<String> bookedEmails = personRepository.findAllById(
+                    vos.stream().map(BookingReserveVo::getPersonEmail).collect(Collectors.toSet()))
+                    .stream()
+                    .map(Person::getEmail)
+                    .collect(Collectors.toSet());
+
+            //Imported bookings keep the ID they were exported with, unless another booking already has it
+            List<UUID> assignedIds = vos.stream()
+                    .map(BookingService::getAssignedId)
+                    .collect(Collectors.toList());
+            Set<UUID> takenIds = assignedIds.stream().allMatch(Objects::isNull)
+                    ? new HashSet<>()
+                    : new HashSet<>(bookingRepository.findExistingIds(
+                            assignedIds.stream().filter(Objects::nonNull).collect(Collectors.toSet())));
+            metrics.recordValidation(Operation.RESERVE_BATCH, lockedAt);
+
+            List<BookingBatchResultVo> results = new ArrayList<>(vos.size());
+            List<Booking> bookings = new ArrayList<>();
+            for (int i = 0; i < vos.size(); i++) {
+                BookingReserveVo vo = vos.get(i);
+                String site = sites.get(i);
+                if (site == null) {
+                    LOGGER.error("Site {} does not exist", vo.getSite());
+                    results.add(BookingBatchResultVo.rejected(Error.SITE_NOT_FOUND));
+                    metrics.countError(Error.SITE_NOT_FOUND);
+                    continue;
+                }
+                Set<LocalDate> siteTakenNights = takenNights.get(site);
+                SortedSet<LocalDate> bookingNights = getNights(vo.getFrom(), vo.getTo());
+                if (bookingNights.stream().anyMatch(siteTakenNights::contains)) {
+                    LOGGER.error("Date range is being used partially or totally for other booking(s): from {} - to {}",
+                            vo.getFrom(), vo.getTo());
+                    results.add(BookingBatchResultVo.rejected(Error.DATE_RANGE_IS_BEING_USED));
+                    metrics.countError(Error.DATE_RANGE_IS_BEING_USED);
+                    continue;
+                }
+                UUID assignedId = assignedIds.get(i);
+                if (assignedId != null && takenIds.contains(assignedId)) {
+                    LOGGER.error("There is already a booking with ID {}", assignedId);
+                    results.add(BookingBatchResultVo.rejected(Error.BOOKING_ALREADY_EXISTS));
+                    metrics.countError(Error.BOOKING_ALREADY_EXISTS);
+                    continue;
+                }
+                if (!bookedEmails.add(vo.getPersonEmail())) {
+                    LOGGER.error("There is already a person with email {}", vo.getPersonEmail());
+                    results.add(BookingBatchResultVo.rejected(Error.PERSON_HAS_BOOKING));
+                    metrics.countError(Error.PERSON_HAS_BOOKING);
+                    continue;
+                }
+                if (assignedId != null) {
+                    takenIds.add(assignedId);
+                }
+                siteTakenNights.addAll(bookingNights);
+
+                //Persisted instead of saved, so no select is done per person before the insert
+                Person person = new Person(vo.getPersonEmail(), vo.getPersonFirstName(), vo.getPersonLastName());
+                entityManager.persist(person);
+                Booking booking = new Booking(site, person, vo.getFrom(), vo.getTo());
+                booking.setAssignedId(assignedId);
+                entityManager.persist(booking);
+                if (nightTableEnabled) {
+                    bookingNights.forEach(night -> entityManager.persist(new BookingNight(night, booking)));
+                }
+
+                bookings.add(booking);
+                results.add(BookingBatchResultVo.created(booking.getId().toString()));
+            }
+
+            //Without distributed locks, a night could have been taken meanwhile by a request out of this batch
+            long persistStart = System.nanoTime();
+            try {
+                entityManager.flush();
+            } catch (PersistenceException e) {
+                if (!(e.getCause() instanceof ConstraintViolationException)) {
+                    throw e;
+                }
+                if (isPersonViolation((ConstraintViolationException) e.getCause())) {
+                    LOGGER.error("The batch could not be persisted, some people were booked meanwhile", e);
+                    throw new ServiceException(Error.PERSON_HAS_BOOKING, new Object[]{bookings.stream()
+                            .map(b -> b.getPerson().getEmail())
+                            .collect(Collectors.joining(", "))});
+                }
+                LOGGER.error("The batch could not be persisted, some nights were booked meanwhile", e);
+                LocalDate first = siteNights.values().stream().map(SortedSet::first).min(LocalDate::compareTo)
+                        .orElse(null);
+                LocalDate last = siteNights.values().stream().map(SortedSet::last).max(LocalDate::compareTo)
+                        .map(night -> night.plusDays(1))
+                        .orElse(null);
+                throw new ServiceException(Error.DATE_RANGE_IS_BEING_USED, new Object[]{first, last});
+            }
+            bookings.forEach(b -> occupyCalendar(b.getSite(), b.getFromDate(), b.getToDate(), null, null));
+            metrics.recordPersist(Operation.RESERVE_BATCH, persistStart);
+            timeCommit(Operation.RESERVE_BATCH);
+
+            afterCommit(() -> bookings.forEach(b -> {
+                availabilityChangeBroadcaster.nightsTaken(b.getSite(), b.getFromDate(), b.getToDate());
+                bookedEmailFilter.booked(b.getPerson().getEmail());
+            }));
+
+            LOGGER.info("{} of {} bookings of the batch were successfully created", bookings.size(), vos.size());
+            return results;
+        } finally {
+            unlockAfterCompletion(Operation.RESERVE_BATCH, locks, lockedAt);
+        }
     }
 
     @Transactional(isolation = Isolation.READ_COMMITTED)
     public boolean update(String id, BookingUpdateVo vo) {
-        LOGGER.debug("Updating booking with ID " + id);
+        LOGGER.debug("Updating booking with ID {}", id);
+        UUID bookingId = parseId(id);
 
         //Manages resource locking to avoid issues regarding concurrency in case of having multiple app server instances
-        RLock lock = redissonClient.getLock(LOCK_KEY);
+        List<RLock> locks = new ArrayList<>();
+        long lockedAt = 0;
 
         try {
-            lock.lock(lockingTimeout, TimeUnit.MILLISECONDS);
+            //The booking itself is locked first, so its current nights cannot change until the work is done
+            locks.addAll(lockBooking(Operation.UPDATE, bookingId));
+            lockedAt = System.nanoTime();
 
             //Gets and checks existing booking
-            Booking booking = getExistingBooking(id);
-
-            //Date range validations
-            validateDateRangeForUpdate(booking, vo);
+            Booking booking = getExistingBooking(bookingId);
+
+            //Date validations
+            validateDatesForUpdate(booking, vo);
+            final String previousSite = booking.getSite();
+            final String site = vo.getSite() == null ? previousSite : siteCatalog.resolve(vo.getSite());
+
+            //Both the current and the new nights are locked, so moving a booking is seen by any request touching them
+            SortedSet<String> lockKeys = getNightLockKeys(previousSite,
+                    getNights(booking.getFromDate(), booking.getToDate()));
+            lockKeys.addAll(getNightLockKeys(site, getNights(vo.getFrom(), vo.getTo())));
+            locks.addAll(lockNights(Operation.UPDATE, lockKeys));
+
+            //Date range validations, the nights table does it by itself when it is enabled
+            if (!nightTableEnabled) {
+                long validationStart = System.nanoTime();
+                validateDateRangeForUpdate(booking, site, vo);
+                metrics.recordValidation(Operation.UPDATE, validationStart);
+            }
 
+            long persistStart = System.nanoTime();
             boolean instanceChanged = false;
 
             Person person = booking.getPerson();
@@ -193,6 +760,9 @@ public class BookingService {
             //Resets the flag
             instanceChanged = false;
 
+            final LocalDate previousFrom = booking.getFromDate();
+            final LocalDate previousTo = booking.getToDate();
+
             if (vo.getFrom() != null) {
                 booking.setFromDate(vo.getFrom());
                 instanceChanged = true;
@@ -203,44 +773,186 @@ public class BookingService {
                 instanceChanged = true;
             }
 
+            if (!site.equals(previousSite)) {
+                booking.setSite(site);
+                instanceChanged = true;
+            }
+
             if (instanceChanged) {
                 bookingRepository.save(booking);
+                if (nightTableEnabled) {
+                    //Replaces the nights of the booking
+                    bookingNightRepository.deleteByBooking(booking);
+                    saveNights(booking);
+                }
+
+                final LocalDate newFrom = booking.getFromDate();
+                final LocalDate newTo = booking.getToDate();
+                if (site.equals(previousSite)) {
+                    occupyCalendar(site, newFrom, newTo, previousFrom, previousTo);
+                } else {
+                    occupyCalendar(site, newFrom, newTo, null, null);
+                }
+                afterCommit(() -> {
+                    if (site.equals(previousSite)) {
+                        releaseCalendar(site, previousFrom, previousTo, newFrom, newTo);
+                        availabilityChangeBroadcaster.nightsMoved(site, previousFrom, previousTo, newFrom, newTo);
+                    } else {
+                        releaseCalendar(previousSite, previousFrom, previousTo, null, null);
+                        availabilityChangeBroadcaster.nightsReleased(previousSite, previousFrom, previousTo);
+                        availabilityChangeBroadcaster.nightsTaken(site, newFrom, newTo);
+                    }
+                });
             }
+            metrics.recordPersist(Operation.UPDATE, persistStart);
+            timeCommit(Operation.UPDATE);
 
-            LOGGER.info("Booking with ID " + id + " was successfully updated");
+            LOGGER.info("Booking with ID {} was successfully updated", id);
             return true;
         } finally {
-            if(lock.isLocked() && lock.isHeldByCurrentThread()) {
-                lock.unlock();
-            }
+            unlockAfterCompletion(Operation.UPDATE, locks, lockedAt);
         }
     }
 
     @Transactional(isolation = Isolation.READ_COMMITTED)
     public void delete(String id) {
-        LOGGER.debug("Deleting booking with ID " + id);
+        LOGGER.debug("Deleting booking with ID {}", id);
+        UUID bookingId = parseId(id);
 
-        //Gets and checks existing booking
-        Booking booking = getExistingBooking(id);
+        //Avoids deleting a booking which is being updated
+        List<RLock> locks = lockBooking(Operation.DELETE, bookingId);
+        long lockedAt = System.nanoTime();
 
-        //Removes the person linked to that booking
-        personRepository.delete(booking.getPerson());
+        try {
+            //Gets and checks existing booking
+            Booking booking = getExistingBooking(bookingId);
+
+            //Removes the person linked to that booking
+            long persistStart = System.nanoTime();
+            personRepository.delete(booking.getPerson());
 
-        //Removes the existing booking
-        bookingRepository.delete(booking);
+            //Removes the existing booking and its nights
+            if (nightTableEnabled) {
+                bookingNightRepository.deleteByBooking(booking);
+            }
+            bookingRepository.delete(booking);
+            metrics.recordPersist(Operation.DELETE, persistStart);
+            timeCommit(Operation.DELETE);
+            afterCommit(() -> {
+                releaseCalendar(booking.getSite(), booking.getFromDate(), booking.getToDate(), null, null);
+                availabilityChangeBroadcaster.nightsReleased(booking.getSite(), booking.getFromDate(),
+                        booking.getToDate());
+                bookedEmailFilter.released(booking.getPerson().getEmail());
+            });
+        } finally {
+            unlockAfterCompletion(Operation.DELETE, locks, lockedAt);
+        }
     }
 
-    public List<LocalDate> getAvailableDays(LocalDate from, LocalDate to) {
-        LOGGER.debug("Getting available dates for range " + from.toString() + " - " + to.toString());
+    /**
+     * Read-only, so it is answered by the read replica when there is one
+     */
+    @Transactional(readOnly = true)
+    public BookingVo getBooking(String id) {
+        LOGGER.debug("Getting booking with ID {}", id);
+        Booking booking = bookingRepository.findById(parseId(id))
+                .orElseThrow(() -> new ServiceException(Error.BOOKING_NOT_FOUND, new Object[]{id}));
+        return toVo(booking);
+    }
 
-        List<LocalDate> possibleDates = DateUtil.getDatesBetween(from, to);
-        List<Booking> bookings = bookingRepository.findByFromDateBetween(from.minusDays(maxDateRangeSize), to);
+    private static BookingVo toVo(Booking booking) {
+        Person person = booking.getPerson();
+        return new BookingVo(booking.getId().toString(), booking.getSite(), person.getEmail(), person.getFirstName(),
+                person.getLastName(), booking.getFromDate(), booking.getToDate());
+    }
 
-        for(Booking b : bookings) {
-            possibleDates = DateUtil.removeDateRange(possibleDates, b.getFromDate(), b.getToDate());
+    /**
+     * Gives every booking to the consumer, walking them with a database cursor and detaching each one once given,
+     * so the memory used does not depend on the number of bookings. Read-only, so it is answered by the read
+     * replica when there is one
+     * @return the number of bookings given
+     */
+    @Transactional(readOnly = true)
+    public long exportBookings(Consumer<BookingVo> consumer) {
+        long count = 0;
+        try (Stream<Booking> bookings = bookingRepository.streamAllWithPerson()) {
+            for (Iterator<Booking> it = bookings.iterator(); it.hasNext(); ) {
+                Booking booking = it.next();
+                consumer.accept(toVo(booking));
+                entityManager.detach(booking);
+                entityManager.detach(booking.getPerson());
+                count++;
+            }
         }
+        return count;
+    }
+
+    /**
+     * @param site the default one when it is not given
+     */
+    public List<LocalDate> getAvailableDays(@Nullable String site, LocalDate from, LocalDate to) {
+        String resolvedSite = siteCatalog.resolve(site);
+        LOGGER.debug("Getting available dates of site {} for range {} - {}", resolvedSite, from, to);
+
+        //Answered from memory or from the shared calendar, no need to go to the database
+        return availabilityCache.get(resolvedSite, from, to, () -> redisCalendarEnabled
+                ? occupancyCalendar.getFreeNights(resolvedSite, from, to)
+                : occupancyIndex.getFreeNights(resolvedSite, from, to));
+    }
+
+    public List<DateIntervalVo> getAvailableIntervals(@Nullable String site, LocalDate from, LocalDate to) {
+        String resolvedSite = siteCatalog.resolve(site);
+        LOGGER.debug("Getting available intervals of site {} for range {} - {}", resolvedSite, from, to);
+        return redisCalendarEnabled
+                ? occupancyCalendar.getFreeIntervals(resolvedSite, from, to)
+                : occupancyIndex.getFreeIntervals(resolvedSite, from, to);
+    }
+
+    /**
+     * Identifies the availability of the site in the date range by the version of the local availability, so it is
+     * known before computing the availability, and every node (of either mode) that applied the same changes gives the
+     * same ETag. Conditional requests get a 304 whichever node answers them.
+     * @param representation {@link #AVAILABLE_DAYS} or {@link #AVAILABLE_INTERVALS}
+     * @return the ETag, or null if there is no version and it has to be computed from the availability itself
+     */
+    public String getAvailabilityETag(String site, LocalDate from, LocalDate to, String representation) {
+        String version = availabilityChangeBroadcaster.getAvailabilityVersion();
+        return version == null
+                ? null
+                : getAvailabilityETag(siteCatalog.resolve(site), from, to, representation, version);
+    }
+
+    public static String getAvailabilityETag(String site, LocalDate from, LocalDate to, String representation,
+                                             String version) {
+        String window = representation + ":" + site + ":" + from + ":" + to;
+        return "\"" + version + "-" + DigestUtils.md5DigestAsHex(window.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
 
-        return possibleDates;
+    /**
+     * Identifies the given availability by its content, for when there is no version of the availability
+     */
+    public static String getAvailabilityETag(List<?> availability) {
+        return "\"" + DigestUtils.md5DigestAsHex(availability.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * Walks the date range one free night at a time, so the memory used does not depend on the size of the range.
+     * Nights are looked up as the stream is consumed, it must not be cached. The shared calendar is read
+     * STREAM_WINDOW nights at a time, to save round trips.
+     */
+    public Stream<LocalDate> streamAvailableDays(@Nullable String site, LocalDate from, LocalDate to) {
+        String resolvedSite = siteCatalog.resolve(site);
+        LOGGER.debug("Streaming available dates of site {} for range {} - {}", resolvedSite, from, to);
+
+        if (redisCalendarEnabled) {
+            return Stream.iterate(from, window -> window.isBefore(to), window -> window.plusDays(STREAM_WINDOW))
+                    .flatMap(window -> occupancyCalendar.getFreeNights(resolvedSite, window,
+                            window.plusDays(STREAM_WINDOW).isBefore(to) ? window.plusDays(STREAM_WINDOW) : to)
+                            .stream());
+        }
+        return Stream.iterate(occupancyIndex.getNextFreeNight(resolvedSite, from, to),
+                Objects::nonNull,
+                night -> occupancyIndex.getNextFreeNight(resolvedSite, night.plusDays(1), to));
     }
 
     public void setMaxDateRangeSize(Integer maxDateRangeSize) {
@@ -250,4 +962,16 @@ public class BookingService {
     public void setLockingTimeout(Long lockingTimeout) {
         this.lockingTimeout = lockingTimeout;
     }
+
+    public void setLockingMaxWait(Long lockingMaxWait) {
+        this.lockingMaxWait = lockingMaxWait;
+    }
+
+    public void setRedisCalendarEnabled(boolean redisCalendarEnabled) {
+        this.redisCalendarEnabled = redisCalendarEnabled;
+    }
+
+    public void setNightTableEnabled(boolean nightTableEnabled) {
+        this.nightTableEnabled = nightTableEnabled;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,275 @@
+package com.upgrade.islandbooking.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ServiceException;
+import com.upgrade.islandbooking.vo.BookingBatchResultVo;
+import com.upgrade.islandbooking.vo.BookingImportErrorVo;
+import com.upgrade.islandbooking.vo.BookingImportVo;
+import com.upgrade.islandbooking.vo.BookingImportResultVo;
+import com.upgrade.islandbooking.vo.BookingReserveVo;
+import com.upgrade.islandbooking.vo.BookingVo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exports every booking and imports them back, as CSV (with a header) or newline delimited JSON. Both work on one
+ * booking at a time, so their memory does not depend on the number of bookings.
+ * Imported bookings are created in chunks of import.batchSize through {@link BookingService#reserveBatch(List)}, so
+ * each chunk is a transaction with batch inserts and the same rules as any other booking: overlapping nights and
+ * emails already booked are rejected, either against the existing bookings or the previous ones of the file.
+ * A chunk rolled back as a whole (e.g. some nights were booked meanwhile out of the import) is retried one booking at
+ * a time, so only the conflicting ones are rejected.
+ */
+@Component
+public class BookingTransfer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookingTransfer.class);
+
+    private static final String[] CSV_COLUMNS =
+            {"bookingId", "site", "personEmail", "personFirstName", "personLastName", "from", "to"};
+
+    public enum Format {
+        CSV,
+        NDJSON
+    }
+
+    final private BookingService service;
+    final private Validator validator;
+    final private ObjectMapper objectMapper;
+    final private int batchSize;
+    final private int maxReportedErrors;
+
+    public BookingTransfer(BookingService service, Validator validator, ObjectMapper objectMapper,
+                           @Value("${transfer.import.batchSize}") int batchSize,
+                           @Value("${transfer.import.maxReportedErrors}") int maxReportedErrors) {
+        this.service = service;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    /**
+     * Writes every booking. The writer is not flushed
+     * @return the number of bookings written
+     */
+    public long export(Format format, Writer writer) throws IOException {
+        if (format == Format.CSV) {
+            writer.write(String.join(",", CSV_COLUMNS));
+            writer.write('\n');
+        }
+        try {
+            long count = service.exportBookings(booking -> {
+                try {
+                    writer.write(format == Format.CSV ? toCsv(booking) : objectMapper.writeValueAsString(booking));
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            LOGGER.info("{} bookings exported as {}", count, format);
+            return count;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static String toCsv(BookingVo booking) {
+        return String.join(",", escapeCsv(booking.getBookingId()), escapeCsv(booking.getSite()),
+                escapeCsv(booking.getPersonEmail()), escapeCsv(booking.getPersonFirstName()),
+                escapeCsv(booking.getPersonLastName()), booking.getFrom().toString(), booking.getTo().toString());
+    }
+
+    private static String escapeCsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Creates the bookings read. They keep their booking ID when they have one, otherwise they get a new one
+     */
+    public BookingImportResultVo importBookings(Format format, Reader reader) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        BookingImportResultVo result = new BookingImportResultVo();
+        Map<String, Integer> csvColumns = format == Format.CSV ? readCsvHeader(bufferedReader) : null;
+
+        List<Long> chunkRecords = new ArrayList<>(batchSize);
+        List<BookingReserveVo> chunk = new ArrayList<>(batchSize);
+        long record = 0;
+        while (true) {
+            BookingImportVo booking;
+            try {
+                if (format == Format.CSV) {
+                    List<String> fields = readCsvRecord(bufferedReader);
+                    if (fields == null) {
+                        break;
+                    }
+                    if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                        continue;
+                    }
+                    record++;
+                    booking = fromCsv(csvColumns, fields);
+                } else {
+                    String line = bufferedReader.readLine();
+                    if (line == null) {
+                        break;
+                    }
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    record++;
+                    booking = objectMapper.readValue(line, BookingImportVo.class);
+                }
+            } catch (JsonProcessingException | DateTimeParseException e) {
+                LOGGER.debug("Import record {} could not be read: {}", record, e.getMessage());
+                reject(result, record, Error.BOOKING_NOTVALID_REQUEST);
+                continue;
+            }
+
+            //Exported bookings can be already started, so the date from is not required to be in the future
+            if (booking == null || !validator.validate(booking, BookingReserveVo.Imported.class).isEmpty()) {
+                LOGGER.debug("Import record {} is not valid: {}", record, booking);
+                reject(result, record, Error.BOOKING_NOTVALID_REQUEST);
+                continue;
+            }
+            chunkRecords.add(record);
+            chunk.add(booking);
+            if (chunk.size() == batchSize) {
+                importChunk(chunkRecords, chunk, result);
+                chunkRecords = new ArrayList<>(batchSize);
+                chunk = new ArrayList<>(batchSize);
+            }
+        }
+        importChunk(chunkRecords, chunk, result);
+
+        LOGGER.info("{} bookings imported from {}, {} rejected", result.getCreated(), format, result.getRejected());
+        return result;
+    }
+
+    private void importChunk(List<Long> records, List<BookingReserveVo> chunk, BookingImportResultVo result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            List<BookingBatchResultVo> results = service.reserveBatch(chunk);
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i).getError() == null) {
+                    result.setCreated(result.getCreated() + 1);
+                } else {
+                    reject(result, records.get(i), results.get(i).getError());
+                }
+            }
+        } catch (ServiceException e) {
+            if (chunk.size() == 1) {
+                LOGGER.error("Import record {} was rejected: {}", records.get(0), e.getError());
+                reject(result, records.get(0), e.getError());
+                return;
+            }
+            //The whole chunk is rolled back, e.g. some nights were booked meanwhile by a request out of the import,
+            //so its bookings are tried again one by one to find the ones in conflict
+            LOGGER.warn("Import records {} to {} were rolled back ({}), retrying them one by one", records.get(0),
+                    records.get(records.size() - 1), e.getError());
+            for (int i = 0; i < chunk.size(); i++) {
+                importChunk(List.of(records.get(i)), List.of(chunk.get(i)), result);
+            }
+        }
+    }
+
+    private void reject(BookingImportResultVo result, long record, Error error) {
+        result.setRejected(result.getRejected() + 1);
+        if (result.getErrors().size() < maxReportedErrors) {
+            result.getErrors().add(new BookingImportErrorVo(record, error));
+        }
+    }
+
+    /**
+     * @return the index of each column by name, so they can come in any order and bookingId can be left out
+     */
+    private static Map<String, Integer> readCsvHeader(BufferedReader reader) throws IOException {
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> header = readCsvRecord(reader);
+        if (header != null) {
+            for (int i = 0; i < header.size(); i++) {
+                columns.put(header.get(i).trim(), i);
+            }
+        }
+        return columns;
+    }
+
+    private static BookingImportVo fromCsv(Map<String, Integer> columns, List<String> fields) {
+        String bookingId = getCsvField(columns, fields, "bookingId");
+        String from = getCsvField(columns, fields, "from");
+        String to = getCsvField(columns, fields, "to");
+        String site = getCsvField(columns, fields, "site");
+        return new BookingImportVo(bookingId == null || bookingId.isEmpty() ? null : bookingId,
+                getCsvField(columns, fields, "personEmail"), getCsvField(columns, fields, "personFirstName"),
+                getCsvField(columns, fields, "personLastName"), from == null ? null : LocalDate.parse(from),
+                to == null ? null : LocalDate.parse(to), site == null || site.isEmpty() ? null : site);
+    }
+
+    private static String getCsvField(Map<String, Integer> columns, List<String> fields, String column) {
+        Integer index = columns.get(column);
+        return index == null || index >= fields.size() ? null : fields.get(index);
+    }
+
+    /**
+     * Reads a CSV record (RFC 4180): fields with commas, quotes or line breaks are quoted, and their quotes doubled
+     * @return the fields of the record, or null at the end of the input
+     */
+    private static List<String> readCsvRecord(BufferedReader reader) throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (c != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    c = reader.read();
+                    if (c != '"') {
+                        //Closing quote, the character after it is handled as an unquoted one
+                        quoted = false;
+                        continue;
+                    }
+                }
+                field.append((char) c);
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,167 @@
+package com.upgrade.islandbooking.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ServiceException;
+import com.upgrade.islandbooking.service.BookingMetrics.Operation;
+import com.upgrade.islandbooking.vo.IdempotentResultVo;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.codec.JsonJacksonCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps in Redis the result of the requests sent with an Idempotency-Key header, so the retries of a client are
+ * answered with the result of the first attempt without taking the locks or querying the database. A retry arriving
+ * while the first attempt is still running waits for its result.
+ */
+@Component
+public class IdempotencyStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    private static final String KEY_PREFIX = "idempotency:";
+    private static final long POLL_INTERVAL = 50L;
+
+    //Errors a retry could not get, e.g. the one telling to retry after a while, so they are not kept as results
+    private static final Set<Error> TRANSIENT_ERRORS = EnumSet.of(Error.LOCK_CONTENTION, Error.RESERVATION_QUEUE_FULL,
+            Error.IDEMPOTENT_REQUEST_IN_PROGRESS);
+
+    private final RedissonClient redissonClient;
+    private final JsonJacksonCodec codec = new JsonJacksonCodec(new ObjectMapper());
+
+    private final long ttl;
+    private final long inFlightTtl;
+    private final long maxWait;
+
+    /**
+     * Without redisson client (nights table mode) requests are always executed
+     */
+    public IdempotencyStore(@Nullable RedissonClient redissonClient,
+                            @Value("${idempotency.ttl}") long ttl,
+                            @Value("${idempotency.inFlightTtl}") long inFlightTtl,
+                            @Value("${idempotency.maxWait}") long maxWait) {
+        this.redissonClient = redissonClient;
+        this.ttl = ttl;
+        this.inFlightTtl = inFlightTtl;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Executes the request unless a request with the same key was already received. Business errors are kept
+     * as results too, transient and unexpected errors let the key be used again.
+     * @param request the payload of the request, identifying it along with the operation
+     * @return the booking ID returned by the request or by its first attempt
+     */
+    public String execute(@Nullable String key, Operation operation, String request, Supplier<String> action) {
+        if (key == null || redissonClient == null) {
+            return action.get();
+        }
+
+        String fingerprint = DigestUtils.md5DigestAsHex((operation + ":" + request).getBytes(StandardCharsets.UTF_8));
+        RBucket<IdempotentResultVo> bucket = redissonClient.getBucket(KEY_PREFIX + key, codec);
+        while (!bucket.trySet(IdempotentResultVo.pending(fingerprint), inFlightTtl, TimeUnit.MILLISECONDS)) {
+            IdempotentResultVo result = awaitResult(key, fingerprint, bucket);
+            if (result != null) {
+                return replay(key, result);
+            }
+            //The first attempt failed unexpectedly or expired meanwhile, so this one is executed
+            LOGGER.debug("Idempotency key {} is free again", key);
+        }
+
+        String bookingId;
+        try {
+            bookingId = action.get();
+        } catch (ServiceException e) {
+            if (TRANSIENT_ERRORS.contains(e.getError())) {
+                release(key, bucket);
+                throw e;
+            }
+            String[] parameters = e.getParameters() == null
+                    ? null
+                    : Arrays.stream(e.getParameters()).map(String::valueOf).toArray(String[]::new);
+            store(key, bucket, IdempotentResultVo.failed(fingerprint, e.getError(), parameters));
+            throw e;
+        } catch (RuntimeException e) {
+            release(key, bucket);
+            throw e;
+        }
+
+        //The booking is already committed, so the result is returned even if it cannot be stored
+        store(key, bucket, IdempotentResultVo.done(fingerprint, bookingId));
+        return bookingId;
+    }
+
+    /**
+     * If the result cannot be stored the key is kept in flight, so retries are not executed again until it expires
+     */
+    private void store(String key, RBucket<IdempotentResultVo> bucket, IdempotentResultVo result) {
+        try {
+            bucket.set(result, ttl, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            LOGGER.error("The result of the request with idempotency key {} could not be stored", key, e);
+        }
+    }
+
+    /**
+     * Lets the key be used again. If it fails, it is free once the in-flight key expires
+     */
+    private static void release(String key, RBucket<IdempotentResultVo> bucket) {
+        try {
+            bucket.delete();
+        } catch (RuntimeException e) {
+            LOGGER.error("Idempotency key {} could not be released", key, e);
+        }
+    }
+
+    /**
+     * Waits up to idempotency.maxWait for the first attempt to finish
+     * @return the result of the first attempt, or null if the key is free again
+     */
+    private IdempotentResultVo awaitResult(String key, String fingerprint, RBucket<IdempotentResultVo> bucket) {
+        long deadline = System.currentTimeMillis() + maxWait;
+        IdempotentResultVo result = bucket.get();
+        while (result != null && result.getStatus() == IdempotentResultVo.Status.PENDING
+                && fingerprint.equals(result.getFingerprint()) && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            result = bucket.get();
+        }
+
+        if (result != null && !fingerprint.equals(result.getFingerprint())) {
+            LOGGER.error("Idempotency key {} was already used for a different request", key);
+            throw new ServiceException(Error.IDEMPOTENCY_KEY_REUSED, new Object[]{key});
+        }
+        return result;
+    }
+
+    private static String replay(String key, IdempotentResultVo result) {
+        switch (result.getStatus()) {
+            case DONE:
+                LOGGER.debug("Answering request with idempotency key {} from the stored result", key);
+                return result.getBookingId();
+            case FAILED:
+                LOGGER.debug("Answering request with idempotency key {} from the stored error", key);
+                throw new ServiceException(result.getError(), result.getParameters());
+            default:
+                LOGGER.error("Request with idempotency key {} is still in progress", key);
+                throw new ServiceException(Error.IDEMPOTENT_REQUEST_IN_PROGRESS, new Object[]{key});
+        }
+    }
+}
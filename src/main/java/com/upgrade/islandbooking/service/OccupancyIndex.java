@@ -0,0 +1,319 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.domain.entity.Booking;
+import com.upgrade.islandbooking.domain.repository.BookingRepository;
+import com.upgrade.islandbooking.vo.DateIntervalVo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * In-memory per-night occupancy of each site. Each bit is a night keyed by its epoch day,
+ * so availability queries are answered without database round trips nor per-booking scans.
+ * It is loaded at startup, from the repository or from the occupancy snapshot, and kept up to date by the booking
+ * service. It can be loaded again while it is in use, without losing the changes applied meanwhile.
+ * Every site has its own bits and lock, so changes to one site never block the queries of another one.
+ */
+@Component
+public class OccupancyIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OccupancyIndex.class);
+
+    //Sites without bookings, all their nights are free
+    private static final SiteNights NO_NIGHTS = new SiteNights(new BitSet());
+
+    private final BookingRepository bookingRepository;
+
+    /**
+     * When enabled, the occupancy snapshot is the one loading it at startup
+     */
+    @Value("${availability.snapshot.enabled:false}")
+    private boolean snapshotEnabled;
+
+    private volatile Map<String, SiteNights> sites = new ConcurrentHashMap<>();
+
+    //One load at a time
+    private final Object loadLock = new Object();
+    private final Object changesLock = new Object();
+
+    /**
+     * Changes applied while the index is being loaded, null when it is not
+     */
+    private List<Change> changesDuringLoad;
+
+    public OccupancyIndex(BookingRepository bookingRepository) {
+        this.bookingRepository = bookingRepository;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!snapshotEnabled) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Reloads the whole index from the existing bookings
+     */
+    public void rebuild() {
+        rebuild(bookingRepository::findAll);
+    }
+
+    /**
+     * Replaces the whole index with the nights of the bookings read from the given supplier
+     */
+    public void rebuild(Supplier<? extends Iterable<Booking>> bookings) {
+        load(() -> {
+            LOGGER.debug("Building the occupancy index from the existing bookings...");
+            Map<String, BitSet> rebuilt = new HashMap<>();
+            int count = 0;
+            for (Booking b : bookings.get()) {
+                setRange(rebuilt.computeIfAbsent(b.getSite(), site -> new BitSet()), b.getFromDate(), b.getToDate(),
+                        true);
+                count++;
+            }
+            LOGGER.info("Occupancy index built from {} booking(s) of {} site(s)", count, rebuilt.size());
+            return rebuilt;
+        });
+    }
+
+    /**
+     * Replaces the whole index with the taken nights of each site given by the loader, which are not copied.
+     * Changes applied while they are being loaded could be missing from them, so they are applied again on top of
+     * them before they replace the index
+     */
+    public void load(Supplier<Map<String, BitSet>> loader) {
+        synchronized (loadLock) {
+            synchronized (changesLock) {
+                changesDuringLoad = new ArrayList<>();
+            }
+            try {
+                Map<String, SiteNights> loadedSites = new ConcurrentHashMap<>();
+                loader.get().forEach((site, siteNights) -> loadedSites.put(site, new SiteNights(siteNights)));
+
+                synchronized (changesLock) {
+                    //In the order they were applied, so the latest change of each night is the one kept
+                    for (Change change : changesDuringLoad) {
+                        setRange(loadedSites.computeIfAbsent(change.site, s -> new SiteNights(new BitSet())).nights,
+                                change.from, change.to, change.taken);
+                    }
+                    sites = loadedSites;
+                }
+            } finally {
+                synchronized (changesLock) {
+                    changesDuringLoad = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the taken nights of each site, each bit is a night keyed by its epoch day
+     */
+    public Map<String, BitSet> getNights() {
+        Map<String, BitSet> nights = new HashMap<>();
+        sites.forEach((site, siteNights) -> {
+            siteNights.lock.readLock().lock();
+            try {
+                nights.put(site, (BitSet) siteNights.nights.clone());
+            } finally {
+                siteNights.lock.readLock().unlock();
+            }
+        });
+        return nights;
+    }
+
+    private SiteNights get(String site) {
+        return sites.getOrDefault(site, NO_NIGHTS);
+    }
+
+    /**
+     * Marks the nights of the site between from (inclusive) and to (exclusive) as taken
+     */
+    public void occupy(String site, LocalDate from, LocalDate to) {
+        update(site, from, to, true);
+    }
+
+    /**
+     * Marks the nights of the site between from (inclusive) and to (exclusive) as free
+     */
+    public void release(String site, LocalDate from, LocalDate to) {
+        update(site, from, to, false);
+    }
+
+    /**
+     * @return the free nights of the site between from (inclusive) and to (exclusive)
+     */
+    public List<LocalDate> getFreeNights(String site, LocalDate from, LocalDate to) {
+        long start = from.toEpochDay();
+        long end = to.toEpochDay();
+        List<LocalDate> freeNights = new ArrayList<>((int) Math.max(0, Math.min(end - start, Integer.MAX_VALUE)));
+
+        SiteNights siteNights = get(site);
+        siteNights.lock.readLock().lock();
+        try {
+            long day = start;
+            while (day < end) {
+                if (day < 0) {
+                    //Nights before the epoch are never indexed
+                    freeNights.add(LocalDate.ofEpochDay(day++));
+                    continue;
+                }
+                if (day > Integer.MAX_VALUE) {
+                    break;
+                }
+                int freeDay = siteNights.nights.nextClearBit((int) day);
+                if (freeDay >= end) {
+                    break;
+                }
+                freeNights.add(LocalDate.ofEpochDay(freeDay));
+                day = freeDay + 1L;
+            }
+        } finally {
+            siteNights.lock.readLock().unlock();
+        }
+        return freeNights;
+    }
+
+    /**
+     * @return the ranges of consecutive free nights of the site between from (inclusive) and to (exclusive)
+     */
+    public List<DateIntervalVo> getFreeIntervals(String site, LocalDate from, LocalDate to) {
+        long start = from.toEpochDay();
+        long end = to.toEpochDay();
+        List<DateIntervalVo> intervals = new ArrayList<>();
+        if (start >= end) {
+            return intervals;
+        }
+
+        if (start < 0) {
+            //Nights before the epoch are never indexed
+            LocalDate indexedFrom = LocalDate.ofEpochDay(Math.min(0, end));
+            intervals.add(new DateIntervalVo(from, indexedFrom));
+            start = indexedFrom.toEpochDay();
+        }
+
+        SiteNights siteNights = get(site);
+        siteNights.lock.readLock().lock();
+        try {
+            long day = start;
+            while (day < end && day <= Integer.MAX_VALUE) {
+                int freeDay = siteNights.nights.nextClearBit((int) day);
+                if (freeDay >= end) {
+                    break;
+                }
+                int takenDay = siteNights.nights.nextSetBit(freeDay);
+                long intervalEnd = takenDay < 0 ? end : Math.min(takenDay, end);
+                addInterval(intervals, LocalDate.ofEpochDay(freeDay), LocalDate.ofEpochDay(intervalEnd));
+                day = intervalEnd;
+            }
+        } finally {
+            siteNights.lock.readLock().unlock();
+        }
+        return intervals;
+    }
+
+    private static void addInterval(List<DateIntervalVo> intervals, LocalDate start, LocalDate end) {
+        //Joins the interval with the previous one when they are contiguous (only happens around the epoch)
+        if (!intervals.isEmpty() && intervals.get(intervals.size() - 1).getEnd().equals(start)) {
+            intervals.get(intervals.size() - 1).setEnd(end);
+        } else {
+            intervals.add(new DateIntervalVo(start, end));
+        }
+    }
+
+    /**
+     * @return the first free night of the site between from (inclusive) and to (exclusive), or null if all of them
+     * are taken
+     */
+    public LocalDate getNextFreeNight(String site, LocalDate from, LocalDate to) {
+        long day = from.toEpochDay();
+        long end = to.toEpochDay();
+        if (day >= end) {
+            return null;
+        }
+        if (day < 0) {
+            //Nights before the epoch are never indexed
+            return from;
+        }
+        if (day > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        SiteNights siteNights = get(site);
+        siteNights.lock.readLock().lock();
+        try {
+            int freeDay = siteNights.nights.nextClearBit((int) day);
+            return freeDay < end ? LocalDate.ofEpochDay(freeDay) : null;
+        } finally {
+            siteNights.lock.readLock().unlock();
+        }
+    }
+
+    private void update(String site, LocalDate from, LocalDate to, boolean taken) {
+        Map<String, SiteNights> current;
+        synchronized (changesLock) {
+            if (changesDuringLoad != null) {
+                changesDuringLoad.add(new Change(site, from, to, taken));
+            }
+            current = sites;
+        }
+
+        SiteNights siteNights = current.computeIfAbsent(site, s -> new SiteNights(new BitSet()));
+        siteNights.lock.writeLock().lock();
+        try {
+            setRange(siteNights.nights, from, to, taken);
+        } finally {
+            siteNights.lock.writeLock().unlock();
+        }
+    }
+
+    private static void setRange(BitSet bits, LocalDate from, LocalDate to, boolean taken) {
+        int start = toIndex(from);
+        int end = toIndex(to);
+        if (start < end) {
+            bits.set(start, end, taken);
+        }
+    }
+
+    private static int toIndex(LocalDate date) {
+        long epochDay = date.toEpochDay();
+        return (int) Math.max(0, Math.min(epochDay, Integer.MAX_VALUE));
+    }
+
+    private static final class Change {
+        private final String site;
+        private final LocalDate from;
+        private final LocalDate to;
+        private final boolean taken;
+
+        private Change(String site, LocalDate from, LocalDate to, boolean taken) {
+            this.site = site;
+            this.from = from;
+            this.to = to;
+            this.taken = taken;
+        }
+    }
+
+    private static final class SiteNights {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final BitSet nights;
+
+        private SiteNights(BitSet nights) {
+            this.nights = nights;
+        }
+    }
+}
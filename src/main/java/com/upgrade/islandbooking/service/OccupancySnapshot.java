@@ -0,0 +1,319 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.vo.AvailabilityChangeVo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the occupancy index to a file every interval milliseconds and at shutdown, along with the sequence of the
+ * latest availability change it is known to include. When it is enabled, it also loads the index at startup:
+ * <ul>
+ *     <li>From the snapshot when load is enabled and it exists. If no change was made after it was written, it is
+ *     used as is, otherwise it answers the availability while the index is reloaded from the database in
+ *     background</li>
+ *     <li>From the database otherwise</li>
+ * </ul>
+ * Changes keep being applied while the index is loaded, and the index keeps them (see
+ * {@link OccupancyIndex#load}), so they are tracked meanwhile too and the sequence is known once it is loaded.
+ * The sequence is only trusted when it is the one shared by every node through Redis.
+ */
+@Component
+public class OccupancySnapshot implements AvailabilityChangeBroadcaster.Listener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OccupancySnapshot.class);
+
+    private static final int MAGIC = 0x4F434331;
+
+    //Changes applied out of order are tracked up to this number, afterwards the sequence is unknown
+    private static final int MAX_PENDING = 10000;
+
+    private final OccupancyIndex occupancyIndex;
+    private final AvailabilityChangeBroadcaster broadcaster;
+    private final boolean enabled;
+    private final boolean load;
+    private final Path file;
+    private final long interval;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Sequence up to which every change is included in the index, or -1 if it is unknown
+     */
+    private long sequence = -1;
+
+    /**
+     * Sequences of the changes applied after the one above, while the ones in between are missing
+     */
+    private final SortedSet<Long> pending = new TreeSet<>();
+
+    /**
+     * Whether the index is being loaded by this snapshot, so the changes are tracked even if the sequence is unknown
+     */
+    private boolean loading;
+
+    public OccupancySnapshot(OccupancyIndex occupancyIndex, AvailabilityChangeBroadcaster broadcaster,
+                             @Value("${availability.snapshot.enabled}") boolean enabled,
+                             @Value("${availability.snapshot.load}") boolean load,
+                             @Value("${availability.snapshot.file}") String file,
+                             @Value("${availability.snapshot.interval}") long interval) {
+        this.occupancyIndex = occupancyIndex;
+        this.broadcaster = broadcaster;
+        this.enabled = enabled;
+        this.load = load;
+        this.file = Paths.get(file);
+        this.interval = interval;
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                new CustomizableThreadFactory("occupancy-snapshot-"));
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        broadcaster.addListener(this);
+        if (!load || !loadSnapshot()) {
+            rebuild();
+        }
+        executor.scheduleWithFixedDelay(this::write, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        if (enabled) {
+            write();
+        }
+    }
+
+    /**
+     * @return false if there is no snapshot to load
+     */
+    private boolean loadSnapshot() {
+        long start = System.nanoTime();
+        long snapshotSequence;
+        Map<String, BitSet> nights = new HashMap<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("It is not an occupancy snapshot");
+            }
+            snapshotSequence = input.readLong();
+            int siteCount = input.readInt();
+            for (int i = 0; i < siteCount; i++) {
+                String site = input.readUTF();
+                int wordCount = input.readInt();
+                int length = input.readInt();
+                if (wordCount < 0 || length < 0 || length > wordCount) {
+                    throw new IOException("The nights of site " + site + " are corrupted");
+                }
+                long[] words = new long[wordCount];
+                for (int w = words.length - length; w < words.length; w++) {
+                    words[w] = input.readLong();
+                }
+                nights.put(site, BitSet.valueOf(words));
+            }
+        } catch (NoSuchFileException e) {
+            LOGGER.info("There is no occupancy snapshot at {}", file);
+            return false;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("The occupancy snapshot at {} could not be read", file, e);
+            return false;
+        }
+
+        long current = startLoad();
+        try {
+            occupancyIndex.load(() -> nights);
+        } catch (RuntimeException e) {
+            endLoad(-1);
+            throw e;
+        }
+        //Changes made before this node subscribed to them could be missing, unless the snapshot is the latest one
+        boolean upToDate = broadcaster.isSequenceShared() && snapshotSequence > 0 && snapshotSequence == current;
+        endLoad(upToDate ? current : -1);
+        LOGGER.info("Occupancy index loaded from the snapshot of {} site(s) in {} ms", nights.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (!upToDate) {
+            broadcaster.outdated();
+            LOGGER.info("Changes were made after the occupancy snapshot (sequence {}, now {}), reloading the index in "
+                    + "background...", snapshotSequence, current);
+            executor.execute(this::reload);
+        }
+        return true;
+    }
+
+    /**
+     * Loads the index from the database
+     */
+    private void rebuild() {
+        long current = startLoad();
+        try {
+            occupancyIndex.rebuild();
+        } catch (RuntimeException e) {
+            endLoad(-1);
+            throw e;
+        }
+        endLoad(current);
+    }
+
+    /**
+     * Same as {@link #rebuild()}, but also dropping the availability answered from the previous index
+     */
+    private void reload() {
+        long current = startLoad();
+        try {
+            broadcaster.reload();
+        } catch (RuntimeException e) {
+            endLoad(-1);
+            LOGGER.error("The occupancy index could not be reloaded, it is kept as loaded from the snapshot", e);
+            return;
+        }
+        endLoad(current);
+    }
+
+    /**
+     * Starts tracking the changes applied from now on, which the index being loaded keeps
+     * @return the sequence of the latest change made before, the ones up to it are committed already
+     */
+    private synchronized long startLoad() {
+        loading = true;
+        sequence = -1;
+        pending.clear();
+        return broadcaster.getSequence();
+    }
+
+    /**
+     * @param included sequence up to which every change is included in the loaded index, or -1 if it is unknown
+     */
+    private synchronized void endLoad(long included) {
+        boolean tracked = loading;
+        loading = false;
+        if (tracked && included >= 0) {
+            setSequence(included);
+        } else {
+            sequence = -1;
+            pending.clear();
+        }
+    }
+
+    private synchronized void setSequence(long current) {
+        sequence = broadcaster.isSequenceShared() ? current : -1;
+        pending.headSet(current + 1).clear();
+        advance();
+    }
+
+    private void advance() {
+        while (sequence >= 0 && !pending.isEmpty() && pending.first() == sequence + 1) {
+            sequence = pending.first();
+            pending.remove(sequence);
+        }
+    }
+
+    @Override
+    public synchronized void changed(AvailabilityChangeVo change) {
+        if (sequence < 0 && !loading) {
+            return;
+        }
+        if (change.getSequence() == null || pending.size() >= MAX_PENDING) {
+            LOGGER.warn("Lost track of the availability changes included in the occupancy index");
+            sequence = -1;
+            pending.clear();
+            loading = false;
+            return;
+        }
+        if (change.getSequence() > sequence) {
+            pending.add(change.getSequence());
+            advance();
+        }
+    }
+
+    /**
+     * Rebuilt from the database without knowing from which sequence on. The loads of this snapshot are not, they
+     * track the changes applied meanwhile, and a change missed by the subscription leaves a gap the sequence never
+     * goes past
+     */
+    @Override
+    public synchronized void reloaded() {
+        if (loading) {
+            return;
+        }
+        sequence = -1;
+        pending.clear();
+    }
+
+    /**
+     * @return the sequence up to which every change is included in the index, or -1 if it is unknown
+     */
+    synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file which then replaces the previous one, so nodes sharing the file never
+     * read a partially written one. An unknown sequence is written as 0, so the snapshot is never taken as up to date
+     */
+    void write() {
+        long includedSequence;
+        synchronized (this) {
+            includedSequence = Math.max(sequence, 0);
+        }
+        //Copied after reading the sequence, so it could only have more changes than the ones the sequence says
+        Map<String, BitSet> nights = occupancyIndex.getNights();
+
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream output = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                    output.writeInt(MAGIC);
+                    output.writeLong(includedSequence);
+                    output.writeInt(nights.size());
+                    for (Map.Entry<String, BitSet> entry : nights.entrySet()) {
+                        //Only from the first word with a taken night, the previous ones are empty
+                        long[] words = entry.getValue().toLongArray();
+                        int first = 0;
+                        while (first < words.length && words[first] == 0) {
+                            first++;
+                        }
+                        output.writeUTF(entry.getKey());
+                        output.writeInt(words.length);
+                        output.writeInt(words.length - first);
+                        for (int w = first; w < words.length; w++) {
+                            output.writeLong(words[w]);
+                        }
+                    }
+                }
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            LOGGER.debug("Occupancy snapshot of sequence {} written to {}", includedSequence, file);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("The occupancy snapshot could not be written to {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.domain.entity.Booking;
+import com.upgrade.islandbooking.vo.DateIntervalVo;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.LongCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-night occupancy shared by every node in a Redis bitmap per site, one bit per night keyed by its epoch day.
+ * A date range is read with a single round trip whatever the number of bookings, and ranges are changed atomically
+ * with Lua scripts. Nights before the epoch are never indexed, so they are always free.
+ */
+@Component
+public class RedisOccupancyCalendar {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisOccupancyCalendar.class);
+
+    private static final String CALENDAR_KEY_PREFIX = "availability_calendar:";
+
+    private static final String GET_RANGE_SCRIPT = "return redis.call('getrange', KEYS[1], ARGV[1], ARGV[2])";
+
+    private static final String SET_RANGE_SCRIPT =
+            "for night = tonumber(ARGV[1]), tonumber(ARGV[2]) - 1 do "
+            + "redis.call('setbit', KEYS[1], night, ARGV[3]) "
+            + "end "
+            + "return 1";
+
+    private final RedissonClient redissonClient;
+
+    /**
+     * Without redisson client (nights table mode) the calendar cannot be used
+     */
+    public RedisOccupancyCalendar(@Nullable RedissonClient redissonClient) {
+        this.redissonClient = redissonClient;
+    }
+
+    private static String getCalendarKey(String site) {
+        return CALENDAR_KEY_PREFIX + site;
+    }
+
+    public boolean exists(String site) {
+        return redissonClient.getBucket(getCalendarKey(site), ByteArrayCodec.INSTANCE).isExists();
+    }
+
+    /**
+     * Replaces the calendars of the given sites with the nights of their bookings. Each one is written to another
+     * key first, so readers never see it half built
+     */
+    public void rebuild(List<String> sites, Iterable<Booking> bookings) {
+        LOGGER.debug("Building the occupancy calendars from the existing bookings...");
+        Map<String, BitSet> siteNights = new HashMap<>();
+        for (String site : sites) {
+            siteNights.put(site, new BitSet());
+        }
+        int count = 0;
+        for (Booking b : bookings) {
+            long start = Math.max(0, b.getFromDate().toEpochDay());
+            long end = b.getToDate().toEpochDay();
+            if (start < end) {
+                siteNights.computeIfAbsent(b.getSite(), site -> new BitSet()).set((int) start, (int) end);
+            }
+            count++;
+        }
+
+        siteNights.forEach((site, nights) -> {
+            //Redis numbers the bits of each byte from the most significant one
+            byte[] bytes = new byte[(nights.length() + 7) / 8];
+            for (int night = nights.nextSetBit(0); night >= 0; night = nights.nextSetBit(night + 1)) {
+                bytes[night / 8] |= (byte) (0x80 >>> (night % 8));
+            }
+
+            String calendarKey = getCalendarKey(site);
+            String rebuiltKey = calendarKey + ":rebuild";
+            redissonClient.getBucket(rebuiltKey, ByteArrayCodec.INSTANCE).set(bytes);
+            redissonClient.getBucket(rebuiltKey, ByteArrayCodec.INSTANCE).rename(calendarKey);
+        });
+        LOGGER.info("Occupancy calendars of {} site(s) built from {} booking(s)", siteNights.size(), count);
+    }
+
+    /**
+     * Marks the nights of the site between from (inclusive) and to (exclusive) as taken
+     */
+    public void occupy(String site, LocalDate from, LocalDate to) {
+        setRange(site, from, to, true);
+    }
+
+    /**
+     * Marks the nights of the site between from (inclusive) and to (exclusive) as free
+     */
+    public void release(String site, LocalDate from, LocalDate to) {
+        setRange(site, from, to, false);
+    }
+
+    /**
+     * Marks the nights of the site between from (inclusive) and to (exclusive) as free, except the kept ones, if any
+     */
+    public void release(String site, LocalDate from, LocalDate to, LocalDate keptFrom, LocalDate keptTo) {
+        if (keptFrom == null || keptTo == null) {
+            release(site, from, to);
+            return;
+        }
+        if (from.isBefore(keptFrom)) {
+            release(site, from, to.isBefore(keptFrom) ? to : keptFrom);
+        }
+        if (to.isAfter(keptTo)) {
+            release(site, from.isAfter(keptTo) ? from : keptTo, to);
+        }
+    }
+
+    private void setRange(String site, LocalDate from, LocalDate to, boolean taken) {
+        long start = Math.max(0, from.toEpochDay());
+        long end = to.toEpochDay();
+        if (start >= end) {
+            return;
+        }
+        String calendarKey = getCalendarKey(site);
+        redissonClient.getScript(LongCodec.INSTANCE).eval(calendarKey, RScript.Mode.READ_WRITE, SET_RANGE_SCRIPT,
+                RScript.ReturnType.INTEGER, List.of(calendarKey), start, end, taken ? 1 : 0);
+    }
+
+    /**
+     * @return the taken nights of the site between from (inclusive) and to (exclusive), indexed from the first one
+     */
+    private BitSet getRange(String site, LocalDate from, LocalDate to) {
+        BitSet taken = new BitSet();
+        long start = from.toEpochDay();
+        long end = to.toEpochDay();
+        long indexedStart = Math.max(0, start);
+        if (indexedStart >= end) {
+            return taken;
+        }
+
+        long firstByte = indexedStart / 8;
+        String calendarKey = getCalendarKey(site);
+        byte[] bytes = redissonClient.getScript(ByteArrayCodec.INSTANCE).eval(calendarKey, RScript.Mode.READ_ONLY,
+                GET_RANGE_SCRIPT, RScript.ReturnType.VALUE, List.of(calendarKey), toBytes(firstByte), toBytes((end - 1) / 8));
+        if (bytes == null) {
+            return taken;
+        }
+        for (long night = indexedStart; night < end; night++) {
+            int index = (int) (night / 8 - firstByte);
+            if (index >= bytes.length) {
+                break;
+            }
+            if ((bytes[index] & (0x80 >>> (night % 8))) != 0) {
+                taken.set((int) (night - start));
+            }
+        }
+        return taken;
+    }
+
+    private static byte[] toBytes(long value) {
+        return String.valueOf(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return whether every night of the site between from (inclusive) and to (exclusive) is free, except the ones
+     * between ignoredFrom and ignoredTo, when given
+     */
+    public boolean isFree(String site, LocalDate from, LocalDate to, @Nullable LocalDate ignoredFrom,
+                          @Nullable LocalDate ignoredTo) {
+        BitSet taken = getRange(site, from, to);
+        if (ignoredFrom != null && ignoredTo != null) {
+            int start = (int) Math.max(0, ignoredFrom.toEpochDay() - from.toEpochDay());
+            int end = (int) Math.max(0, ignoredTo.toEpochDay() - from.toEpochDay());
+            if (start < end) {
+                taken.clear(start, end);
+            }
+        }
+        return taken.isEmpty();
+    }
+
+    /**
+     * @return the free nights of the site between from (inclusive) and to (exclusive)
+     */
+    public List<LocalDate> getFreeNights(String site, LocalDate from, LocalDate to) {
+        BitSet taken = getRange(site, from, to);
+        int nights = (int) Math.max(0, to.toEpochDay() - from.toEpochDay());
+        List<LocalDate> freeNights = new ArrayList<>(nights - taken.cardinality());
+        for (int night = taken.nextClearBit(0); night < nights; night = taken.nextClearBit(night + 1)) {
+            freeNights.add(from.plusDays(night));
+        }
+        return freeNights;
+    }
+
+    /**
+     * @return the ranges of consecutive free nights of the site between from (inclusive) and to (exclusive)
+     */
+    public List<DateIntervalVo> getFreeIntervals(String site, LocalDate from, LocalDate to) {
+        BitSet taken = getRange(site, from, to);
+        int nights = (int) Math.max(0, to.toEpochDay() - from.toEpochDay());
+        List<DateIntervalVo> intervals = new ArrayList<>();
+        int night = taken.nextClearBit(0);
+        while (night < nights) {
+            int takenNight = taken.nextSetBit(night);
+            int end = takenNight < 0 ? nights : Math.min(takenNight, nights);
+            intervals.add(new DateIntervalVo(from.plusDays(night), from.plusDays(end)));
+            night = taken.nextClearBit(end);
+        }
+        return intervals;
+    }
+}
@@ -0,0 +1,139 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ServiceException;
+import com.upgrade.islandbooking.service.BookingMetrics.Operation;
+import com.upgrade.islandbooking.vo.BookingReserveVo;
+import com.upgrade.islandbooking.vo.ReservationStatusVo;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded in-process queue of reservations, processed in arrival order by a small pool of workers, so request threads
+ * do not wait for the locks. Requests are rejected right away when the queue is full. The results are kept in this
+ * node for a while, they must be polled from the same node the request was sent to.
+ */
+@Component
+public class ReservationQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReservationQueue.class);
+
+    private final BookingService bookingService;
+    private final BookingMetrics metrics;
+    private final AuditLogger auditLogger;
+    private final int capacity;
+    private final long ticketTtl;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService cleaner;
+    private final Map<String, CompletableFuture<ReservationStatusVo>> tickets = new ConcurrentHashMap<>();
+
+    private final Timer waitTimer;
+
+    public ReservationQueue(BookingService bookingService, BookingMetrics metrics, AuditLogger auditLogger,
+                            MeterRegistry registry,
+                            @Value("${reservation.queue.capacity}") int capacity,
+                            @Value("${reservation.queue.workers}") int workers,
+                            @Value("${reservation.queue.ticketTtl}") long ticketTtl) {
+        this.bookingService = bookingService;
+        this.metrics = metrics;
+        this.auditLogger = auditLogger;
+        this.capacity = capacity;
+        this.ticketTtl = ticketTtl;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity), new CustomizableThreadFactory("reservation-worker-"));
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("reservation-cleaner-"));
+
+        Gauge.builder("booking.queue.depth", executor, e -> e.getQueue().size())
+                .description("Reservation requests waiting to be processed")
+                .register(registry);
+        this.waitTimer = Timer.builder("booking.queue.wait")
+                .description("Time the reservation requests wait in the queue")
+                .register(registry);
+    }
+
+    /**
+     * @return the ticket to get the result of the reservation
+     */
+    public String submit(BookingReserveVo vo) {
+        String ticket = UUID.randomUUID().toString();
+        CompletableFuture<ReservationStatusVo> result = new CompletableFuture<>();
+        tickets.put(ticket, result);
+
+        long enqueuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> process(ticket, vo, result, enqueuedAt));
+        } catch (RejectedExecutionException e) {
+            tickets.remove(ticket);
+            LOGGER.error("The reservation queue is full, rejecting the request for email {}", vo.getPersonEmail());
+            throw new ServiceException(Error.RESERVATION_QUEUE_FULL, new Object[]{capacity});
+        }
+        LOGGER.debug("Reservation for email {} queued with ticket {}", vo.getPersonEmail(), ticket);
+        return ticket;
+    }
+
+    private void process(String ticket, BookingReserveVo vo, CompletableFuture<ReservationStatusVo> result,
+                         long enqueuedAt) {
+        waitTimer.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+        try {
+            String bookingId = metrics.timeRequest(Operation.RESERVE, () -> auditLogger.record(Operation.RESERVE,
+                    null, vo.getFrom(), vo.getTo(), () -> bookingService.reserve(vo)));
+            result.complete(ReservationStatusVo.done(ticket, bookingId));
+        } catch (ServiceException e) {
+            metrics.countError(e.getError());
+            result.complete(ReservationStatusVo.failed(ticket, e.getError()));
+        } catch (RuntimeException e) {
+            LOGGER.error("The reservation with ticket {} failed", ticket, e);
+            result.complete(ReservationStatusVo.failed(ticket, null));
+        } finally {
+            cleaner.schedule(() -> tickets.remove(ticket), ticketTtl, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the result of the reservation, completed once it is processed
+     */
+    public CompletableFuture<ReservationStatusVo> getResult(String ticket) {
+        CompletableFuture<ReservationStatusVo> result = tickets.get(ticket);
+        if (result == null) {
+            LOGGER.error("Reservation request {} does not exist", ticket);
+            throw new ServiceException(Error.RESERVATION_NOT_FOUND, new Object[]{ticket});
+        }
+        return result;
+    }
+
+    public int getDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Lets the workers finish the requests already accepted
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            LOGGER.warn("{} reservation requests were not processed before shutting down", executor.getQueue().size());
+            executor.shutdownNow();
+        }
+        cleaner.shutdownNow();
+    }
+}
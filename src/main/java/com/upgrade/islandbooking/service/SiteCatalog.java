@@ -0,0 +1,56 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Sites (campsites, islands...) that can be booked. Each one has its own nights, so the locks, the occupancy and
+ * the availability caches are kept per site, and requests for different sites never wait for each other.
+ */
+@Component
+public class SiteCatalog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SiteCatalog.class);
+
+    private final List<String> sites;
+
+    public SiteCatalog(@Value("${sites}") String[] sites) {
+        if (sites.length == 0) {
+            throw new IllegalStateException("At least one site must be configured");
+        }
+        this.sites = List.of(sites);
+    }
+
+    public List<String> getSites() {
+        return sites;
+    }
+
+    public String getDefault() {
+        return sites.get(0);
+    }
+
+    public boolean exists(String site) {
+        return sites.contains(site);
+    }
+
+    /**
+     * @return the given site, or the default one if it is not given
+     */
+    public String resolve(@Nullable String site) {
+        if (site == null) {
+            return getDefault();
+        }
+        if (!exists(site)) {
+            LOGGER.error("Site {} does not exist", site);
+            throw new ServiceException(Error.SITE_NOT_FOUND, new Object[]{site});
+        }
+        return site;
+    }
+}
@@ -0,0 +1,31 @@
+package com.upgrade.islandbooking.vo;
+
+import lombok.*;
+
+import java.time.LocalDate;
+
+/**
+ * Nights of a site released and/or taken by a committed booking change. Ranges are from (inclusive) - to (exclusive)
+ * and are null when the change did not release or take nights. The sequence orders the changes of all the nodes.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@ToString
+@EqualsAndHashCode
+public class AvailabilityChangeVo {
+
+    private String nodeId;
+
+    private String site;
+
+    private LocalDate releasedFrom;
+
+    private LocalDate releasedTo;
+
+    private LocalDate takenFrom;
+
+    private LocalDate takenTo;
+
+    private Long sequence;
+}
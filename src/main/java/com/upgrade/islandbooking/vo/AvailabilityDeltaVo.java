@@ -0,0 +1,38 @@
+package com.upgrade.islandbooking.vo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDate;
+
+/**
+ * Nights of a site released and/or taken, as pushed to the clients of GET /booking/changes. Ranges are from (inclusive) -
+ * to (exclusive), and the ones not changed are left out
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@ToString
+@EqualsAndHashCode
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AvailabilityDeltaVo {
+
+    private String site;
+
+    private LocalDate releasedFrom;
+
+    private LocalDate releasedTo;
+
+    private LocalDate takenFrom;
+
+    private LocalDate takenTo;
+
+    public static AvailabilityDeltaVo of(AvailabilityChangeVo change) {
+        return new AvailabilityDeltaVo(change.getSite(), change.getReleasedFrom(), change.getReleasedTo(),
+                change.getTakenFrom(), change.getTakenTo());
+    }
+}
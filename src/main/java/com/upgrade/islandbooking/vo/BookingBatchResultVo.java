@@ -0,0 +1,27 @@
+package com.upgrade.islandbooking.vo;
+
+import com.upgrade.islandbooking.exception.Error;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of a booking of a batch. It has the ID of the booking when it was created or the error otherwise
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@EqualsAndHashCode
+public class BookingBatchResultVo {
+    private String bookingId;
+    private Error error;
+
+    public static BookingBatchResultVo created(String bookingId) {
+        return new BookingBatchResultVo(bookingId, null);
+    }
+
+    public static BookingBatchResultVo rejected(Error error) {
+        return new BookingBatchResultVo(null, error);
+    }
+}
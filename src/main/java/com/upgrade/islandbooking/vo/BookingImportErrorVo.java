@@ -0,0 +1,19 @@
+package com.upgrade.islandbooking.vo;
+
+import com.upgrade.islandbooking.exception.Error;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * Booking of an import that was not created. Records are numbered from 1, without counting the CSV header
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@EqualsAndHashCode
+public class BookingImportErrorVo {
+    private long record;
+    private Error error;
+}
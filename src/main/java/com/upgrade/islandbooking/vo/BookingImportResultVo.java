@@ -0,0 +1,22 @@
+package com.upgrade.islandbooking.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of an import. Only the first errors are listed, so the response stays bounded whatever the file size
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@EqualsAndHashCode
+public class BookingImportResultVo {
+    private long created;
+    private long rejected;
+    private List<BookingImportErrorVo> errors = new ArrayList<>();
+}
@@ -0,0 +1,31 @@
+package com.upgrade.islandbooking.vo;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.validation.constraints.Pattern;
+import javax.validation.groups.Default;
+import java.time.LocalDate;
+
+/**
+ * Booking read from an export. It keeps the ID it was exported with, when it has one, and it is validated with the
+ * {@link BookingReserveVo.Imported} constraints, since it can be already started
+ */
+@NoArgsConstructor
+@Data
+@ToString(callSuper = true)
+@EqualsAndHashCode(callSuper = true)
+public class BookingImportVo extends BookingReserveVo {
+
+    @Pattern(regexp = "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}",
+            message = "'${validatedValue}' is not a valid booking ID", groups = {Default.class, Imported.class})
+    private String bookingId;
+
+    public BookingImportVo(String bookingId, String personEmail, String personFirstName, String personLastName,
+                           LocalDate from, LocalDate to, String site) {
+        super(personEmail, personFirstName, personLastName, from, to, site);
+        this.bookingId = bookingId;
+    }
+}
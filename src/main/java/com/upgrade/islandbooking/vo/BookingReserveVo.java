@@ -3,6 +3,7 @@ package com.upgrade.islandbooking.vo;
 import lombok.*;
 
 import javax.validation.constraints.*;
+import javax.validation.groups.Default;
 import java.time.LocalDate;
 
 @AllArgsConstructor
@@ -12,27 +13,45 @@ import java.time.LocalDate;
 @EqualsAndHashCode
 public class BookingReserveVo {
 
-    @NotEmpty(message = "The person email cannot be empty")
-    @Email(message = "'${validatedValue}' is not a valid email")
+    /**
+     * Constraints also checked on imported bookings, which can be already started or past
+     */
+    public interface Imported {
+    }
+
+    @NotEmpty(message = "The person email cannot be empty", groups = {Default.class, Imported.class})
+    @Email(message = "'${validatedValue}' is not a valid email", groups = {Default.class, Imported.class})
     private String personEmail;
 
-    @NotEmpty(message = "The person first name cannot be empty")
+    @NotEmpty(message = "The person first name cannot be empty", groups = {Default.class, Imported.class})
     @Size(min = 1, max = 45,
-            message = "The person first name '${validatedValue}' must be between {min} and {max} characters long")
+            message = "The person first name '${validatedValue}' must be between {min} and {max} characters long",
+            groups = {Default.class, Imported.class})
     private String personFirstName;
 
-    @NotEmpty(message = "The person last name cannot be empty")
+    @NotEmpty(message = "The person last name cannot be empty", groups = {Default.class, Imported.class})
     @Size(min = 1, max = 45,
-            message = "The person last name '${validatedValue}' must be between {min} and {max} characters long")
+            message = "The person last name '${validatedValue}' must be between {min} and {max} characters long",
+            groups = {Default.class, Imported.class})
     private String personLastName;
 
-    @NotNull(message = "The booking date from cannot be empty")
+    @NotNull(message = "The booking date from cannot be empty", groups = {Default.class, Imported.class})
     private LocalDate from;
 
-    @NotNull(message = "The booking date to cannot be empty")
+    @NotNull(message = "The booking date to cannot be empty", groups = {Default.class, Imported.class})
     private LocalDate to;
 
-    @AssertTrue(message = "Date from must be less than date to")
+    /**
+     * The default site when it is not given
+     */
+    private String site;
+
+    public BookingReserveVo(String personEmail, String personFirstName, String personLastName, LocalDate from,
+                            LocalDate to) {
+        this(personEmail, personFirstName, personLastName, from, to, null);
+    }
+
+    @AssertTrue(message = "Date from must be less than date to", groups = {Default.class, Imported.class})
     public boolean isValidDateRange() {
         return to != null && from != null && to.isAfter(from);
     }
@@ -42,7 +61,8 @@ public class BookingReserveVo {
         return from != null && from.isAfter(LocalDate.now());
     }
 
-    @AssertTrue(message = "The max range date is 3 days")
+    //Overlapping bookings are looked up assuming none is longer, so it is checked on imported bookings too
+    @AssertTrue(message = "The max range date is 3 days", groups = {Default.class, Imported.class})
     public boolean isLessThanMaxRange() {
         return from != null
                 && to != null
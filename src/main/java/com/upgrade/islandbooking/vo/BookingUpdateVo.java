@@ -27,6 +27,15 @@ public class BookingUpdateVo {
 
     private LocalDate to;
 
+    /**
+     * Moves the booking to another site when it is given
+     */
+    private String site;
+
+    public BookingUpdateVo(String personFirstName, String personLastName, LocalDate from, LocalDate to) {
+        this(personFirstName, personLastName, from, to, null);
+    }
+
     @AssertTrue(message = "Date from must be less than date to")
     public boolean isValidDateRange() {
         return to == null || from == null || to.isAfter(from);
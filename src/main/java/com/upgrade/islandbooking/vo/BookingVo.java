@@ -0,0 +1,22 @@
+package com.upgrade.islandbooking.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@EqualsAndHashCode
+public class BookingVo {
+    private String bookingId;
+    private String site;
+    private String personEmail;
+    private String personFirstName;
+    private String personLastName;
+    private LocalDate from;
+    private LocalDate to;
+}
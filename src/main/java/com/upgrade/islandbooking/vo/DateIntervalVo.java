@@ -0,0 +1,20 @@
+package com.upgrade.islandbooking.vo;
+
+import lombok.*;
+
+import java.time.LocalDate;
+
+/**
+ * Range of consecutive dates, start (inclusive) - end (exclusive)
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@ToString
+@EqualsAndHashCode
+public class DateIntervalVo {
+
+    private LocalDate start;
+
+    private LocalDate end;
+}
@@ -0,0 +1,24 @@
+package com.upgrade.islandbooking.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Second-level cache entries changed by a transaction of a node, per region. A region without keys was cleared
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class EntityCacheInvalidationVo implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String nodeId;
+
+    private Map<String, Set<Object>> keys;
+}
@@ -0,0 +1,40 @@
+package com.upgrade.islandbooking.vo;
+
+import com.upgrade.islandbooking.exception.Error;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Result of a request sent with an idempotency key. The fingerprint identifies the request payload, so a key
+ * reused for a different request is detected
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@ToString
+@EqualsAndHashCode
+public class IdempotentResultVo {
+
+    public enum Status { PENDING, DONE, FAILED }
+
+    private Status status;
+    private String fingerprint;
+    private String bookingId;
+    private Error error;
+    private String[] parameters;
+
+    public static IdempotentResultVo pending(String fingerprint) {
+        return new IdempotentResultVo(Status.PENDING, fingerprint, null, null, null);
+    }
+
+    public static IdempotentResultVo done(String fingerprint, String bookingId) {
+        return new IdempotentResultVo(Status.DONE, fingerprint, bookingId, null, null);
+    }
+
+    public static IdempotentResultVo failed(String fingerprint, Error error, String[] parameters) {
+        return new IdempotentResultVo(Status.FAILED, fingerprint, null, error, parameters);
+    }
+}
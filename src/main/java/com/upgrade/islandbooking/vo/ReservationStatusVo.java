@@ -0,0 +1,37 @@
+package com.upgrade.islandbooking.vo;
+
+import com.upgrade.islandbooking.exception.Error;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * Status of an asynchronous reservation. It has the ID of the booking once it was created or the error
+ * if it was rejected
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@EqualsAndHashCode
+public class ReservationStatusVo {
+
+    public enum Status { PENDING, DONE, FAILED }
+
+    private String ticket;
+    private Status status;
+    private String bookingId;
+    private Error error;
+
+    public static ReservationStatusVo pending(String ticket) {
+        return new ReservationStatusVo(ticket, Status.PENDING, null, null);
+    }
+
+    public static ReservationStatusVo done(String ticket, String bookingId) {
+        return new ReservationStatusVo(ticket, Status.DONE, bookingId, null);
+    }
+
+    public static ReservationStatusVo failed(String ticket, Error error) {
+        return new ReservationStatusVo(ticket, Status.FAILED, null, error);
+    }
+}
@@ -0,0 +1,158 @@
+package com.upgrade.islandbooking.reactive.controller;
+
+import com.upgrade.islandbooking.reactive.ReactiveIslandBookingApplication;
+import com.upgrade.islandbooking.reactive.repository.ReactiveBookingRepository;
+import com.upgrade.islandbooking.service.RedisOccupancyCalendar;
+import com.upgrade.islandbooking.vo.BookingReserveVo;
+import com.upgrade.islandbooking.vo.BookingResponseVo;
+import com.upgrade.islandbooking.vo.BookingUpdateVo;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import redis.embedded.RedisServer;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//The test context decides the type of application before the profile properties are read
+@SpringBootTest(classes = ReactiveIslandBookingApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.main.web-application-type=reactive", "availability.calendar.redis.enabled=true"})
+@ActiveProfiles("reactive")
+public class ReactiveBookingControllerTest {
+
+    private static final String BOOKING_URI = "/booking";
+    private static final String SITE = "default";
+
+    private static RedisServer redisServer;
+
+    @Autowired
+    private WebTestClient client;
+
+    @SpyBean
+    private ReactiveBookingRepository bookingRepository;
+
+    @Autowired
+    private RedisOccupancyCalendar occupancyCalendar;
+
+    @BeforeAll
+    public static void startRedis() {
+        redisServer = new RedisServer(6379);
+        redisServer.start();
+    }
+
+    @AfterAll
+    public static void stopRedis() {
+        redisServer.stop();
+    }
+
+    private BookingResponseVo reserve(String email, LocalDate from, LocalDate to) {
+        return client.post().uri(BOOKING_URI)
+                .bodyValue(new BookingReserveVo(email, "Javier", "Digruttola", from, to))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(BookingResponseVo.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private LocalDate[] getAvailableDates(LocalDate from, LocalDate to) {
+        return client.get().uri(BOOKING_URI + "?from={from}&to={to}", from, to)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(LocalDate[].class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    @DisplayName("Test reserve, update and delete through the reactive API")
+    @Test
+    public void reserve_update_delete() {
+        //Given
+        final LocalDate from = LocalDate.now().plusDays(5);
+        final LocalDate to = from.plusDays(2);
+
+        //When
+        final BookingResponseVo response = reserve("reactive@foo.com", from, to);
+
+        //Then
+        assertNotNull(response.getBookingId());
+        assertFalse(List.of(getAvailableDates(from, to)).contains(from));
+        //Blocking nodes with the shared calendar enabled only look for overlapping bookings there
+        assertFalse(occupancyCalendar.isFree(SITE, from, to, null, null));
+        client.post().uri(BOOKING_URI)
+                .bodyValue(new BookingReserveVo("other@foo.com", "Javier", "Digruttola", from.plusDays(1), to.plusDays(1)))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.NOT_ACCEPTABLE)
+                .expectBody().jsonPath("$.internalErrorCode").value(code -> assertEquals("101", code.toString().trim()));
+
+        //When
+        client.put().uri(BOOKING_URI + "/{id}", response.getBookingId())
+                .bodyValue(new BookingUpdateVo(null, null, from.plusDays(1), to.plusDays(1)))
+                .exchange()
+                .expectStatus().isOk();
+
+        //Then
+        assertTrue(List.of(getAvailableDates(from, to)).contains(from));
+        assertTrue(occupancyCalendar.isFree(SITE, from, from.plusDays(1), null, null));
+        assertFalse(occupancyCalendar.isFree(SITE, to, to.plusDays(1), null, null));
+
+        //When
+        client.delete().uri(BOOKING_URI + "/{id}", response.getBookingId())
+                .exchange()
+                .expectStatus().isOk();
+
+        //Then
+        assertTrue(List.of(getAvailableDates(from, to.plusDays(1))).contains(to));
+        assertTrue(occupancyCalendar.isFree(SITE, from, to.plusDays(1), null, null));
+        client.delete().uri(BOOKING_URI + "/{id}", response.getBookingId())
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @DisplayName("Test reserve of a person booked meanwhile for other nights through the reactive API")
+    @Test
+    public void reserve_personBookedMeanwhile() {
+        //Given
+        final LocalDate from = LocalDate.now().plusDays(40);
+        reserve("meanwhile@foo.com", from, from.plusDays(2));
+        //As if the other reservation was committed right after the person was checked
+        Mockito.doReturn(Mono.just(false)).when(bookingRepository).existsPerson("meanwhile@foo.com");
+
+        //When
+        client.post().uri(BOOKING_URI)
+                .bodyValue(new BookingReserveVo("meanwhile@foo.com", "Javier", "Digruttola", from.plusDays(5),
+                        from.plusDays(7)))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.NOT_ACCEPTABLE)
+                .expectBody().jsonPath("$.internalErrorCode").value(code -> assertEquals("102", code.toString().trim()));
+
+        //Then
+        assertTrue(List.of(getAvailableDates(from, from.plusDays(10))).contains(from.plusDays(5)));
+    }
+
+    @DisplayName("Test reserve with a not valid request through the reactive API")
+    @Test
+    public void reserve_notValid() {
+        final LocalDate from = LocalDate.now().plusDays(20);
+
+        client.post().uri(BOOKING_URI)
+                .bodyValue(new BookingReserveVo("not-an-email", "Javier", "Digruttola", from, from.plusDays(10)))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.errors").isNotEmpty();
+    }
+}
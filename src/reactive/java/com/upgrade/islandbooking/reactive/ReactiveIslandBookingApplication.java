@@ -0,0 +1,61 @@
+package com.upgrade.islandbooking.reactive;
+
+import com.upgrade.islandbooking.controller.GlobalExceptionHandlerController;
+import com.upgrade.islandbooking.exception.ErrorCatalog;
+import com.upgrade.islandbooking.reactive.repository.ReactiveBookingRepository;
+import com.upgrade.islandbooking.service.AvailabilityCache;
+import com.upgrade.islandbooking.service.AvailabilityChangeBroadcaster;
+import com.upgrade.islandbooking.service.BookingMetrics;
+import com.upgrade.islandbooking.service.OccupancyIndex;
+import com.upgrade.islandbooking.service.OccupancySnapshot;
+import com.upgrade.islandbooking.service.RedisOccupancyCalendar;
+import com.upgrade.islandbooking.service.SiteCatalog;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Serves the booking API with WebFlux, R2DBC and the reactive Redisson locks, so requests waiting for the database
+ * or the locks do not hold a thread. It only scans its own package, and reuses the availability and error handling
+ * components of the blocking mode. Nodes of both modes can share the same Redis and database.
+ */
+@SpringBootApplication
+@Profile("reactive")
+@Import({AvailabilityCache.class, AvailabilityChangeBroadcaster.class, BookingMetrics.class, ErrorCatalog.class,
+        GlobalExceptionHandlerController.class, OccupancySnapshot.class, RedisOccupancyCalendar.class,
+        SiteCatalog.class})
+public class ReactiveIslandBookingApplication {
+
+    public static void main(String[] args) {
+        new SpringApplicationBuilder(ReactiveIslandBookingApplication.class)
+                .profiles("reactive")
+                .run(args);
+    }
+
+    /**
+     * Netty instead of Tomcat, which is also in the classpath because of the blocking mode
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * Same index as the blocking mode, loaded through R2DBC. It is only rebuilt at startup (when there is no
+     * occupancy snapshot) and after a reconnection to Redis, so blocking there is fine.
+     */
+    @Bean
+    @DependsOnDatabaseInitialization
+    public OccupancyIndex occupancyIndex(ReactiveBookingRepository bookingRepository) {
+        return new OccupancyIndex(null) {
+            @Override
+            public void rebuild() {
+                rebuild(() -> bookingRepository.findAll().collectList().block());
+            }
+        };
+    }
+}
@@ -0,0 +1,112 @@
+package com.upgrade.islandbooking.reactive.controller;
+
+import com.upgrade.islandbooking.reactive.service.ReactiveBookingService;
+import com.upgrade.islandbooking.service.BookingService;
+import com.upgrade.islandbooking.vo.BookingReserveVo;
+import com.upgrade.islandbooking.vo.BookingResponseVo;
+import com.upgrade.islandbooking.vo.BookingUpdateVo;
+import com.upgrade.islandbooking.vo.DateIntervalVo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reactive version of the booking endpoints. Errors are mapped by the same
+ * {@link com.upgrade.islandbooking.controller.GlobalExceptionHandlerController}
+ */
+@RestController
+@RequestMapping("/booking")
+@Profile("reactive")
+public class ReactiveBookingController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveBookingController.class);
+
+    final private ReactiveBookingService service;
+
+    public ReactiveBookingController(ReactiveBookingService service) {
+        this.service = service;
+    }
+
+    @PostMapping
+    public Mono<BookingResponseVo> reserve(@Valid @RequestBody BookingReserveVo request) {
+        LOGGER.debug("Request data: {}", request);
+        return service.reserve(request).map(BookingResponseVo::new);
+    }
+
+    @PutMapping("/{id}")
+    public Mono<Void> update(@PathVariable String id, @Valid @RequestBody BookingUpdateVo request) {
+        LOGGER.debug("Updating booking with ID {} Request data: {}", id, request);
+        return service.update(id, request).then();
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<Void> delete(@PathVariable String id) {
+        LOGGER.debug("Deleting booking with ID {}", id);
+        return service.delete(id);
+    }
+
+    /**
+     * Answers with 304 (Not Modified) when the availability did not change since the ETag sent by the client, whichever
+     * node gave it. The default site is used when it is not given
+     */
+    @GetMapping
+    public Mono<ResponseEntity<List<LocalDate>>> getAvailableDates(@RequestParam LocalDate from,
+                                                                   @RequestParam LocalDate to,
+                                                                   @RequestParam(required = false) String site,
+                                                                   ServerWebExchange exchange) {
+        LOGGER.debug("Getting available date of site {} from: {} to {}", site, from, to);
+        return answerAvailability(service.getAvailabilityETag(site, from, to, BookingService.AVAILABLE_DAYS),
+                service.getAvailableDays(site, from, to), exchange);
+    }
+
+    @GetMapping("/intervals")
+    public Mono<ResponseEntity<List<DateIntervalVo>>> getAvailableIntervals(@RequestParam LocalDate from,
+                                                                            @RequestParam LocalDate to,
+                                                                            @RequestParam(required = false) String site,
+                                                                            ServerWebExchange exchange) {
+        LOGGER.debug("Getting available intervals of site {} from: {} to {}", site, from, to);
+        return answerAvailability(service.getAvailabilityETag(site, from, to, BookingService.AVAILABLE_INTERVALS),
+                service.getAvailableIntervals(site, from, to), exchange);
+    }
+
+    /**
+     * The availability is only computed when it is not answered with 304. Without a version of the availability, its
+     * ETag is computed from its content
+     */
+    private static <T> Mono<ResponseEntity<List<T>>> answerAvailability(Mono<Optional<String>> eTag,
+                                                                        Mono<List<T>> availability,
+                                                                        ServerWebExchange exchange) {
+        return eTag.flatMap(versionETag -> {
+            if (versionETag.isPresent() && exchange.checkNotModified(versionETag.get())) {
+                return Mono.empty();
+            }
+            return availability.flatMap(body -> {
+                String bodyETag = versionETag.orElseGet(() -> BookingService.getAvailabilityETag(body));
+                return versionETag.isEmpty() && exchange.checkNotModified(bodyETag)
+                        ? Mono.empty()
+                        : Mono.just(ResponseEntity.ok().eTag(bodyETag).body(body));
+            });
+        });
+    }
+
+    /**
+     * Written as newline delimited JSON while the range is walked
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<LocalDate> streamAvailableDates(@RequestParam LocalDate from, @RequestParam LocalDate to,
+                                                @RequestParam(required = false) String site) {
+        LOGGER.debug("Streaming available date of site {} from: {} to {}", site, from, to);
+        return service.streamAvailableDays(site, from, to);
+    }
+}
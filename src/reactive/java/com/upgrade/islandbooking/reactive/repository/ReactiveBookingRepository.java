@@ -0,0 +1,145 @@
+package com.upgrade.islandbooking.reactive.repository;
+
+import com.upgrade.islandbooking.domain.entity.Booking;
+import com.upgrade.islandbooking.domain.entity.Person;
+import io.r2dbc.spi.Row;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Bookings and people through R2DBC, on the same tables used by the JPA entities
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveBookingRepository {
+
+    private static final String SELECT_BOOKING = "select b.id, b.site, b.from_date, b.to_date, p.email, p.first_name, "
+            + "p.last_name from booking b join person p on p.email = b.person_email";
+
+    private final DatabaseClient databaseClient;
+
+    public ReactiveBookingRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * @return the number of bookings of the site, other than the given one, starting between fromStart and fromEnd
+     * and ending after toAfter
+     */
+    public Mono<Long> countBySiteAndFromDateBetweenAndToDateGreaterThan(String site, LocalDate fromStart,
+                                                                        LocalDate fromEnd, LocalDate toAfter,
+                                                                        UUID excludedId) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("select count(*) from booking where site = :site "
+                        + "and from_date between :fromStart and :fromEnd and to_date > :toAfter"
+                        + (excludedId == null ? "" : " and id <> :id"))
+                .bind("site", site)
+                .bind("fromStart", fromStart)
+                .bind("fromEnd", fromEnd)
+                .bind("toAfter", toAfter);
+        if (excludedId != null) {
+            spec = spec.bind("id", toBytes(excludedId));
+        }
+        return spec.map(row -> row.get(0, Long.class)).one();
+    }
+
+    public Mono<Boolean> existsPerson(String email) {
+        return databaseClient.sql("select count(*) from person where email = :email")
+                .bind("email", email)
+                .map(row -> row.get(0, Long.class) > 0)
+                .one();
+    }
+
+    public Mono<Booking> findById(UUID id) {
+        return databaseClient.sql(SELECT_BOOKING + " where b.id = :id")
+                .bind("id", toBytes(id))
+                .map(ReactiveBookingRepository::toBooking)
+                .one();
+    }
+
+    public Flux<Booking> findAll() {
+        return databaseClient.sql(SELECT_BOOKING)
+                .map(ReactiveBookingRepository::toBooking)
+                .all();
+    }
+
+    public Mono<Void> insertPerson(Person person) {
+        return databaseClient.sql("insert into person (email, first_name, last_name) "
+                        + "values (:email, :firstName, :lastName)")
+                .bind("email", person.getEmail())
+                .bind("firstName", person.getFirstName())
+                .bind("lastName", person.getLastName())
+                .then();
+    }
+
+    /**
+     * Its person must be inserted first
+     */
+    public Mono<Void> insertBooking(Booking booking) {
+        return databaseClient.sql("insert into booking (id, site, person_email, from_date, to_date) "
+                        + "values (:id, :site, :email, :fromDate, :toDate)")
+                .bind("id", toBytes(booking.getId()))
+                .bind("site", booking.getSite())
+                .bind("email", booking.getPerson().getEmail())
+                .bind("fromDate", booking.getFromDate())
+                .bind("toDate", booking.getToDate())
+                .then();
+    }
+
+    public Mono<Void> update(Booking booking) {
+        Person person = booking.getPerson();
+        return databaseClient.sql("update person set first_name = :firstName, last_name = :lastName "
+                        + "where email = :email")
+                .bind("firstName", person.getFirstName())
+                .bind("lastName", person.getLastName())
+                .bind("email", person.getEmail())
+                .then()
+                .then(databaseClient.sql("update booking set site = :site, from_date = :fromDate, to_date = :toDate "
+                                + "where id = :id")
+                        .bind("site", booking.getSite())
+                        .bind("fromDate", booking.getFromDate())
+                        .bind("toDate", booking.getToDate())
+                        .bind("id", toBytes(booking.getId()))
+                        .then());
+    }
+
+    /**
+     * Removes the booking and the person linked to it
+     */
+    public Mono<Void> delete(Booking booking) {
+        return databaseClient.sql("delete from booking where id = :id")
+                .bind("id", toBytes(booking.getId()))
+                .then()
+                .then(databaseClient.sql("delete from person where email = :email")
+                        .bind("email", booking.getPerson().getEmail())
+                        .then());
+    }
+
+    private static Booking toBooking(Row row) {
+        Booking booking = new Booking(row.get("site", String.class),
+                new Person(row.get("email", String.class), row.get("first_name", String.class),
+                        row.get("last_name", String.class)),
+                row.get("from_date", LocalDate.class),
+                row.get("to_date", LocalDate.class));
+        booking.setId(toUuid(row.get("id", byte[].class)));
+        return booking;
+    }
+
+    private static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    private static UUID toUuid(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
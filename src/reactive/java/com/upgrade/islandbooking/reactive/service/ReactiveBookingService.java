@@ -0,0 +1,427 @@
+package com.upgrade.islandbooking.reactive.service;
+
+import com.upgrade.islandbooking.domain.entity.Booking;
+import com.upgrade.islandbooking.domain.entity.BookingIdGenerator;
+import com.upgrade.islandbooking.domain.entity.Person;
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ServiceException;
+import com.upgrade.islandbooking.reactive.repository.ReactiveBookingRepository;
+import com.upgrade.islandbooking.service.AvailabilityCache;
+import com.upgrade.islandbooking.service.AvailabilityChangeBroadcaster;
+import com.upgrade.islandbooking.service.BookingMetrics;
+import com.upgrade.islandbooking.service.BookingMetrics.Operation;
+import com.upgrade.islandbooking.service.BookingService;
+import com.upgrade.islandbooking.service.OccupancyIndex;
+import com.upgrade.islandbooking.service.RedisOccupancyCalendar;
+import com.upgrade.islandbooking.service.SiteCatalog;
+import com.upgrade.islandbooking.vo.BookingReserveVo;
+import com.upgrade.islandbooking.vo.BookingUpdateVo;
+import com.upgrade.islandbooking.vo.DateIntervalVo;
+import org.redisson.api.RLock;
+import org.redisson.api.RLockReactive;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.RedissonReactiveClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Same rules as {@link BookingService}, without blocking any thread. The locks are the same ones, so reactive
+ * and blocking nodes can serve the same island at once. The nights table mode is not supported.
+ * The shared calendar is updated as in the blocking mode when it is enabled, since blocking nodes only look for
+ * overlapping bookings there. Overlaps are still checked against the bookings here, so the calendar must be enabled
+ * in every node or in none.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveBookingService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveBookingService.class);
+
+    @Value("${rule.dateRange.max}")
+    private Integer maxDateRangeSize;
+
+    @Value("${locking.timeout}")
+    private Long lockingTimeout;
+
+    @Value("${locking.maxWait}")
+    private Long lockingMaxWait;
+
+    @Value("${spring.jpa.properties.booking.id.strategy:" + BookingIdGenerator.TIME_ORDERED + "}")
+    private String idStrategy;
+
+    @Value("${availability.calendar.redis.enabled:false}")
+    private boolean redisCalendarEnabled;
+
+    final private ReactiveBookingRepository bookingRepository;
+    final private RedissonClient redissonClient;
+    final private RedissonReactiveClient redissonReactiveClient;
+    final private TransactionalOperator transactionalOperator;
+    final private OccupancyIndex occupancyIndex;
+    final private RedisOccupancyCalendar occupancyCalendar;
+    final private AvailabilityCache availabilityCache;
+    final private AvailabilityChangeBroadcaster availabilityChangeBroadcaster;
+    final private BookingMetrics metrics;
+    final private SiteCatalog siteCatalog;
+
+    public ReactiveBookingService(ReactiveBookingRepository bookingRepository, RedissonClient redissonClient,
+                                  RedissonReactiveClient redissonReactiveClient,
+                                  ReactiveTransactionManager transactionManager, OccupancyIndex occupancyIndex,
+                                  RedisOccupancyCalendar occupancyCalendar, AvailabilityCache availabilityCache,
+                                  AvailabilityChangeBroadcaster availabilityChangeBroadcaster,
+                                  BookingMetrics metrics, SiteCatalog siteCatalog) {
+        this.bookingRepository = bookingRepository;
+        this.redissonClient = redissonClient;
+        this.redissonReactiveClient = redissonReactiveClient;
+        this.occupancyIndex = occupancyIndex;
+        this.occupancyCalendar = occupancyCalendar;
+        this.availabilityCache = availabilityCache;
+        this.availabilityChangeBroadcaster = availabilityChangeBroadcaster;
+        this.metrics = metrics;
+        this.siteCatalog = siteCatalog;
+        //Read committed, as in the blocking mode, is the default level of the connections. r2dbc-h2 fails when it is
+        //set explicitly
+        this.transactionalOperator = TransactionalOperator.create(transactionManager);
+    }
+
+    /**
+     * Builds the shared calendars if they are enabled and no other node did it before. It is only done at startup,
+     * so blocking there is fine
+     */
+    @PostConstruct
+    public void initCalendar() {
+        if (redisCalendarEnabled && !siteCatalog.getSites().stream().allMatch(occupancyCalendar::exists)) {
+            occupancyCalendar.rebuild(siteCatalog.getSites(), bookingRepository.findAll().collectList().block());
+        }
+    }
+
+    /**
+     * Runs the work holding every given lock. Reactive locks are not owned by a thread, so each acquisition
+     * gets its own owner ID. They are released once the work is completed, failed or cancelled.
+     * As in the blocking mode, the work is rejected if the locks are not acquired within locking.maxWait.
+     */
+    private <T> Mono<T> withLocks(Operation operation, List<String> keys, Mono<T> work) {
+        if (keys.isEmpty()) {
+            return work;
+        }
+
+        RLock[] locks = keys.stream().map(redissonClient::getLock).toArray(RLock[]::new);
+        RLockReactive lock = redissonReactiveClient.getMultiLock(locks);
+        long ownerId = ThreadLocalRandom.current().nextLong();
+        Mono<Long> acquire = Mono.defer(() -> {
+            long start = metrics.startLockWait();
+            return lock.tryLock(lockingMaxWait, lockingTimeout, TimeUnit.MILLISECONDS, ownerId)
+                    .doFinally(signal -> metrics.recordLockWait(operation, start));
+        }).flatMap(acquired -> {
+            if (!acquired) {
+                LOGGER.error("The locks {} were not acquired after {} ms", keys, lockingMaxWait);
+                return Mono.error(new ServiceException(Error.LOCK_CONTENTION,
+                        new Object[]{metrics.getRetryAfterSeconds()}));
+            }
+            return Mono.just(System.nanoTime());
+        });
+
+        return Mono.usingWhen(acquire,
+                lockedAt -> work,
+                lockedAt -> lock.unlock(ownerId).doFinally(signal -> metrics.recordLockHold(operation, lockedAt)));
+    }
+
+    private static Stream<String> getNightLockKeys(String site, LocalDate from, LocalDate to) {
+        return from.datesUntil(to).map(night -> BookingService.getNightLockKey(site, night));
+    }
+
+    /**
+     * Keys are sorted, so the locks are always requested in the same order
+     */
+    private static List<String> sorted(Stream<String> keys) {
+        return keys.distinct()
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private UUID newId() {
+        return BookingIdGenerator.RANDOM.equals(idStrategy) ? UUID.randomUUID() : BookingIdGenerator.timeOrderedUuid();
+    }
+
+    private Mono<UUID> parseId(String id) {
+        try {
+            return Mono.just(UUID.fromString(id));
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Booking with ID {} does not exist", id);
+            return Mono.error(new ServiceException(Error.BOOKING_NOT_FOUND, new Object[]{id}));
+        }
+    }
+
+    private Mono<Booking> getExistingBooking(UUID id) {
+        return bookingRepository.findById(id)
+                .switchIfEmpty(Mono.defer(() -> {
+                    LOGGER.error("Booking with ID {} does not exist", id);
+                    return Mono.error(new ServiceException(Error.BOOKING_NOT_FOUND, new Object[]{id}));
+                }));
+    }
+
+    private Mono<Void> validateDateRange(String site, LocalDate from, LocalDate to, UUID excludedId) {
+        return bookingRepository.countBySiteAndFromDateBetweenAndToDateGreaterThan(site,
+                        from.minusDays(maxDateRangeSize), to.minusDays(1), from, excludedId)
+                .flatMap(count -> {
+                    if (count > 0) {
+                        LOGGER.error("Date range is being used partially or totally for other booking(s): from {} - to {}",
+                                from, to);
+                        return Mono.error(new ServiceException(Error.DATE_RANGE_IS_BEING_USED, new Object[]{from, to}));
+                    }
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> validatePerson(String email) {
+        return bookingRepository.existsPerson(email)
+                .flatMap(exists -> {
+                    if (exists) {
+                        LOGGER.error("There is already a person with email {}", email);
+                        return Mono.error(new ServiceException(Error.PERSON_HAS_BOOKING, new Object[]{email}));
+                    }
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Reservations for different nights do not share locks, so the same person could be booking twice at once. The
+     * primary key of the person rejects the second one
+     */
+    private Mono<Void> insertPerson(Person person) {
+        return bookingRepository.insertPerson(person)
+                .onErrorMap(DataIntegrityViolationException.class, e -> {
+                    LOGGER.error("There is already a person with email {}", person.getEmail());
+                    return new ServiceException(Error.PERSON_HAS_BOOKING, new Object[]{person.getEmail()});
+                });
+    }
+
+    /**
+     * The broadcaster blocks on Redis (to get the sequence and publish the change), so it is run out of the event loop
+     */
+    private static Mono<Void> broadcast(Runnable change) {
+        return Mono.fromRunnable(change)
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    /**
+     * Marks the nights as taken in the shared calendar while they are still locked and before the commit, as the
+     * blocking mode does. The flag is set once they are marked, so they are released if the transaction fails
+     */
+    private Mono<Void> occupyCalendar(String site, LocalDate from, LocalDate to, AtomicBoolean occupied) {
+        if (!redisCalendarEnabled) {
+            return Mono.empty();
+        }
+        return Mono.fromRunnable(() -> {
+                    occupancyCalendar.occupy(site, from, to);
+                    occupied.set(true);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    /**
+     * Marks the nights as free in the shared calendar, except the kept ones. If it fails they are shown as taken until
+     * the calendar is rebuilt, but never booked twice
+     */
+    private Mono<Void> releaseCalendar(String site, LocalDate from, LocalDate to, LocalDate keptFrom,
+                                       LocalDate keptTo) {
+        if (!redisCalendarEnabled) {
+            return Mono.empty();
+        }
+        return Mono.fromRunnable(() -> occupancyCalendar.release(site, from, to, keptFrom, keptTo))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    LOGGER.error("The occupancy calendar could not be updated, it must be rebuilt to show the nights "
+                            + "as free", e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * Releases the nights marked before a transaction which failed, except the kept ones, and fails with its error
+     */
+    private <T> Mono<T> rollbackCalendar(Throwable error, AtomicBoolean occupied, String site, LocalDate from,
+                                         LocalDate to, LocalDate keptFrom, LocalDate keptTo) {
+        Mono<Void> release = occupied.get() ? releaseCalendar(site, from, to, keptFrom, keptTo) : Mono.empty();
+        return release.then(Mono.error(error));
+    }
+
+    private static void validateDatesForUpdate(Booking booking, BookingUpdateVo vo) {
+        if (vo.getFrom() == null) {
+            vo.setFrom(booking.getFromDate());
+        }
+        if (vo.getTo() == null) {
+            vo.setTo(booking.getToDate());
+        }
+        if (!vo.isValidDateFrom()) {
+            throw new ServiceException(Error.BOOKING_NOTVALID_DATE_FROM, new Object[]{vo.getFrom()});
+        }
+        if (!vo.isValidDateRange()) {
+            throw new ServiceException(Error.BOOKING_NOTVALID_DATE_RANGE, new Object[]{vo.getFrom(), vo.getTo()});
+        }
+        if (!vo.isLessThanMaxRange()) {
+            throw new ServiceException(Error.BOOKING_MAX_DATE_RANGE, new Object[]{vo.getFrom(), vo.getTo()});
+        }
+    }
+
+    public Mono<String> reserve(BookingReserveVo vo) {
+        return Mono.fromSupplier(() -> siteCatalog.resolve(vo.getSite())).flatMap(site -> {
+            LOGGER.debug("Creating a new booking for email {}, site {} and date range {} - {}", vo.getPersonEmail(),
+                    site, vo.getFrom(), vo.getTo());
+
+            Booking booking = new Booking(site,
+                    new Person(vo.getPersonEmail(), vo.getPersonFirstName(), vo.getPersonLastName()),
+                    vo.getFrom(), vo.getTo());
+            booking.setId(newId());
+
+            AtomicBoolean occupied = new AtomicBoolean();
+            Mono<String> work = validateDateRange(site, vo.getFrom(), vo.getTo(), null)
+                    .then(validatePerson(vo.getPersonEmail()))
+                    .then(insertPerson(booking.getPerson()))
+                    .then(bookingRepository.insertBooking(booking))
+                    .then(occupyCalendar(site, vo.getFrom(), vo.getTo(), occupied))
+                    .as(transactionalOperator::transactional)
+                    .onErrorResume(e -> rollbackCalendar(e, occupied, site, vo.getFrom(), vo.getTo(), null, null))
+                    .then(broadcast(() -> availabilityChangeBroadcaster.nightsTaken(site, vo.getFrom(), vo.getTo())))
+                    .thenReturn(booking.getId().toString())
+                    .doOnNext(id -> LOGGER.info("Booking with ID {} was successfully created", id));
+
+            return withLocks(Operation.RESERVE, sorted(getNightLockKeys(site, vo.getFrom(), vo.getTo())), work);
+        });
+    }
+
+    public Mono<Boolean> update(String id, BookingUpdateVo vo) {
+        LOGGER.debug("Updating booking with ID {}", id);
+
+        //The booking itself is locked first, so its current nights cannot change until the work is done
+        return parseId(id).flatMap(bookingId -> withLocks(Operation.UPDATE,
+                List.of(BookingService.getBookingLockKey(bookingId)), getExistingBooking(bookingId).flatMap(booking -> {
+                    validateDatesForUpdate(booking, vo);
+
+                    final String previousSite = booking.getSite();
+                    final String site = vo.getSite() == null ? previousSite : siteCatalog.resolve(vo.getSite());
+                    final LocalDate previousFrom = booking.getFromDate();
+                    final LocalDate previousTo = booking.getToDate();
+                    if (vo.getPersonFirstName() != null) {
+                        booking.getPerson().setFirstName(vo.getPersonFirstName());
+                    }
+                    if (vo.getPersonLastName() != null) {
+                        booking.getPerson().setLastName(vo.getPersonLastName());
+                    }
+                    booking.setSite(site);
+                    booking.setFromDate(vo.getFrom());
+                    booking.setToDate(vo.getTo());
+
+                    //The nights of the booking itself are kept, unless it is moved to another site
+                    final boolean sameSite = site.equals(previousSite);
+                    final LocalDate keptFrom = sameSite ? previousFrom : null;
+                    final LocalDate keptTo = sameSite ? previousTo : null;
+                    AtomicBoolean occupied = new AtomicBoolean();
+                    Mono<Boolean> work = validateDateRange(site, vo.getFrom(), vo.getTo(), bookingId)
+                            .then(bookingRepository.update(booking))
+                            .then(occupyCalendar(site, vo.getFrom(), vo.getTo(), occupied))
+                            .as(transactionalOperator::transactional)
+                            .onErrorResume(e -> rollbackCalendar(e, occupied, site, vo.getFrom(), vo.getTo(),
+                                    keptFrom, keptTo))
+                            .then(sameSite
+                                    ? releaseCalendar(site, previousFrom, previousTo, vo.getFrom(), vo.getTo())
+                                    : releaseCalendar(previousSite, previousFrom, previousTo, null, null))
+                            .then(broadcast(() -> {
+                                if (sameSite) {
+                                    availabilityChangeBroadcaster.nightsMoved(site, previousFrom, previousTo,
+                                            vo.getFrom(), vo.getTo());
+                                } else {
+                                    availabilityChangeBroadcaster.nightsReleased(previousSite, previousFrom,
+                                            previousTo);
+                                    availabilityChangeBroadcaster.nightsTaken(site, vo.getFrom(), vo.getTo());
+                                }
+                            }))
+                            .thenReturn(true)
+                            .doOnNext(updated -> LOGGER.info("Booking with ID {} was successfully updated", id));
+
+                    //Both the current and the new nights are locked
+                    return withLocks(Operation.UPDATE, sorted(Stream.concat(
+                            getNightLockKeys(previousSite, previousFrom, previousTo),
+                            getNightLockKeys(site, vo.getFrom(), vo.getTo()))), work);
+                })));
+    }
+
+    public Mono<Void> delete(String id) {
+        LOGGER.debug("Deleting booking with ID {}", id);
+
+        //Avoids deleting a booking which is being updated
+        return parseId(id).flatMap(bookingId -> withLocks(Operation.DELETE,
+                List.of(BookingService.getBookingLockKey(bookingId)), getExistingBooking(bookingId)
+                        .flatMap(booking -> bookingRepository.delete(booking)
+                                .as(transactionalOperator::transactional)
+                                .then(releaseCalendar(booking.getSite(), booking.getFromDate(), booking.getToDate(),
+                                        null, null))
+                                .then(broadcast(() -> availabilityChangeBroadcaster.nightsReleased(
+                                        booking.getSite(), booking.getFromDate(), booking.getToDate()))))));
+    }
+
+    public Mono<List<LocalDate>> getAvailableDays(String site, LocalDate from, LocalDate to) {
+        LOGGER.debug("Getting available dates of site {} for range {} - {}", site, from, to);
+        return Mono.fromSupplier(() -> {
+            String resolvedSite = siteCatalog.resolve(site);
+            return availabilityCache.get(resolvedSite, from, to,
+                    () -> occupancyIndex.getFreeNights(resolvedSite, from, to));
+        });
+    }
+
+    /**
+     * @return the ETag of the availability, empty if it has to be computed from the availability itself
+     * @see BookingService#getAvailabilityETag(String, LocalDate, LocalDate, String)
+     */
+    public Mono<Optional<String>> getAvailabilityETag(String site, LocalDate from, LocalDate to,
+                                                      String representation) {
+        return Mono.fromSupplier(() -> {
+            String version = availabilityChangeBroadcaster.getAvailabilityVersion();
+            return Optional.ofNullable(version == null
+                    ? null
+                    : BookingService.getAvailabilityETag(siteCatalog.resolve(site), from, to, representation,
+                            version));
+        });
+    }
+
+    public Mono<List<DateIntervalVo>> getAvailableIntervals(String site, LocalDate from, LocalDate to) {
+        LOGGER.debug("Getting available intervals of site {} for range {} - {}", site, from, to);
+        return Mono.fromSupplier(() -> occupancyIndex.getFreeIntervals(siteCatalog.resolve(site), from, to));
+    }
+
+    /**
+     * Nights are looked up as they are requested, so the memory used does not depend on the size of the range
+     */
+    public Flux<LocalDate> streamAvailableDays(String site, LocalDate from, LocalDate to) {
+        LOGGER.debug("Streaming available dates of site {} for range {} - {}", site, from, to);
+        return Mono.fromSupplier(() -> siteCatalog.resolve(site))
+                .flatMapMany(resolvedSite -> Flux.fromStream(() -> Stream.iterate(
+                        occupancyIndex.getNextFreeNight(resolvedSite, from, to),
+                        Objects::nonNull,
+                        night -> occupancyIndex.getNextFreeNight(resolvedSite, night.plusDays(1), to))));
+    }
+}
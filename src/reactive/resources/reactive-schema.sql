@@ -0,0 +1,18 @@
+create table if not exists person (
+    email varchar(255) not null,
+    first_name varchar(255),
+    last_name varchar(255),
+    primary key (email)
+);
+
+create table if not exists booking (
+    id binary(16) not null,
+    site varchar(32) not null,
+    from_date date not null,
+    to_date date not null,
+    person_email varchar(255),
+    primary key (id),
+    constraint uk_booking_site_from_date unique (site, from_date),
+    constraint uk_booking_site_to_date unique (site, to_date),
+    constraint fk_booking_person foreign key (person_email) references person (email)
+);
@@ -0,0 +1,113 @@
+package com.upgrade.islandbooking.benchmark;
+
+import com.upgrade.islandbooking.domain.entity.BookingIdGenerator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the insert and primary key lookup throughput of the booking ID strategies on a file based H2 database.
+ * It takes a few minutes, so it only runs on demand:
+ * <pre>mvn test -Dtest=BookingIdBenchmark -Dbenchmark=true [-Dbenchmark.rows=2000000]</pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class BookingIdBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookingIdBenchmark.class);
+
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 2_000_000);
+    private static final int LOOKUPS = 200_000;
+    private static final int BATCH_SIZE = 1_000;
+    private static final LocalDate FROM = LocalDate.now();
+
+    @DisplayName("Benchmark booking ID strategies")
+    @Test
+    public void benchmark() throws SQLException {
+        run("string uuid v4 (previous)", "varchar(36)", () -> UUID.randomUUID().toString());
+        run("binary uuid v4 (random)", "binary(16)", () -> toBytes(UUID.randomUUID()));
+        run("binary uuid v7 (time-ordered)", "binary(16)", () -> toBytes(BookingIdGenerator.timeOrderedUuid()));
+    }
+
+    private void run(String name, String idType, Supplier<Object> idSupplier) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(
+                "jdbc:h2:file:./target/benchmark/booking-ids;DB_CLOSE_ON_EXIT=FALSE", "sa", "")) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("drop table if exists booking");
+                statement.execute("create table booking (id " + idType + " not null, from_date date not null, "
+                        + "to_date date not null, person_email varchar(255), primary key (id))");
+            }
+            connection.commit();
+
+            //Keeps a random sample of the inserted IDs to look them up later
+            Object[] sample = new Object[LOOKUPS];
+            Random random = new Random(1);
+
+            long start = System.nanoTime();
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "insert into booking (id, from_date, to_date, person_email) values (?, ?, ?, ?)")) {
+                for (int i = 0; i < ROWS; i++) {
+                    Object id = idSupplier.get();
+                    if (i < LOOKUPS) {
+                        sample[i] = id;
+                    } else if (random.nextInt(i) < LOOKUPS) {
+                        sample[random.nextInt(LOOKUPS)] = id;
+                    }
+
+                    insert.setObject(1, id);
+                    insert.setObject(2, FROM.plusDays(i));
+                    insert.setObject(3, FROM.plusDays(i + 1L));
+                    insert.setString(4, "person" + i + "@foo.com");
+                    insert.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                        connection.commit();
+                    }
+                }
+                insert.executeBatch();
+                connection.commit();
+            }
+            long insertNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int found = 0;
+            try (PreparedStatement select = connection.prepareStatement("select to_date from booking where id = ?")) {
+                for (Object id : sample) {
+                    select.setObject(1, id);
+                    try (ResultSet resultSet = select.executeQuery()) {
+                        found += resultSet.next() ? 1 : 0;
+                    }
+                }
+            }
+            long lookupNanos = System.nanoTime() - start;
+
+            LOGGER.info("{}: {} inserts/s, {} lookups/s ({} rows)", name,
+                    Math.round(ROWS / (insertNanos / 1_000_000_000d)),
+                    Math.round(LOOKUPS / (lookupNanos / 1_000_000_000d)), ROWS);
+            assertTrue(found == LOOKUPS);
+        }
+    }
+
+    private static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+}
@@ -0,0 +1,371 @@
+package com.upgrade.islandbooking.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upgrade.islandbooking.IslandBookingApplication;
+import com.upgrade.islandbooking.domain.entity.Booking;
+import com.upgrade.islandbooking.domain.repository.BookingRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Starts several instances of the application in this JVM, sharing an embedded Redis and a file based H2 database,
+ * and sends them a mix of reserve, update, delete and availability requests from many threads. It reports the
+ * throughput and the latency percentiles of each endpoint, and the number of requests that timed out waiting for
+ * the locks or were rejected because the dates were taken. It takes a while, so it only runs on demand:
+ * <pre>mvn test -Dtest=BookingLoadBenchmark -Dbenchmark=true [-Dload.instances=3] [-Dload.threads=32]
+ *     [-Dload.seconds=30] [-Dload.mix=40,20,10,30]</pre>
+ * The mix is the weight of reserve, update, delete and availability requests, in that order.
+ * The site scaling test runs the same load spread over more and more sites, each round on its own date window:
+ * <pre>mvn test -Dtest=BookingLoadBenchmark#siteScaling -Dbenchmark=true [-Dload.siteCounts=1,2,4,8]</pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class BookingLoadBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookingLoadBenchmark.class);
+
+    private static final int INSTANCES = Integer.getInteger("load.instances", 3);
+    private static final int THREADS = Integer.getInteger("load.threads", 32);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmupSeconds", 5);
+    private static final int SECONDS = Integer.getInteger("load.seconds", 30);
+    private static final int WINDOW_DAYS = Integer.getInteger("load.windowDays", 90);
+    private static final int REQUEST_TIMEOUT_MS = Integer.getInteger("load.requestTimeoutMs", 5000);
+    private static final int[] MIX = parseMix(System.getProperty("load.mix", "40,20,10,30"));
+    private static final int[] SITE_COUNTS = Arrays.stream(System.getProperty("load.siteCounts", "1,2,4,8").split(","))
+            .mapToInt(count -> Integer.parseInt(count.trim()))
+            .toArray();
+    private static final List<String> SITES = IntStream.rangeClosed(1, Arrays.stream(SITE_COUNTS).max().orElse(1))
+            .mapToObj(site -> "site-" + site)
+            .collect(Collectors.toList());
+
+    private static final int REDIS_PORT = 6393;
+    private static final Path DATABASE_DIR = Paths.get("target", "load");
+    private static final String DATE_RANGE_IS_BEING_USED_CODE = "101";
+
+    private enum Operation { RESERVE, UPDATE, DELETE, AVAILABILITY }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private RedisServer redisServer;
+    private final List<ConfigurableApplicationContext> instances = new ArrayList<>();
+    private final List<String> baseUrls = new ArrayList<>();
+
+    @AfterEach
+    public void stopInstances() {
+        instances.forEach(ConfigurableApplicationContext::close);
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    @DisplayName("Load test several instances competing for the same dates")
+    @Test
+    public void benchmark() throws Exception {
+        startInstances();
+
+        final Stats total = run("load", SITES.subList(0, 1), LocalDate.now().plusDays(1));
+
+        report(total);
+
+        assertTrue(total.requests() > 0);
+        assertNoOverlaps();
+    }
+
+    /**
+     * Same load for every round, only the number of sites it is spread over changes. Requests for different sites
+     * share no locks, so the throughput should grow with the sites until the database or the CPU is the bottleneck.
+     */
+    @DisplayName("Load test the throughput scaling with the number of sites")
+    @Test
+    public void siteScaling() throws Exception {
+        startInstances();
+
+        final List<String> summary = new ArrayList<>();
+        for (int round = 0; round < SITE_COUNTS.length; round++) {
+            final int siteCount = SITE_COUNTS[round];
+            //Every round books its own dates, so it does not compete with the bookings left by the previous ones
+            final LocalDate windowStart = LocalDate.now().plusDays(1 + round * (WINDOW_DAYS + 3L));
+            final Stats stats = run("sites" + siteCount, SITES.subList(0, siteCount), windowStart);
+            report(stats);
+            summary.add(String.format("%d site(s): %.1f ops/s - %s", siteCount,
+                    stats.requests() / (double) SECONDS, stats.outcomes));
+            assertTrue(stats.requests() > 0);
+        }
+        for (String line : summary) {
+            LOGGER.info(line);
+        }
+
+        assertNoOverlaps();
+    }
+
+    /**
+     * Drives the load from every thread until the end of the measurement
+     */
+    private Stats run(String emailPrefix, List<String> sites, LocalDate windowStart) throws Exception {
+        final long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+        final long measureTo = measureFrom + TimeUnit.SECONDS.toNanos(SECONDS);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<Stats>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int worker = t;
+            futures.add(executor.submit(() -> drive(worker, emailPrefix, sites, windowStart, measureFrom, measureTo)));
+        }
+        final Stats total = new Stats();
+        for (Future<Stats> future : futures) {
+            total.add(future.get());
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        return total;
+    }
+
+    private void startInstances() throws IOException {
+        redisServer = new RedisServer(REDIS_PORT);
+        redisServer.start();
+
+        //Starts from an empty database every time
+        if (Files.exists(DATABASE_DIR)) {
+            try (Stream<Path> files = Files.walk(DATABASE_DIR)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        for (int i = 0; i < INSTANCES; i++) {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(IslandBookingApplication.class)
+                    .run("--server.port=0",
+                            "--spring.redis.port=" + REDIS_PORT,
+                            "--spring.datasource.url=jdbc:h2:file:./" + DATABASE_DIR + "/booking",
+                            "--sites=" + String.join(",", SITES),
+                            "--spring.jpa.show-sql=false",
+                            "--logging.level.com.upgrade.islandbooking.controller=WARN",
+                            "--logging.level.com.upgrade.islandbooking.service=WARN",
+                            "--logging.level.org.hibernate=WARN");
+            instances.add(context);
+            baseUrls.add("http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                    + context.getEnvironment().getProperty("server.servlet.context-path") + "/booking");
+        }
+        LOGGER.info("Started {} instances: {}", INSTANCES, baseUrls);
+    }
+
+    /**
+     * Sends requests for random sites to random instances until the end of the measurement, only recording the ones
+     * started after the warmup
+     */
+    private Stats drive(int worker, String emailPrefix, List<String> sites, LocalDate windowStart, long measureFrom,
+                        long measureTo) {
+        final Random random = new Random(worker);
+        final Stats stats = new Stats();
+        //Bookings created by this worker, the ones it updates and deletes. They stay in their site
+        final List<String> bookingIds = new ArrayList<>();
+        int emails = 0;
+
+        long start;
+        while ((start = System.nanoTime()) < measureTo) {
+            Operation operation = nextOperation(random);
+            if (bookingIds.isEmpty() && (operation == Operation.UPDATE || operation == Operation.DELETE)) {
+                operation = Operation.RESERVE;
+            }
+
+            final String baseUrl = baseUrls.get(random.nextInt(baseUrls.size()));
+            final String site = sites.get(random.nextInt(sites.size()));
+            final LocalDate from = windowStart.plusDays(random.nextInt(WINDOW_DAYS));
+            final String dates = "\"from\":\"" + from + "\",\"to\":\"" + from.plusDays(1 + random.nextInt(3)) + "\"";
+            final HttpRequest.Builder request = HttpRequest.newBuilder()
+                    .timeout(Duration.ofMillis(REQUEST_TIMEOUT_MS))
+                    .header("Content-Type", "application/json");
+            String bookingId = null;
+            switch (operation) {
+                case RESERVE:
+                    request.uri(URI.create(baseUrl)).POST(HttpRequest.BodyPublishers.ofString(
+                            "{\"personEmail\":\"" + emailPrefix + worker + "-" + emails++ + "@foo.com\","
+                                    + "\"personFirstName\":\"First\",\"personLastName\":\"Last\",\"site\":\"" + site
+                                    + "\"," + dates + "}"));
+                    break;
+                case UPDATE:
+                    bookingId = bookingIds.get(random.nextInt(bookingIds.size()));
+                    request.uri(URI.create(baseUrl + "/" + bookingId))
+                            .PUT(HttpRequest.BodyPublishers.ofString("{" + dates + "}"));
+                    break;
+                case DELETE:
+                    bookingId = bookingIds.remove(random.nextInt(bookingIds.size()));
+                    request.uri(URI.create(baseUrl + "/" + bookingId)).DELETE();
+                    break;
+                default:
+                    request.uri(URI.create(baseUrl + "?from=" + windowStart + "&to=" + windowStart.plusDays(WINDOW_DAYS)
+                                    + "&site=" + site))
+                            .GET();
+            }
+
+            Outcome outcome;
+            try {
+                HttpResponse<String> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+                outcome = toOutcome(response);
+                if (operation == Operation.RESERVE && outcome == Outcome.OK) {
+                    bookingIds.add(objectMapper.readTree(response.body()).get("bookingId").asText());
+                }
+            } catch (HttpTimeoutException e) {
+                //Requests only wait this long when they are queued behind the locks
+                outcome = Outcome.LOCK_TIMEOUT;
+            } catch (IOException e) {
+                outcome = Outcome.ERROR;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            if (start >= measureFrom) {
+                stats.record(operation, outcome, System.nanoTime() - start);
+            }
+        }
+        return stats;
+    }
+
+    private Outcome toOutcome(HttpResponse<String> response) throws IOException {
+        if (response.statusCode() == 200) {
+            return Outcome.OK;
+        }
+        //The server gave up waiting for the locks
+        if (response.statusCode() == 429 || response.statusCode() == 503) {
+            return Outcome.LOCK_TIMEOUT;
+        }
+        JsonNode body = objectMapper.readTree(response.body());
+        if (body.has("internalErrorCode")
+                && DATE_RANGE_IS_BEING_USED_CODE.equals(body.get("internalErrorCode").asText().trim())) {
+            return Outcome.DATE_RANGE_IS_BEING_USED;
+        }
+        return response.statusCode() < 500 ? Outcome.REJECTED : Outcome.ERROR;
+    }
+
+    private static Operation nextOperation(Random random) {
+        int weight = random.nextInt(MIX[MIX.length - 1]);
+        for (int i = 0; i < MIX.length; i++) {
+            if (weight < MIX[i]) {
+                return Operation.values()[i];
+            }
+        }
+        return Operation.AVAILABILITY;
+    }
+
+    /**
+     * @return the cumulative weights of the operations
+     */
+    private static int[] parseMix(String mix) {
+        String[] weights = mix.split(",");
+        if (weights.length != Operation.values().length) {
+            throw new IllegalArgumentException("The load mix must have " + Operation.values().length + " weights: "
+                    + mix);
+        }
+        int[] cumulative = new int[weights.length];
+        int sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += Integer.parseInt(weights[i].trim());
+            cumulative[i] = sum;
+        }
+        return cumulative;
+    }
+
+    private void report(Stats stats) {
+        LOGGER.info("{} instances, {} threads, {} s (mix {})", INSTANCES, THREADS, SECONDS,
+                System.getProperty("load.mix", "40,20,10,30"));
+        LOGGER.info(String.format("%-13s %8s %9s %9s %9s %9s %9s", "endpoint", "requests", "ops/s",
+                "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        for (Operation operation : Operation.values()) {
+            List<Long> latencies = stats.latencies.getOrDefault(operation, Collections.emptyList());
+            Collections.sort(latencies);
+            LOGGER.info(String.format("%-13s %8d %9.1f %9.2f %9.2f %9.2f %9.2f", operation.name().toLowerCase(),
+                    latencies.size(), latencies.size() / (double) SECONDS, percentile(latencies, 50),
+                    percentile(latencies, 95), percentile(latencies, 99), percentile(latencies, 100)));
+        }
+        LOGGER.info("Total {} ops/s - {}", String.format("%.1f", stats.requests() / (double) SECONDS), stats.outcomes);
+    }
+
+    private static double percentile(List<Long> sortedLatencies, int percentile) {
+        if (sortedLatencies.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100d * sortedLatencies.size()) - 1;
+        return sortedLatencies.get(Math.max(0, index)) / 1_000_000d;
+    }
+
+    private void assertNoOverlaps() {
+        final List<Booking> bookings = instances.get(0).getBean(BookingRepository.class).findAll()
+                .stream()
+                .sorted(Comparator.comparing(Booking::getSite).thenComparing(Booking::getFromDate))
+                .collect(Collectors.toList());
+
+        for (int i = 1; i < bookings.size(); i++) {
+            final Booking previous = bookings.get(i - 1);
+            final Booking current = bookings.get(i);
+            assertTrue(!previous.getSite().equals(current.getSite())
+                            || !previous.getToDate().isAfter(current.getFromDate()),
+                    "Booking " + previous.getId() + " overlaps booking " + current.getId());
+        }
+        LOGGER.info("{} bookings left without overlaps", bookings.size());
+    }
+
+    private enum Outcome { OK, DATE_RANGE_IS_BEING_USED, LOCK_TIMEOUT, REJECTED, ERROR }
+
+    /**
+     * Latencies in nanoseconds per operation and number of requests per outcome, gathered by a single worker
+     */
+    private static final class Stats {
+        private final Map<Operation, List<Long>> latencies = new EnumMap<>(Operation.class);
+        private final Map<Outcome, Integer> outcomes = new EnumMap<>(Outcome.class);
+
+        private void record(Operation operation, Outcome outcome, long nanos) {
+            latencies.computeIfAbsent(operation, o -> new ArrayList<>()).add(nanos);
+            outcomes.merge(outcome, 1, Integer::sum);
+        }
+
+        private void add(Stats other) {
+            other.latencies.forEach((o, l) -> latencies.computeIfAbsent(o, k -> new ArrayList<>()).addAll(l));
+            other.outcomes.forEach((o, c) -> outcomes.merge(o, c, Integer::sum));
+        }
+
+        private long requests() {
+            return outcomes.values().stream().mapToLong(Integer::longValue).sum();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.upgrade.islandbooking.benchmark;
+
+import com.upgrade.islandbooking.IslandBookingApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the startup of the default profile with the fastStart one. Every round starts a new JVM per profile
+ * against the same file based H2 database and embedded Redis, and measures the time until it is ready
+ * (/actuator/health/readiness) and the time of its first availability request. The database is seeded once with
+ * bookings, and the occupancy snapshot is the one written by the seeding node or the previous fastStart node when it
+ * stopped. It takes a while, so
+ * it only runs on demand:
+ * <pre>mvn test -Dtest=StartupBenchmark -Dbenchmark=true [-Dstartup.rounds=5] [-Dstartup.bookings=5000]</pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class StartupBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupBenchmark.class);
+
+    private static final int ROUNDS = Integer.getInteger("startup.rounds", 5);
+    private static final int BOOKINGS = Integer.getInteger("startup.bookings", 5000);
+    private static final int START_TIMEOUT_SECONDS = Integer.getInteger("startup.timeoutSeconds", 120);
+
+    private static final int REDIS_PORT = 6394;
+    private static final Path DATABASE_DIR = Paths.get("target", "startup");
+    private static final String DEFAULT_PROFILE = "default";
+    private static final String FAST_START_PROFILE = "fastStart";
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private RedisServer redisServer;
+    private Process node;
+
+    @AfterEach
+    public void stop() throws InterruptedException {
+        stopNode();
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    @DisplayName("Startup time of the default profile compared with the fastStart one")
+    @Test
+    public void benchmark() throws Exception {
+        redisServer = new RedisServer(REDIS_PORT);
+        redisServer.start();
+        seed();
+
+        final Map<String, List<Long>> readiness = new LinkedHashMap<>();
+        final Map<String, List<Long>> firstRequest = new LinkedHashMap<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String profile : List.of(DEFAULT_PROFILE, FAST_START_PROFILE)) {
+                final long start = System.nanoTime();
+                final String baseUrl = startNode(profile, profile + "-" + round);
+                readiness.computeIfAbsent(profile, p -> new ArrayList<>()).add(elapsedMillis(start));
+
+                final long requestStart = System.nanoTime();
+                final HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(baseUrl
+                        + "/booking?from=" + LocalDate.now().plusDays(1) + "&to=" + LocalDate.now().plusDays(91)))
+                        .GET()
+                        .build());
+                firstRequest.computeIfAbsent(profile, p -> new ArrayList<>()).add(elapsedMillis(requestStart));
+                assertEquals(200, response.statusCode());
+                stopNode();
+            }
+        }
+
+        for (String profile : readiness.keySet()) {
+            LOGGER.info("{}: ready in {} ms (median), {} ms (min) - first availability request {} ms (median), "
+                            + "{} ms (min)", profile, median(readiness.get(profile)),
+                    Collections.min(readiness.get(profile)), median(firstRequest.get(profile)),
+                    Collections.min(firstRequest.get(profile)));
+        }
+        assertEquals(ROUNDS, readiness.get(FAST_START_PROFILE).size());
+    }
+
+    /**
+     * Creates the schema and the bookings with a node of the default profile, with the occupancy snapshot enabled so
+     * it writes it when it stops
+     */
+    private void seed() throws Exception {
+        if (Files.exists(DATABASE_DIR)) {
+            try (Stream<Path> files = Files.walk(DATABASE_DIR)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(file);
+                }
+            }
+        }
+        Files.createDirectories(DATABASE_DIR);
+
+        final String baseUrl = startNode(DEFAULT_PROFILE, "seed", "--availability.snapshot.enabled=true");
+        final StringBuilder bookings = new StringBuilder();
+        for (int i = 0; i < BOOKINGS; i++) {
+            final LocalDate from = LocalDate.now().plusDays(1 + i * 3L);
+            bookings.append("{\"personEmail\":\"startup").append(i).append("@foo.com\",")
+                    .append("\"personFirstName\":\"Javier\",\"personLastName\":\"Digruttola\",")
+                    .append("\"from\":\"").append(from).append("\",\"to\":\"").append(from.plusDays(2))
+                    .append("\"}\n");
+        }
+        final HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(baseUrl + "/admin/bookings"))
+                .header("Content-Type", "application/x-ndjson")
+                .timeout(Duration.ofMinutes(5))
+                .POST(HttpRequest.BodyPublishers.ofString(bookings.toString()))
+                .build());
+        assertEquals(200, response.statusCode());
+        LOGGER.info("Seeded: {}", response.body());
+        stopNode();
+    }
+
+    /**
+     * Starts the application in a new JVM, so nothing is warm from the previous nodes
+     * @param arguments application arguments added to the common ones
+     * @return its base URL once it is ready
+     */
+    private String startNode(String profile, String name, String... arguments) throws Exception {
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        final List<String> command = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                IslandBookingApplication.class.getName(),
+                "--spring.profiles.active=" + profile,
+                "--server.port=" + port,
+                "--spring.redis.port=" + REDIS_PORT,
+                "--spring.datasource.url=jdbc:h2:file:./" + DATABASE_DIR + "/booking",
+                "--availability.snapshot.file=" + DATABASE_DIR.resolve("occupancy.snapshot"),
+                "--logging.level.com.upgrade.islandbooking.controller=WARN"));
+        command.addAll(List.of(arguments));
+        node = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(DATABASE_DIR.resolve(name + ".log").toFile())
+                .start();
+
+        final String baseUrl = "http://localhost:" + port + "/island-booking";
+        final HttpRequest readiness = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/health/readiness"))
+                .timeout(Duration.ofSeconds(1))
+                .GET()
+                .build();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(START_TIMEOUT_SECONDS);
+        while (System.nanoTime() < deadline) {
+            assertTrue(node.isAlive(), "The node " + name + " stopped, see " + DATABASE_DIR + "/" + name + ".log");
+            try {
+                if (send(readiness).statusCode() == 200) {
+                    return baseUrl;
+                }
+            } catch (IOException e) {
+                //Not listening yet
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("The node " + name + " was not ready after " + START_TIMEOUT_SECONDS + " s");
+    }
+
+    /**
+     * Stops the node gracefully, so it writes the occupancy snapshot
+     */
+    private void stopNode() throws InterruptedException {
+        if (node != null) {
+            node.destroy();
+            if (!node.waitFor(30, TimeUnit.SECONDS)) {
+                node.destroyForcibly();
+            }
+            node = null;
+        }
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static long median(List<Long> values) {
+        final List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+}
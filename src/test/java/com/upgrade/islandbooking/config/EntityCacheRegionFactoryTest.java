@@ -0,0 +1,150 @@
+package com.upgrade.islandbooking.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import redis.embedded.RedisServer;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EntityCacheRegionFactoryTest {
+
+    private static final String REGION = "com.upgrade.islandbooking.domain.entity.Booking";
+
+    private RedisServer redisServer;
+    private RedissonClient redissonClient;
+    private MeterRegistry meterRegistry;
+
+    //Two nodes sharing Redis
+    private EntityCacheRegionFactory node1;
+    private EntityCacheRegionFactory node2;
+
+    @BeforeEach
+    public void setUp() {
+        redisServer = new RedisServer(6379);
+        redisServer.start();
+        redissonClient = Redisson.create();
+        meterRegistry = new SimpleMeterRegistry();
+        node1 = new EntityCacheRegionFactory(redissonClient, 100, 60000, meterRegistry);
+        node2 = new EntityCacheRegionFactory(redissonClient, 100, 60000, new SimpleMeterRegistry());
+        node1.start(null, Map.of());
+        node2.start(null, Map.of());
+    }
+
+    @AfterEach
+    public void afterTest() {
+        node1.stop();
+        node2.stop();
+        redissonClient.shutdown();
+        redisServer.stop();
+    }
+
+    private static EntityCacheStorage createStorage(EntityCacheRegionFactory factory) {
+        final DomainDataRegionConfig regionConfig = mock(DomainDataRegionConfig.class);
+        when(regionConfig.getRegionName()).thenReturn(REGION);
+        return (EntityCacheStorage) factory.createDomainDataStorageAccess(regionConfig, null);
+    }
+
+    @DisplayName("Test entities changed by a node are evicted from the others once the transaction is committed")
+    @Test
+    public void invalidate() throws InterruptedException {
+        //Given
+        final EntityCacheStorage storage1 = createStorage(node1);
+        final EntityCacheStorage storage2 = createStorage(node2);
+        final UUID changed = UUID.randomUUID();
+        final UUID kept = UUID.randomUUID();
+        storage1.putIntoCache(changed, "changed", null);
+        storage2.putIntoCache(changed, "changed", null);
+        storage2.putIntoCache(kept, "kept", null);
+
+        //When
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            node1.invalidate(REGION, changed);
+            Thread.sleep(200);
+            assertTrue(storage2.contains(changed));
+            TransactionSynchronizationUtils.triggerAfterCommit();
+        } finally {
+            TransactionSynchronizationUtils.triggerAfterCompletion(0);
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        //Then
+        await(() -> !storage2.contains(changed));
+        assertTrue(storage2.contains(kept));
+        assertTrue(storage1.contains(changed));
+        assertEquals(1, storage2.getInvalidations());
+
+        //Without a transaction it is sent right away, and null stands for the whole region
+        node1.invalidate(REGION, null);
+        await(() -> storage2.size() == 0);
+        assertEquals(0, storage1.getInvalidations());
+    }
+
+    @DisplayName("Test the storage is bounded and its entries expire")
+    @Test
+    public void storage() throws InterruptedException {
+        //Given
+        final EntityCacheStorage storage = new EntityCacheStorage(2, 200);
+
+        //When
+        storage.putIntoCache("a", 1, null);
+        storage.putIntoCache("b", 2, null);
+        assertEquals(1, storage.getFromCache("a", null));
+        storage.putIntoCache("c", 3, null);
+
+        //Then
+        assertNull(storage.getFromCache("b", null));
+        assertEquals(3, storage.getFromCache("c", null));
+        Thread.sleep(300);
+        assertNull(storage.getFromCache("a", null));
+        assertFalse(storage.contains("a"));
+        assertEquals(2, storage.getHits());
+        assertEquals(2, storage.getMisses());
+        assertEquals(2, storage.getEvictions());
+    }
+
+    @DisplayName("Test the cache metrics of each region")
+    @Test
+    public void metrics() {
+        //Given
+        final EntityCacheStorage storage = createStorage(node1);
+        final UUID id = UUID.randomUUID();
+
+        //When
+        storage.getFromCache(id, null);
+        storage.putIntoCache(id, "booking", null);
+        storage.getFromCache(id, null);
+        storage.getFromCache(id, null);
+
+        //Then
+        assertEquals(2, meterRegistry.get("entity.cache.hits").tag("region", REGION).functionCounter().count());
+        assertEquals(1, meterRegistry.get("entity.cache.misses").tag("region", REGION).functionCounter().count());
+        assertEquals(1, meterRegistry.get("entity.cache.size").tag("region", REGION).gauge().value());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
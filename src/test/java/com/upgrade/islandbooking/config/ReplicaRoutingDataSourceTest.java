@@ -0,0 +1,143 @@
+package com.upgrade.islandbooking.config;
+
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ServiceException;
+import com.upgrade.islandbooking.service.BookingService;
+import com.upgrade.islandbooking.service.OccupancyIndex;
+import com.upgrade.islandbooking.vo.BookingReserveVo;
+import com.upgrade.islandbooking.vo.BookingVo;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Two H2 databases stand for the primary and the replica, the replication is done by hand copying the primary into
+ * the replica. The nights table profile is used so Redis is not needed.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReplicaRoutingDataSourceTest.PRIMARY_URL,
+        "datasource.replica.url=" + ReplicaRoutingDataSourceTest.REPLICA_URL,
+        "datasource.replica.readYourWritesWindow=" + ReplicaRoutingDataSourceTest.READ_YOUR_WRITES_WINDOW,
+        "datasource.replica.checkInterval=600000"})
+@ActiveProfiles("nightTable")
+@DirtiesContext
+public class ReplicaRoutingDataSourceTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+    static final long READ_YOUR_WRITES_WINDOW = 500;
+
+    @Autowired
+    private BookingService service;
+
+    @Autowired
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private HikariDataSource replicaDataSource;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private OccupancyIndex occupancyIndex;
+
+    @DisplayName("Test read-only transactions use the replica unless it is stale or down")
+    @Test
+    public void getBooking_routing() throws Exception {
+        //Given
+        replicate();
+        final LocalDate from = LocalDate.now().plusDays(1);
+
+        //When, then: read-only transactions go to the replica
+        assertBookingNotFound(UUID.randomUUID().toString());
+        assertEquals(1, routedConnections("replica"));
+
+        //Writes go to the primary, and so do the reads right after them
+        final String id = service.reserve(new BookingReserveVo("javier@foo.com", "Javier", "Digruttola", from,
+                from.plusDays(2)));
+        final BookingVo booking = service.getBooking(id);
+        assertEquals(id, booking.getBookingId());
+        assertEquals("javier@foo.com", booking.getPersonEmail());
+        assertEquals(from, booking.getFrom());
+        assertEquals(1, routedConnections("replica"));
+
+        //Once the window is over the replica is used again, even if the booking is not there yet
+        Thread.sleep(READ_YOUR_WRITES_WINDOW + 100);
+        assertBookingNotFound(id);
+        replicate();
+        assertEquals(id, service.getBooking(id).getBookingId());
+        assertEquals(3, routedConnections("replica"));
+
+        //The index is always rebuilt from the primary, even when the replica is usable and missing bookings
+        final String otherId = service.reserve(new BookingReserveVo("other@foo.com", "Javier", "Digruttola",
+                from.plusDays(3), from.plusDays(5)));
+        Thread.sleep(READ_YOUR_WRITES_WINDOW + 100);
+        assertBookingNotFound(otherId);
+        occupancyIndex.rebuild();
+        assertEquals(List.of(), occupancyIndex.getFreeNights(booking.getSite(), from.plusDays(3), from.plusDays(5)));
+        assertEquals(4, routedConnections("replica"));
+        Thread.sleep(READ_YOUR_WRITES_WINDOW + 100);
+
+        //Each pool has its own usage metrics
+        assertNotNull(meterRegistry.find("hikaricp.connections.active").tag("pool", "primary").gauge());
+        assertNotNull(meterRegistry.find("hikaricp.connections.active").tag("pool", "replica").gauge());
+
+        //Without the replica, the primary answers
+        replicaDataSource.close();
+        assertEquals(id, service.getBooking(id).getBookingId());
+        assertEquals(0, meterRegistry.get("datasource.replica.usable").gauge().value());
+        routingDataSource.checkReplica();
+        assertEquals(0, meterRegistry.get("datasource.replica.usable").gauge().value());
+        assertEquals(4, routedConnections("replica"));
+    }
+
+    private void assertBookingNotFound(String id) {
+        final ServiceException e = assertThrows(ServiceException.class, () -> service.getBooking(id));
+        assertEquals(Error.BOOKING_NOT_FOUND, e.getError());
+    }
+
+    private double routedConnections(String target) {
+        return meterRegistry.get("datasource.connections.routed").tag("target", target).counter().count();
+    }
+
+    //Replaces everything in the replica with a copy of the primary
+    private static void replicate() throws SQLException {
+        final List<String> statements = new ArrayList<>();
+        try (Connection primary = DriverManager.getConnection(PRIMARY_URL, "sa", "password");
+             Statement statement = primary.createStatement();
+             ResultSet script = statement.executeQuery("SCRIPT")) {
+            while (script.next()) {
+                statements.add(script.getString(1));
+            }
+        }
+        try (Connection replica = DriverManager.getConnection(REPLICA_URL, "sa", "password");
+             Statement statement = replica.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.upgrade.islandbooking.exception;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.support.ResourcePropertySource;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+public class ErrorCatalogTest {
+
+    @DisplayName("Test every error is in the catalog")
+    @Test
+    public void get() throws IOException {
+        //Given
+        final StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addLast(new ResourcePropertySource("classpath:error.properties"));
+
+        //When
+        final ErrorCatalog catalog = new ErrorCatalog(environment);
+
+        //Then
+        for (Error error : Error.values()) {
+            assertNotNull(catalog.get(error), error.name());
+        }
+        final ErrorCatalog.Entry entry = catalog.get(Error.DATE_RANGE_IS_BEING_USED);
+        final LocalDate from = LocalDate.of(2021, 12, 1);
+        assertEquals(HttpStatus.NOT_ACCEPTABLE, entry.getHttpStatus());
+        assertEquals("406 NOT_ACCEPTABLE", entry.getHttpStatusText());
+        assertEquals("101", entry.getCode().trim());
+        assertEquals("The date range between " + from + " and " + from.plusDays(2)
+                + " is partially or totally being used", entry.getMessage(new Object[]{from, from.plusDays(2)}));
+        assertEquals(0, new ServiceException(Error.BOOKING_NOT_FOUND).getStackTrace().length);
+    }
+}
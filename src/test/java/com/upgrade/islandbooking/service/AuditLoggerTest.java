@@ -0,0 +1,71 @@
+package com.upgrade.islandbooking.service;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ServiceException;
+import com.upgrade.islandbooking.service.BookingMetrics.Operation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AuditLoggerTest {
+
+    private static final LocalDate FROM = LocalDate.now().plusDays(1);
+    private static final LocalDate TO = FROM.plusDays(3);
+    private static final String BOOKING_ID = "0190a4b8-2c1e-7a3f-8b2d-4c5e6f708192";
+
+    private final Logger auditLogger = (Logger) LoggerFactory.getLogger("audit");
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+    private BookingMetrics metrics;
+    private AuditLogger audit;
+
+    @BeforeEach
+    public void setUp() {
+        appender.start();
+        auditLogger.addAppender(appender);
+        metrics = new BookingMetrics(new SimpleMeterRegistry());
+        audit = new AuditLogger(metrics);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        auditLogger.detachAppender(appender);
+    }
+
+    @DisplayName("Test audit of successful and rejected requests")
+    @Test
+    public void record() {
+        //When
+        final String result = audit.record(Operation.RESERVE, null, FROM, TO, () -> {
+            metrics.recordLockWait(Operation.RESERVE, metrics.startLockWait());
+            return BOOKING_ID;
+        });
+        final ServiceException e = assertThrows(ServiceException.class,
+                () -> audit.record(Operation.DELETE, BOOKING_ID, null, null, () -> {
+                    throw new ServiceException(Error.BOOKING_NOT_FOUND, new Object[]{BOOKING_ID});
+                }));
+
+        //Then
+        assertEquals(BOOKING_ID, result);
+        assertEquals(Error.BOOKING_NOT_FOUND, e.getError());
+        assertEquals(2, appender.list.size());
+
+        final String reserved = appender.list.get(0).getFormattedMessage();
+        assertTrue(reserved.startsWith("operation=RESERVE bookingId=" + BOOKING_ID + " from=" + FROM + " to=" + TO
+                + " nights=3 outcome=SUCCESS error=- lockWaitUs="), reserved);
+        final String deleted = appender.list.get(1).getFormattedMessage();
+        assertTrue(deleted.startsWith("operation=DELETE bookingId=" + BOOKING_ID + " from=- to=- nights=0 "
+                + "outcome=REJECTED error=BOOKING_NOT_FOUND lockWaitUs=0 "), deleted);
+    }
+}
@@ -0,0 +1,152 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.vo.AvailabilityChangeVo;
+import com.upgrade.islandbooking.vo.AvailabilityDeltaVo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class AvailabilityChangeStreamTest {
+
+    private static final LocalDate FROM = LocalDate.now().plusDays(1);
+    private static final String SITE = "default";
+
+    private AvailabilityChangeBroadcaster broadcaster;
+
+    private AvailabilityChangeStream stream;
+
+    @BeforeEach
+    public void setUp() {
+        final OccupancyIndex occupancyIndex = new OccupancyIndex(null);
+        broadcaster = new AvailabilityChangeBroadcaster(occupancyIndex, new AvailabilityCache(100), null);
+        stream = new AvailabilityChangeStream(broadcaster, 60000L, 2, 60000L, 200L, 16, 2);
+    }
+
+    @AfterEach
+    public void shutdown() {
+        stream.shutdown();
+    }
+
+    @DisplayName("Test resuming the availability changes after a reconnection")
+    @Test
+    public void getChangesAfter() {
+        //Given
+        broadcaster.nightsTaken(SITE, FROM, FROM.plusDays(1));
+        broadcaster.nightsTaken(SITE, FROM.plusDays(2), FROM.plusDays(3));
+        broadcaster.nightsMoved(SITE, FROM, FROM.plusDays(1), FROM.plusDays(4), FROM.plusDays(5));
+
+        //When
+        final List<Map.Entry<Long, AvailabilityDeltaVo>> missed = stream.getChangesAfter(1);
+
+        //Then
+        assertEquals(List.of(2L, 3L), missed.stream().map(Map.Entry::getKey).collect(Collectors.toList()));
+        assertEquals(new AvailabilityDeltaVo(SITE, FROM, FROM.plusDays(1), FROM.plusDays(4), FROM.plusDays(5)),
+                missed.get(1).getValue());
+        assertEquals(List.of(), stream.getChangesAfter(3));
+        //The first change is not kept anymore
+        assertNull(stream.getChangesAfter(0));
+
+        //When
+        stream.reloaded();
+
+        //Then
+        assertNull(stream.getChangesAfter(2));
+        assertEquals(List.of(), stream.getChangesAfter(3));
+    }
+
+    @DisplayName("Test every subscriber gets the same events")
+    @Test
+    public void changed_severalSubscribers() throws InterruptedException {
+        //Given
+        final List<SseEmitter> emitters = List.of(stream.subscribe(null), stream.subscribe(null), stream.subscribe(null));
+        final AvailabilityDeltaVo taken = new AvailabilityDeltaVo(SITE, null, null, FROM, FROM.plusDays(1));
+        final AvailabilityDeltaVo moved = new AvailabilityDeltaVo(SITE, FROM, FROM.plusDays(1), FROM.plusDays(2),
+                FROM.plusDays(3));
+
+        //When
+        broadcaster.nightsTaken(SITE, FROM, FROM.plusDays(1));
+        broadcaster.nightsMoved(SITE, FROM, FROM.plusDays(1), FROM.plusDays(2), FROM.plusDays(3));
+
+        //Then
+        final String expected = "event:ready\nid:0\ndata:\n\n"
+                + "event:change\nid:1\ndata:" + taken + "\n\n"
+                + "event:change\nid:2\ndata:" + moved + "\n\n";
+        for (SseEmitter emitter : emitters) {
+            assertEquals(expected, waitForSent(emitter, expected.length()));
+        }
+    }
+
+    @DisplayName("Test the changes are sent in sequence order")
+    @Test
+    public void changed_outOfOrder() throws InterruptedException {
+        //Given
+        final SseEmitter emitter = stream.subscribe(null);
+
+        //When
+        stream.changed(taken(2, FROM.plusDays(2)));
+
+        //Then
+        assertEquals(List.of(), stream.getChangesAfter(0));
+
+        //When
+        stream.changed(taken(1, FROM));
+
+        //Then
+        assertEquals(List.of(1L, 2L), stream.getChangesAfter(0).stream().map(Map.Entry::getKey)
+                .collect(Collectors.toList()));
+        final String expected = "event:ready\nid:0\ndata:\n\n"
+                + "event:change\nid:1\ndata:" + AvailabilityDeltaVo.of(taken(1, FROM)) + "\n\n"
+                + "event:change\nid:2\ndata:" + AvailabilityDeltaVo.of(taken(2, FROM.plusDays(2))) + "\n\n";
+        assertEquals(expected, waitForSent(emitter, expected.length()));
+
+        //When the third change does not arrive
+        stream.changed(taken(4, FROM.plusDays(6)));
+        Thread.sleep(500);
+
+        //Then it is skipped, and the clients resuming before it have to load everything again
+        assertNull(stream.getChangesAfter(2));
+        assertEquals(List.of(), stream.getChangesAfter(4));
+
+        //When it arrives afterwards
+        stream.changed(taken(3, FROM.plusDays(4)));
+
+        //Then
+        assertNull(stream.getChangesAfter(3));
+        assertEquals(List.of(), stream.getChangesAfter(4));
+    }
+
+    private AvailabilityChangeVo taken(long sequence, LocalDate from) {
+        return new AvailabilityChangeVo("other", SITE, null, null, from, from.plusDays(1), sequence);
+    }
+
+    /**
+     * The emitters are not bound to a response, so what is sent is kept in them
+     */
+    @SuppressWarnings("unchecked")
+    private static String waitForSent(SseEmitter emitter, int length) throws InterruptedException {
+        String sent = "";
+        for (int i = 0; i < 50 && sent.length() < length; i++) {
+            Thread.sleep(20);
+            synchronized (emitter) {
+                final Set<ResponseBodyEmitter.DataWithMediaType> data =
+                        (Set<ResponseBodyEmitter.DataWithMediaType>) ReflectionTestUtils.getField(emitter,
+                                "earlySendAttempts");
+                sent = data.stream().map(part -> String.valueOf(part.getData())).collect(Collectors.joining());
+            }
+        }
+        return sent;
+    }
+}
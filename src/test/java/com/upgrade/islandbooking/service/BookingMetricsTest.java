@@ -0,0 +1,44 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ServiceException;
+import com.upgrade.islandbooking.service.BookingMetrics.Operation;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BookingMetricsTest {
+
+    @DisplayName("Test the failed requests are recorded in one timer per operation and outcome")
+    @Test
+    public void timeRequest_failures() {
+        //Given
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final BookingMetrics metrics = new BookingMetrics(registry);
+
+        //When
+        for (int i = 0; i < 3; i++) {
+            assertThrows(ServiceException.class, () -> metrics.timeRequest(Operation.RESERVE, () -> {
+                throw new ServiceException(Error.LOCK_CONTENTION, new Object[]{1L});
+            }));
+        }
+        assertThrows(IllegalStateException.class, () -> metrics.timeRequest(Operation.RESERVE, () -> {
+            throw new IllegalStateException();
+        }));
+        metrics.timeRequest(Operation.RESERVE, () -> "booking");
+
+        //Then
+        final Timer contention = registry.get("booking.request").tag("operation", "reserve")
+                .tag("outcome", Error.LOCK_CONTENTION.name()).timer();
+        assertEquals(3, contention.count());
+        assertEquals(1, registry.get("booking.request").tag("operation", "reserve").tag("outcome", "exception")
+                .timer().count());
+        assertEquals(1, registry.get("booking.request").tag("operation", "reserve").tag("outcome", "success")
+                .timer().count());
+        assertEquals(Operation.values().length + 2, registry.find("booking.request").timers().size());
+    }
+}
@@ -0,0 +1,152 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.domain.entity.Booking;
+import com.upgrade.islandbooking.domain.repository.BookingNightRepository;
+import com.upgrade.islandbooking.domain.repository.BookingRepository;
+import com.upgrade.islandbooking.exception.ServiceException;
+import com.upgrade.islandbooking.vo.BookingReserveVo;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import redis.embedded.RedisServer;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:contention")
+public class BookingServiceContentionTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookingServiceContentionTest.class);
+
+    private static final int THREADS = 16;
+    private static final int REQUESTS_PER_THREAD = 50;
+    private static final int WINDOW_DAYS = 60;
+
+    private static RedisServer redisServer;
+
+    @Autowired
+    private BookingService service;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private BookingNightRepository bookingNightRepository;
+
+    @BeforeAll
+    public static void startRedis() {
+        redisServer = new RedisServer(6379);
+        redisServer.start();
+    }
+
+    @AfterAll
+    public static void stopRedis() {
+        redisServer.stop();
+    }
+
+    @AfterEach
+    public void resetMode() {
+        service.setNightTableEnabled(false);
+    }
+
+    @DisplayName("Test contention for reserve with distributed locks and with the nights table")
+    @Test
+    public void reserve_contention() throws Exception {
+        //Given
+        final LocalDate lockedWindow = LocalDate.now().plusDays(10);
+        final LocalDate nightTableWindow = lockedWindow.plusDays(WINDOW_DAYS * 2);
+
+        //When
+        service.setNightTableEnabled(false);
+        final double lockedThroughput = reserveConcurrently(lockedWindow, "locked");
+        service.setNightTableEnabled(true);
+        final double nightTableThroughput = reserveConcurrently(nightTableWindow, "night");
+
+        LOGGER.info("Reservations per second - distributed locks: {}, nights table: {}",
+                String.format("%.1f", lockedThroughput), String.format("%.1f", nightTableThroughput));
+
+        //Then
+        assertNoOverlaps(lockedWindow);
+        final List<Booking> nightTableBookings = assertNoOverlaps(nightTableWindow);
+        final long bookedNights = nightTableBookings.stream()
+                .mapToLong(b -> b.getToDate().toEpochDay() - b.getFromDate().toEpochDay())
+                .sum();
+        assertEquals(bookedNights, bookingNightRepository.count());
+    }
+
+    /**
+     * Many threads try to reserve random ranges of the same window
+     * @return the number of reservation requests (accepted or rejected) processed per second
+     */
+    private double reserveConcurrently(LocalDate window, String emailPrefix) throws Exception {
+        final AtomicInteger accepted = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<?>> futures = new ArrayList<>();
+
+        final long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                final Random random = new Random(thread);
+                for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                    final LocalDate from = window.plusDays(random.nextInt(WINDOW_DAYS));
+                    final BookingReserveVo vo = new BookingReserveVo(emailPrefix + thread + "-" + i + "@foo.com",
+                            "First", "Last", from, from.plusDays(1 + random.nextInt(3)));
+                    try {
+                        service.reserve(vo);
+                        accepted.incrementAndGet();
+                    } catch (ServiceException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        final long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        LOGGER.info("{}: {} accepted and {} rejected reservations in {} ms", emailPrefix, accepted.get(),
+                rejected.get(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+        assertEquals(THREADS * REQUESTS_PER_THREAD, accepted.get() + rejected.get());
+        assertTrue(accepted.get() > 0);
+        return (accepted.get() + rejected.get()) / (elapsed / 1_000_000_000d);
+    }
+
+    private List<Booking> assertNoOverlaps(LocalDate window) {
+        final List<Booking> bookings = bookingRepository.findBySiteAndFromDateBetween("default", window,
+                        window.plusDays(WINDOW_DAYS))
+                .stream()
+                .sorted(Comparator.comparing(Booking::getFromDate))
+                .collect(Collectors.toList());
+
+        for (int i = 1; i < bookings.size(); i++) {
+            final Booking previous = bookings.get(i - 1);
+            final Booking current = bookings.get(i);
+            assertTrue(!previous.getToDate().isAfter(current.getFromDate()),
+                    "Booking " + previous.getId() + " overlaps booking " + current.getId());
+        }
+        return bookings;
+    }
+}
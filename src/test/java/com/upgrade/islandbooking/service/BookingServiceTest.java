@@ -2,10 +2,19 @@ package com.upgrade.islandbooking.service;
 
 import com.upgrade.islandbooking.domain.entity.Booking;
 import com.upgrade.islandbooking.domain.entity.Person;
+import com.upgrade.islandbooking.domain.repository.BookingNightRepository;
 import com.upgrade.islandbooking.domain.repository.BookingRepository;
 import com.upgrade.islandbooking.domain.repository.PersonRepository;
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ServiceException;
+import com.upgrade.islandbooking.service.BookingMetrics.Operation;
 import com.upgrade.islandbooking.vo.BookingReserveVo;
 import com.upgrade.islandbooking.vo.BookingUpdateVo;
+import com.upgrade.islandbooking.vo.BookingVo;
+import com.upgrade.islandbooking.vo.DateIntervalVo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.JDBCConnectionException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -17,15 +26,31 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.stubbing.Answer;
 import org.redisson.Redisson;
+import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import redis.embedded.RedisServer;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
-
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 
@@ -39,8 +64,10 @@ public class BookingServiceTest {
     private static final String EMAIL = "javi.digru@foo.com";
     private static final LocalDate FROM = LocalDate.now().plusDays(1);
     private static final LocalDate TO = FROM.plusDays(2);
-    private static final String BOOKING_ID = "1";
-    private static final String BOOKING_ID2 = "2";
+    private static final String BOOKING_ID = "0190a4b8-2c1e-7a3f-8b2d-4c5e6f708192";
+    private static final String BOOKING_ID2 = "0190a4b8-2c1f-7b40-9c3e-5d6f70819203";
+    private static final String SITE = "default";
+    private static final String SITE2 = "north";
 
     private RedisServer redisServer;
 
@@ -53,12 +80,28 @@ public class BookingServiceTest {
     @Mock
     private PersonRepository personRepository;
 
+    @Mock
+    private BookingNightRepository bookingNightRepository;
+
+    @Mock
+    private EntityManager entityManager;
+
     private RedissonClient redissonClient;
 
     private BookingService service;
 
     private BookingService service2;
 
+    private SimpleMeterRegistry meterRegistry;
+
+    private BookingMetrics metrics;
+
+    private RedisOccupancyCalendar occupancyCalendar;
+
+    private SiteCatalog siteCatalog;
+
+    private BookedEmailFilter emailFilter;
+
      @BeforeEach
      public void setUp() {
          //Initializes the redis server for testing
@@ -72,20 +115,40 @@ public class BookingServiceTest {
          redissonClient = Redisson.create();
 
          //Initializes the service
-         this.service = new BookingService(bookingRepository, personRepository, redissonClient);
+         meterRegistry = new SimpleMeterRegistry();
+         metrics = new BookingMetrics(meterRegistry);
+         occupancyCalendar = new RedisOccupancyCalendar(redissonClient);
+         siteCatalog = new SiteCatalog(new String[]{SITE, SITE2});
+         emailFilter = new BookedEmailFilter(personRepository, redissonClient, meterRegistry, true, 1000, 0.01, 100);
+         emailFilter.init();
+         final OccupancyIndex occupancyIndex = new OccupancyIndex(bookingRepository);
+         final AvailabilityCache availabilityCache = new AvailabilityCache(100);
+         this.service = new BookingService(bookingRepository, personRepository, bookingNightRepository, redissonClient,
+                 occupancyIndex, occupancyCalendar, availabilityCache,
+                 new AvailabilityChangeBroadcaster(occupancyIndex, availabilityCache, redissonClient), metrics,
+                 siteCatalog, emailFilter);
+         ReflectionTestUtils.setField(this.service, "entityManager", entityManager);
          this.service.setLockingTimeout(10000L);
+         this.service.setLockingMaxWait(10000L);
          this.service.setMaxDateRangeSize(3);
 
-         this.service2 = new BookingService(bookingRepository2, personRepository, redissonClient);
+         final OccupancyIndex occupancyIndex2 = new OccupancyIndex(bookingRepository2);
+         final AvailabilityCache availabilityCache2 = new AvailabilityCache(100);
+         this.service2 = new BookingService(bookingRepository2, personRepository, bookingNightRepository, redissonClient,
+                 occupancyIndex2, occupancyCalendar, availabilityCache2,
+                 new AvailabilityChangeBroadcaster(occupancyIndex2, availabilityCache2, redissonClient), metrics,
+                 siteCatalog, emailFilter);
+         ReflectionTestUtils.setField(this.service2, "entityManager", entityManager);
          this.service2.setLockingTimeout(10000L);
+         this.service2.setLockingMaxWait(10000L);
          this.service2.setMaxDateRangeSize(3);
 
          //Mocking...
          final Person person = new Person(EMAIL, FIRST_NAME, LAST_NAME);
-         final Booking updatedBooking = new Booking(person, FROM, TO);
-         updatedBooking.setId(BOOKING_ID);
-         final Booking updatedBooking2 = new Booking(person, FROM, TO);
-         updatedBooking2.setId(BOOKING_ID2);
+         final Booking updatedBooking = new Booking(SITE, person, FROM, TO);
+         updatedBooking.setId(UUID.fromString(BOOKING_ID));
+         final Booking updatedBooking2 = new Booking(SITE, person, FROM, TO);
+         updatedBooking2.setId(UUID.fromString(BOOKING_ID2));
 
          final Answer<Booking> answerWithDelay = new Answer<>() {
              @Override
@@ -96,15 +159,19 @@ public class BookingServiceTest {
          };
 
          Mockito.lenient().when(personRepository.save(any(Person.class))).thenReturn(person);
+         Mockito.lenient().when(personRepository.saveAndFlush(any(Person.class))).thenReturn(person);
          Mockito.lenient().when(personRepository.findById(any(String.class))).thenReturn(null);
          Mockito.lenient().when(bookingRepository.save(any(Booking.class))).then(answerWithDelay);
-         Mockito.lenient().when(bookingRepository.findByFromDateBetween(any(LocalDate.class), any(LocalDate.class))).thenReturn(null);
-         Mockito.lenient().when(bookingRepository.countByFromDateBetweenAndToDateGreaterThan(any(LocalDate.class), any(LocalDate.class), any(LocalDate.class))).thenReturn(null);
+         Mockito.lenient().when(bookingRepository.findBySiteAndFromDateBetween(any(String.class), any(LocalDate.class), any(LocalDate.class))).thenReturn(null);
+         Mockito.lenient().when(bookingRepository.countBySiteAndFromDateBetweenAndToDateGreaterThan(any(String.class), any(LocalDate.class), any(LocalDate.class), any(LocalDate.class))).thenReturn(null);
          Mockito.lenient().when(bookingRepository2.save(any(Booking.class))).thenReturn(updatedBooking2);
-         Mockito.lenient().when(bookingRepository2.findByFromDateBetween(any(LocalDate.class), any(LocalDate.class))).thenReturn(null);
-         Mockito.lenient().when(bookingRepository2.countByFromDateBetweenAndToDateGreaterThan(any(LocalDate.class), any(LocalDate.class), any(LocalDate.class))).thenReturn(null);
-         Mockito.lenient().when(bookingRepository.findById(any(String.class))).thenReturn(Optional.of(updatedBooking));
-         Mockito.lenient().when(bookingRepository2.findById(any(String.class))).thenReturn(Optional.of(updatedBooking2));
+         Mockito.lenient().when(bookingRepository2.findBySiteAndFromDateBetween(any(String.class), any(LocalDate.class), any(LocalDate.class))).thenReturn(null);
+         Mockito.lenient().when(bookingRepository2.countBySiteAndFromDateBetweenAndToDateGreaterThan(any(String.class), any(LocalDate.class), any(LocalDate.class), any(LocalDate.class))).thenReturn(null);
+         Mockito.lenient().when(bookingRepository.findById(any(UUID.class))).thenReturn(Optional.of(updatedBooking));
+         Mockito.lenient().when(bookingRepository2.findById(any(UUID.class))).thenReturn(Optional.of(updatedBooking2));
+         Mockito.lenient().when(bookingRepository.findFreshById(any(UUID.class))).thenReturn(Optional.of(updatedBooking));
+         Mockito.lenient().when(bookingRepository2.findFreshById(any(UUID.class)))
+                 .thenReturn(Optional.of(updatedBooking2));
      }
 
      @AfterEach
@@ -148,7 +215,7 @@ public class BookingServiceTest {
             while (t1.isAlive()) {
                 if (t1.isServiceStillRunning()
                         && !t2.isServiceStillRunning()
-                        && redissonClient.getLock("resource_lock").isHeldByThread(t2.getId())) {
+                        && redissonClient.getLock(BookingService.getNightLockKey(SITE, FROM)).isHeldByThread(t2.getId())) {
                     LOGGER.error("T1 is alive and the lock is for T2");
                     result = false;
                     break;
@@ -159,6 +226,181 @@ public class BookingServiceTest {
         assertTrue(result);
     }
 
+    @DisplayName("Test reserve metrics")
+    @Test
+    public void reserve_metrics() {
+        //Given
+        final BookingReserveVo vo = new BookingReserveVo(EMAIL, FIRST_NAME, LAST_NAME, FROM, TO);
+
+        //When
+        metrics.timeRequest(Operation.RESERVE, () -> service2.reserve(vo));
+        Mockito.when(bookingRepository2.countBySiteAndFromDateBetweenAndToDateGreaterThan(any(String.class),
+                any(LocalDate.class), any(LocalDate.class), any(LocalDate.class))).thenReturn(1L);
+        assertThrows(ServiceException.class, () -> metrics.timeRequest(Operation.RESERVE, () -> service2.reserve(vo)));
+
+        //Then
+        assertEquals(2, meterRegistry.get("booking.lock.wait").tag("operation", "reserve").timer().count());
+        assertEquals(2, meterRegistry.get("booking.lock.hold").tag("operation", "reserve").timer().count());
+        assertEquals(1, meterRegistry.get("booking.validation").tag("operation", "reserve").timer().count());
+        assertEquals(1, meterRegistry.get("booking.persist").tag("operation", "reserve").timer().count());
+        assertEquals(1, meterRegistry.get("booking.request").tag("operation", "reserve")
+                .tag("outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get("booking.request").tag("operation", "reserve")
+                .tag("outcome", "DATE_RANGE_IS_BEING_USED").timer().count());
+    }
+
+    @DisplayName("Test reserve only looks up the people the email filter could contain")
+    @Test
+    public void reserve_emailFilter() {
+        //Given
+        emailFilter.rebuild();
+        final BookingReserveVo vo = new BookingReserveVo(EMAIL, FIRST_NAME, LAST_NAME, FROM, TO);
+        final BookingReserveVo sameEmail = new BookingReserveVo(EMAIL, FIRST_NAME, LAST_NAME, FROM.plusDays(5),
+                TO.plusDays(5));
+
+        //When
+        service2.reserve(vo);
+        Mockito.when(personRepository.findById(EMAIL))
+                .thenReturn(Optional.of(new Person(EMAIL, FIRST_NAME, LAST_NAME)));
+        final ServiceException e = assertThrows(ServiceException.class, () -> service2.reserve(sameEmail));
+
+        //Then
+        assertEquals(Error.PERSON_HAS_BOOKING, e.getError());
+        Mockito.verify(personRepository, Mockito.times(1)).findById(EMAIL);
+        assertEquals(1, meterRegistry.get("person.filter.checks").tag("result", "absent").counter().count());
+        assertEquals(1, meterRegistry.get("person.filter.checks").tag("result", "present").counter().count());
+    }
+
+    @DisplayName("Test reserve only reports the person as booked when its primary key is violated")
+    @Test
+    public void reserve_personPersistFailure() {
+        //Given
+        final BookingReserveVo vo = new BookingReserveVo(EMAIL, FIRST_NAME, LAST_NAME, FROM, TO);
+        final PersistenceException lostConnection = new PersistenceException(new JDBCConnectionException(
+                "Connection is closed", new SQLException()));
+        final PersistenceException violation = new PersistenceException(new ConstraintViolationException(
+                "Unique index or primary key violation", new SQLException(), "PRIMARY_KEY_8"));
+
+        //When
+        Mockito.doThrow(lostConnection).doThrow(violation).when(entityManager).flush();
+
+        //Then
+        assertEquals(lostConnection, assertThrows(PersistenceException.class, () -> service2.reserve(vo)));
+        assertEquals(Error.PERSON_HAS_BOOKING, assertThrows(ServiceException.class, () -> service2.reserve(vo))
+                .getError());
+    }
+
+    @DisplayName("Test reserveBatch reports the error of the constraint violated when the batch is persisted")
+    @Test
+    public void reserveBatch_persistFailure() {
+        //Given
+        final List<BookingReserveVo> vos = List.of(new BookingReserveVo(EMAIL, FIRST_NAME, LAST_NAME, FROM, TO));
+        final PersistenceException personViolation = new PersistenceException(new ConstraintViolationException(
+                "Unique index or primary key violation", new SQLException(),
+                "insert into person (first_name, last_name, email) values (?, ?, ?)", "PRIMARY_KEY_8"));
+        final PersistenceException bookingViolation = new PersistenceException(new ConstraintViolationException(
+                "Unique index or primary key violation", new SQLException(),
+                "insert into booking (from_date, person_email, site, to_date, id) values (?, ?, ?, ?, ?)",
+                "UK_BOOKING_SITE_FROM_DATE"));
+        Mockito.when(bookingRepository2.findBySiteAndFromDateBetween(any(String.class), any(LocalDate.class),
+                any(LocalDate.class))).thenReturn(List.of());
+        Mockito.lenient().doAnswer(invocation -> {
+            ((Booking) invocation.getArgument(0)).setId(UUID.fromString(BOOKING_ID2));
+            return null;
+        }).when(entityManager).persist(any(Booking.class));
+
+        //When
+        Mockito.doThrow(personViolation).doThrow(bookingViolation).when(entityManager).flush();
+
+        //Then
+        assertEquals(Error.PERSON_HAS_BOOKING, assertThrows(ServiceException.class, () -> service2.reserveBatch(vos))
+                .getError());
+        assertEquals(Error.DATE_RANGE_IS_BEING_USED,
+                assertThrows(ServiceException.class, () -> service2.reserveBatch(vos)).getError());
+    }
+
+    @DisplayName("Test reserve when the nights are locked longer than the max wait")
+    @Test
+    public void reserve_lockContention() throws InterruptedException {
+        //Given
+        final BookingReserveVo vo = new BookingReserveVo(EMAIL, FIRST_NAME, LAST_NAME, FROM, TO);
+        final RLock lock = redissonClient.getLock(BookingService.getNightLockKey(SITE, FROM));
+        service2.setLockingMaxWait(100L);
+        final BookingServiceReserveThread t1 = new BookingServiceReserveThread(vo, service);
+        t1.start();
+        for (int i = 0; i < 50 && !lock.isLocked(); i++) {
+            Thread.sleep(10L);
+        }
+
+        //When
+        final ServiceException e = assertThrows(ServiceException.class, () -> service2.reserve(vo));
+
+        //Then
+        assertEquals(Error.LOCK_CONTENTION, e.getError());
+        assertTrue((Long) e.getParameters()[0] >= 1);
+        //The rejected wait is recorded too, along with the one of the thread holding the lock
+        assertEquals(2, meterRegistry.get("booking.lock.wait").tag("operation", "reserve").timer().count());
+        t1.join();
+        assertEquals(0, meterRegistry.get("booking.lock.waiters").gauge().value());
+    }
+
+    @DisplayName("Test reserve and delete with the shared calendar")
+    @Test
+    public void reserve_redisCalendar() {
+        //Given
+        service2.setRedisCalendarEnabled(true);
+        service2.rebuildCalendar();
+        final BookingReserveVo vo = new BookingReserveVo(EMAIL, FIRST_NAME, LAST_NAME, FROM, TO);
+        final BookingReserveVo overlapping = new BookingReserveVo("other@foo.com", FIRST_NAME, LAST_NAME,
+                TO.minusDays(1), TO.plusDays(1));
+
+        //When
+        service2.reserve(vo);
+
+        //Then
+        final ServiceException e = assertThrows(ServiceException.class, () -> service2.reserve(overlapping));
+        assertEquals(Error.DATE_RANGE_IS_BEING_USED, e.getError());
+        assertEquals(List.of(TO), service2.getAvailableDays(SITE, FROM, TO.plusDays(1)));
+        assertEquals(service2.getAvailableDays(SITE, FROM.minusDays(1), FROM.plusDays(800)),
+                service2.streamAvailableDays(SITE, FROM.minusDays(1), FROM.plusDays(800)).collect(Collectors.toList()));
+        assertTrue(occupancyCalendar.isFree(SITE, FROM, TO, FROM, TO));
+        assertTrue(occupancyCalendar.isFree(SITE2, FROM, TO, null, null));
+
+        //When
+        service2.delete(BOOKING_ID2);
+
+        //Then
+        assertEquals(List.of(FROM, FROM.plusDays(1), TO), service2.getAvailableDays(SITE, FROM, TO.plusDays(1)));
+        assertTrue(occupancyCalendar.isFree(SITE, FROM, TO, null, null));
+    }
+
+    @DisplayName("Test the shared calendar is updated before the commit and undone on rollback")
+    @Test
+    public void reserve_redisCalendarRollback() {
+        //Given
+        service2.setRedisCalendarEnabled(true);
+        service2.rebuildCalendar();
+        final BookingReserveVo vo = new BookingReserveVo(EMAIL, FIRST_NAME, LAST_NAME, FROM, TO);
+
+        //When
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service2.reserve(vo);
+
+            //Then
+            assertFalse(occupancyCalendar.isFree(SITE, FROM, TO, null, null));
+
+            //When
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        //Then
+        assertTrue(occupancyCalendar.isFree(SITE, FROM, TO, null, null));
+    }
+
     @DisplayName("Test concurrency for update")
     @Test
     public void update_concurrency() {
@@ -194,7 +436,7 @@ public class BookingServiceTest {
             while (t1.isAlive()) {
                 if (t1.isServiceStillRunning()
                         && !t2.isServiceStillRunning()
-                        && redissonClient.getLock("resource_lock").isHeldByThread(t2.getId())) {
+                        && redissonClient.getLock(BookingService.getNightLockKey(SITE, FROM)).isHeldByThread(t2.getId())) {
                     LOGGER.error("T1 is alive and the lock is for T2");
                     result = false;
                     break;
@@ -204,4 +446,127 @@ public class BookingServiceTest {
 
         assertTrue(result);
     }
+
+    @DisplayName("Test export gives every booking and detaches them")
+    @Test
+    public void exportBookings() {
+        //Given
+        final Person person = new Person(EMAIL, FIRST_NAME, LAST_NAME);
+        final Booking booking = new Booking(SITE, person, FROM, TO);
+        booking.setId(UUID.fromString(BOOKING_ID));
+        Mockito.when(bookingRepository.streamAllWithPerson()).thenReturn(Stream.of(booking));
+        final List<BookingVo> exported = new ArrayList<>();
+
+        //When
+        final long count = service.exportBookings(exported::add);
+
+        //Then
+        assertEquals(1, count);
+        assertEquals(List.of(new BookingVo(BOOKING_ID, SITE, EMAIL, FIRST_NAME, LAST_NAME, FROM, TO)), exported);
+        Mockito.verify(entityManager).detach(booking);
+        Mockito.verify(entityManager).detach(person);
+    }
+
+    @DisplayName("Test available days after reserve and delete")
+    @Test
+    public void getAvailableDays_reserveAndDelete() {
+        //Given
+        final BookingReserveVo vo = new BookingReserveVo();
+        vo.setPersonFirstName(FIRST_NAME);
+        vo.setPersonLastName(LAST_NAME);
+        vo.setPersonEmail(EMAIL);
+        vo.setFrom(FROM);
+        vo.setTo(TO);
+
+        final String eTagBefore = service2.getAvailabilityETag(null, FROM.minusDays(1), TO.plusDays(1),
+                BookingService.AVAILABLE_DAYS);
+
+        //When
+        service2.reserve(vo);
+        final String eTagAfterReserve = service2.getAvailabilityETag(null, FROM.minusDays(1), TO.plusDays(1),
+                BookingService.AVAILABLE_DAYS);
+        final List<LocalDate> availableAfterReserve = service2.getAvailableDays(null, FROM.minusDays(1), TO.plusDays(1));
+        final List<DateIntervalVo> intervalsAfterReserve = service2.getAvailableIntervals(null, FROM.minusDays(1),
+                TO.plusDays(1));
+        service2.delete(BOOKING_ID2);
+        final String eTagAfterDelete = service2.getAvailabilityETag(null, FROM.minusDays(1), TO.plusDays(1),
+                BookingService.AVAILABLE_DAYS);
+        final List<LocalDate> availableAfterDelete = service2.getAvailableDays(null, FROM.minusDays(1), TO.plusDays(1));
+
+        //Then
+        assertEquals(List.of(FROM.minusDays(1), TO), availableAfterReserve);
+        assertEquals(List.of(new DateIntervalVo(FROM.minusDays(1), FROM), new DateIntervalVo(TO, TO.plusDays(1))),
+                intervalsAfterReserve);
+        assertNotEquals(BookingService.getAvailabilityETag(availableAfterReserve),
+                BookingService.getAvailabilityETag(availableAfterDelete));
+        assertNotEquals(eTagBefore, eTagAfterReserve);
+        assertNotEquals(eTagAfterReserve, eTagAfterDelete);
+        assertNotEquals(eTagAfterDelete, service2.getAvailabilityETag(null, FROM.minusDays(1), TO.plusDays(1),
+                BookingService.AVAILABLE_INTERVALS));
+        assertNotEquals(eTagAfterDelete, service2.getAvailabilityETag(null, FROM, TO.plusDays(1),
+                BookingService.AVAILABLE_DAYS));
+        assertEquals(FROM.minusDays(1).datesUntil(TO.plusDays(1)).collect(Collectors.toList()), availableAfterDelete);
+    }
+
+    @DisplayName("Test available days are updated with the changes of other nodes")
+    @Test
+    public void getAvailableDays_changesFromOtherNode() throws InterruptedException {
+        //Given
+        final OccupancyIndex occupancyIndex = new OccupancyIndex(bookingRepository);
+        final AvailabilityCache availabilityCache = new AvailabilityCache(100);
+        final AvailabilityChangeBroadcaster otherNode = new AvailabilityChangeBroadcaster(occupancyIndex,
+                availabilityCache, redissonClient);
+        otherNode.subscribe();
+        final BookingService otherNodeService = new BookingService(bookingRepository, personRepository,
+                bookingNightRepository, redissonClient, occupancyIndex, occupancyCalendar, availabilityCache, otherNode,
+                metrics, siteCatalog, emailFilter);
+        ReflectionTestUtils.setField(otherNodeService, "entityManager", entityManager);
+        assertEquals(3, otherNodeService.getAvailableDays(SITE, FROM.minusDays(1), TO).size());
+
+        final BookingReserveVo vo = new BookingReserveVo(EMAIL, FIRST_NAME, LAST_NAME, FROM, TO);
+
+        //When
+        service2.reserve(vo);
+
+        //Then
+        List<LocalDate> available = otherNodeService.getAvailableDays(SITE, FROM.minusDays(1), TO);
+        for (int i = 0; i < 50 && available.size() != 1; i++) {
+            Thread.sleep(100L);
+            available = otherNodeService.getAvailableDays(SITE, FROM.minusDays(1), TO);
+        }
+        otherNode.unsubscribe();
+        assertEquals(List.of(FROM.minusDays(1)), available);
+        //Both nodes applied the same changes
+        assertEquals(service2.getAvailabilityETag(SITE, FROM.minusDays(1), TO, BookingService.AVAILABLE_DAYS),
+                otherNodeService.getAvailabilityETag(SITE, FROM.minusDays(1), TO, BookingService.AVAILABLE_DAYS));
+    }
+
+    @DisplayName("Test bookings of different sites do not share nights")
+    @Test
+    public void reserve_sites() {
+        //Given
+        final BookingReserveVo vo = new BookingReserveVo(EMAIL, FIRST_NAME, LAST_NAME, FROM, TO);
+        final BookingReserveVo otherSite = new BookingReserveVo("other@foo.com", FIRST_NAME, LAST_NAME, FROM, TO,
+                SITE2);
+        final BookingReserveVo unknownSite = new BookingReserveVo("unknown@foo.com", FIRST_NAME, LAST_NAME, FROM, TO,
+                "south");
+
+        //When
+        service2.reserve(vo);
+        service2.reserve(otherSite);
+
+        //Then
+        final ServiceException e = assertThrows(ServiceException.class, () -> service2.reserve(unknownSite));
+        assertEquals(Error.SITE_NOT_FOUND, e.getError());
+        assertEquals(List.of(TO), service2.getAvailableDays(SITE, FROM, TO.plusDays(1)));
+        assertEquals(List.of(TO), service2.getAvailableDays(SITE2, FROM, TO.plusDays(1)));
+        assertNotEquals(BookingService.getNightLockKey(SITE, FROM), BookingService.getNightLockKey(SITE2, FROM));
+
+        //When
+        service2.delete(BOOKING_ID2);
+
+        //Then
+        assertEquals(List.of(FROM, FROM.plusDays(1), TO), service2.getAvailableDays(SITE, FROM, TO.plusDays(1)));
+        assertEquals(List.of(TO), service2.getAvailableDays(SITE2, FROM, TO.plusDays(1)));
+    }
 }
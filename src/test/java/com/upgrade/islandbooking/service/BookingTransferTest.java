@@ -0,0 +1,196 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ServiceException;
+import com.upgrade.islandbooking.service.BookingTransfer.Format;
+import com.upgrade.islandbooking.vo.BookingBatchResultVo;
+import com.upgrade.islandbooking.vo.BookingImportErrorVo;
+import com.upgrade.islandbooking.vo.BookingImportResultVo;
+import com.upgrade.islandbooking.vo.BookingImportVo;
+import com.upgrade.islandbooking.vo.BookingReserveVo;
+import com.upgrade.islandbooking.vo.BookingVo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import javax.validation.Validation;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+
+@ExtendWith(MockitoExtension.class)
+public class BookingTransferTest {
+
+    private static final LocalDate FROM = LocalDate.now().plusDays(1);
+    private static final LocalDate TO = FROM.plusDays(2);
+    private static final String BOOKING_ID = "0190a4b8-2c1e-7a3f-8b2d-4c5e6f708192";
+
+    @Mock
+    private BookingService bookingService;
+
+    private BookingTransfer transfer;
+
+    @BeforeEach
+    public void setUp() {
+        transfer = new BookingTransfer(bookingService, Validation.buildDefaultValidatorFactory().getValidator(),
+                Jackson2ObjectMapperBuilder.json().build(), 2, 10);
+    }
+
+    @DisplayName("Test the exported bookings are imported back")
+    @Test
+    @SuppressWarnings("unchecked")
+    public void exportAndImport() throws Exception {
+        //Given
+        final BookingVo booking = new BookingVo(BOOKING_ID, "default", "javier@gmail.com", "Javier",
+                "Di Gruttola, \"Jr\"", FROM, TO);
+        Mockito.when(bookingService.exportBookings(any(Consumer.class))).thenAnswer(invocation -> {
+            ((Consumer<BookingVo>) invocation.getArgument(0)).accept(booking);
+            return 1L;
+        });
+        Mockito.when(bookingService.reserveBatch(anyList()))
+                .thenReturn(List.of(BookingBatchResultVo.created(BOOKING_ID)));
+        final ArgumentCaptor<List<BookingReserveVo>> imported = ArgumentCaptor.forClass(List.class);
+        final BookingReserveVo expected = new BookingImportVo(BOOKING_ID, booking.getPersonEmail(),
+                booking.getPersonFirstName(), booking.getPersonLastName(), FROM, TO, booking.getSite());
+
+        for (Format format : Format.values()) {
+            //When
+            final StringWriter writer = new StringWriter();
+            transfer.export(format, writer);
+            final BookingImportResultVo result = transfer.importBookings(format, new StringReader(writer.toString()));
+
+            //Then
+            assertEquals(1, result.getCreated());
+            assertEquals(0, result.getRejected());
+        }
+        Mockito.verify(bookingService, Mockito.times(2)).reserveBatch(imported.capture());
+        imported.getAllValues().forEach(bookings -> assertEquals(List.of(expected), bookings));
+    }
+
+    @DisplayName("Test a booking already started is imported back")
+    @Test
+    @SuppressWarnings("unchecked")
+    public void exportAndImport_startedBooking() throws Exception {
+        //Given
+        final LocalDate from = LocalDate.now().minusDays(1);
+        final BookingVo booking = new BookingVo(BOOKING_ID, "default", "javier@gmail.com", "Javier", "Di Gruttola",
+                from, from.plusDays(2));
+        Mockito.when(bookingService.exportBookings(any(Consumer.class))).thenAnswer(invocation -> {
+            ((Consumer<BookingVo>) invocation.getArgument(0)).accept(booking);
+            return 1L;
+        });
+        Mockito.when(bookingService.reserveBatch(anyList()))
+                .thenReturn(List.of(BookingBatchResultVo.created(BOOKING_ID)));
+
+        for (Format format : Format.values()) {
+            //When
+            final StringWriter writer = new StringWriter();
+            transfer.export(format, writer);
+            final BookingImportResultVo result = transfer.importBookings(format, new StringReader(writer.toString()));
+
+            //Then
+            assertEquals(1, result.getCreated());
+            assertEquals(List.of(), result.getErrors());
+        }
+    }
+
+    @DisplayName("Test the import creates the bookings in chunks and reports the rejected records")
+    @Test
+    @SuppressWarnings("unchecked")
+    public void importBookings() throws Exception {
+        //Given
+        final String csv = "to,from,personEmail,personFirstName,personLastName\n"
+                + TO + "," + FROM + ",one@gmail.com,One,Person\n"
+                + TO + ",tomorrow,two@gmail.com,Two,Person\n"
+                + "\n"
+                + TO + "," + FROM + ",three@gmail.com,Three,Person\n"
+                + TO + "," + FROM + ",not an email,Four,Person\n"
+                + TO + "," + FROM + ",five@gmail.com,Five,Person\n";
+        Mockito.when(bookingService.reserveBatch(anyList()))
+                .thenReturn(List.of(BookingBatchResultVo.created(BOOKING_ID),
+                        BookingBatchResultVo.rejected(Error.DATE_RANGE_IS_BEING_USED)))
+                .thenReturn(List.of(BookingBatchResultVo.created(BOOKING_ID)));
+        final ArgumentCaptor<List<BookingReserveVo>> chunks = ArgumentCaptor.forClass(List.class);
+
+        //When
+        final BookingImportResultVo result = transfer.importBookings(Format.CSV, new StringReader(csv));
+
+        //Then
+        Mockito.verify(bookingService, Mockito.times(2)).reserveBatch(chunks.capture());
+        final List<String> emails = new ArrayList<>();
+        chunks.getAllValues().forEach(chunk -> chunk.forEach(booking -> emails.add(booking.getPersonEmail())));
+        assertEquals(List.of("one@gmail.com", "three@gmail.com", "five@gmail.com"), emails);
+        assertEquals(2, result.getCreated());
+        assertEquals(3, result.getRejected());
+        assertEquals(List.of(new BookingImportErrorVo(2, Error.BOOKING_NOTVALID_REQUEST),
+                new BookingImportErrorVo(3, Error.DATE_RANGE_IS_BEING_USED),
+                new BookingImportErrorVo(4, Error.BOOKING_NOTVALID_REQUEST)), result.getErrors());
+    }
+
+    @DisplayName("Test the bookings of a chunk rolled back are retried one by one")
+    @Test
+    public void importBookings_chunkRejected() throws Exception {
+        //Given
+        final String ndjson = "{\"personEmail\":\"one@gmail.com\",\"personFirstName\":\"One\",\"personLastName\":"
+                + "\"Person\",\"from\":\"" + FROM + "\",\"to\":\"" + TO + "\"}\n"
+                + "{\"personEmail\":\"two@gmail.com\",\"personFirstName\":\"Two\",\"personLastName\":"
+                + "\"Person\",\"from\":\"" + TO + "\",\"to\":\"" + TO.plusDays(2) + "\"}\n"
+                + "not json\n";
+        Mockito.when(bookingService.reserveBatch(anyList()))
+                .thenThrow(new ServiceException(Error.PERSON_HAS_BOOKING, new Object[]{"two@gmail.com"}))
+                .thenReturn(List.of(BookingBatchResultVo.created(BOOKING_ID)))
+                .thenThrow(new ServiceException(Error.PERSON_HAS_BOOKING, new Object[]{"two@gmail.com"}));
+
+        //When
+        final BookingImportResultVo result = transfer.importBookings(Format.NDJSON, new StringReader(ndjson));
+
+        //Then
+        Mockito.verify(bookingService, Mockito.times(3)).reserveBatch(anyList());
+        assertEquals(1, result.getCreated());
+        assertEquals(2, result.getRejected());
+        assertEquals(List.of(new BookingImportErrorVo(2, Error.PERSON_HAS_BOOKING),
+                new BookingImportErrorVo(3, Error.BOOKING_NOTVALID_REQUEST)), result.getErrors());
+    }
+
+    @DisplayName("Test a booking ID that is not valid rejects the record")
+    @Test
+    public void importBookings_invalidBookingId() throws Exception {
+        //Given
+        final String csv = "bookingId,from,to,personEmail,personFirstName,personLastName\n"
+                + "not-an-id," + FROM + "," + TO + ",one@gmail.com,One,Person\n";
+
+        //When
+        final BookingImportResultVo result = transfer.importBookings(Format.CSV, new StringReader(csv));
+
+        //Then
+        Mockito.verify(bookingService, Mockito.never()).reserveBatch(anyList());
+        assertEquals(List.of(new BookingImportErrorVo(1, Error.BOOKING_NOTVALID_REQUEST)), result.getErrors());
+    }
+
+    @DisplayName("Test a null record rejects the record")
+    @Test
+    public void importBookings_nullRecord() throws Exception {
+        //Given
+        final String lines = "null\n";
+
+        //When
+        final BookingImportResultVo result = transfer.importBookings(Format.NDJSON, new StringReader(lines));
+
+        //Then
+        Mockito.verify(bookingService, Mockito.never()).reserveBatch(anyList());
+        assertEquals(List.of(new BookingImportErrorVo(1, Error.BOOKING_NOTVALID_REQUEST)), result.getErrors());
+    }
+}
@@ -0,0 +1,159 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ServiceException;
+import com.upgrade.islandbooking.service.BookingMetrics.Operation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.redisson.Redisson;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+import redis.embedded.RedisServer;
+
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IdempotencyStoreTest {
+
+    private static final String BOOKING_ID = "0190a4b8-2c1e-7a3f-8b2d-4c5e6f708192";
+    private static final String REQUEST = "BookingReserveVo(personEmail=javi.digru@foo.com)";
+
+    private RedisServer redisServer;
+
+    private RedissonClient redissonClient;
+
+    private IdempotencyStore store;
+
+    @BeforeEach
+    public void setUp() {
+        redisServer = new RedisServer(6379);
+        redisServer.start();
+        redissonClient = Redisson.create();
+        store = new IdempotencyStore(redissonClient, 60000L, 60000L, 5000L);
+    }
+
+    @AfterEach
+    public void afterTest() {
+        redissonClient.shutdown();
+        redisServer.stop();
+    }
+
+    @DisplayName("Test retries of a request with the same idempotency key")
+    @Test
+    public void execute_replay() {
+        //Given
+        final AtomicInteger executions = new AtomicInteger();
+        final LocalDate from = LocalDate.now().plusDays(1);
+
+        //When
+        final String first = store.execute("key-1", Operation.RESERVE, REQUEST, () -> {
+            executions.incrementAndGet();
+            return BOOKING_ID;
+        });
+        final String retry = store.execute("key-1", Operation.RESERVE, REQUEST, () -> {
+            executions.incrementAndGet();
+            return "other";
+        });
+        assertThrows(ServiceException.class, () -> store.execute("key-2", Operation.RESERVE, REQUEST, () -> {
+            executions.incrementAndGet();
+            throw new ServiceException(Error.DATE_RANGE_IS_BEING_USED, new Object[]{from, from.plusDays(1)});
+        }));
+        final ServiceException failedRetry = assertThrows(ServiceException.class,
+                () -> store.execute("key-2", Operation.RESERVE, REQUEST, () -> BOOKING_ID));
+        final ServiceException reused = assertThrows(ServiceException.class,
+                () -> store.execute("key-1", Operation.UPDATE, REQUEST, () -> BOOKING_ID));
+
+        //Then
+        assertEquals(BOOKING_ID, first);
+        assertEquals(BOOKING_ID, retry);
+        assertEquals(2, executions.get());
+        assertEquals(Error.DATE_RANGE_IS_BEING_USED, failedRetry.getError());
+        assertArrayEquals(new Object[]{from.toString(), from.plusDays(1).toString()}, failedRetry.getParameters());
+        assertEquals(Error.IDEMPOTENCY_KEY_REUSED, reused.getError());
+        assertEquals(BOOKING_ID, store.execute(null, Operation.RESERVE, REQUEST, () -> BOOKING_ID));
+    }
+
+    @DisplayName("Test a retry of a request rejected by a transient error is executed again")
+    @Test
+    public void execute_transientError() {
+        //Given
+        assertThrows(ServiceException.class, () -> store.execute("key-4", Operation.RESERVE, REQUEST, () -> {
+            throw new ServiceException(Error.LOCK_CONTENTION, new Object[]{1L});
+        }));
+
+        //When
+        final String retry = store.execute("key-4", Operation.RESERVE, REQUEST, () -> BOOKING_ID);
+
+        //Then
+        assertEquals(BOOKING_ID, retry);
+        assertEquals(BOOKING_ID, store.execute("key-4", Operation.RESERVE, REQUEST, () -> "other"));
+    }
+
+    @DisplayName("Test a retry while the first attempt is in progress")
+    @Test
+    public void execute_inFlight() throws Exception {
+        //Given
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<String> first = CompletableFuture.supplyAsync(
+                () -> store.execute("key-3", Operation.RESERVE, REQUEST, () -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return BOOKING_ID;
+                }));
+        started.await(5, TimeUnit.SECONDS);
+
+        //When
+        final CompletableFuture<String> retry = CompletableFuture.supplyAsync(
+                () -> store.execute("key-3", Operation.RESERVE, REQUEST, () -> "other"));
+        Thread.sleep(200L);
+        release.countDown();
+
+        //Then
+        assertEquals(BOOKING_ID, first.get(5, TimeUnit.SECONDS));
+        assertEquals(BOOKING_ID, retry.get(5, TimeUnit.SECONDS));
+    }
+
+    @DisplayName("Test the booking ID is returned when its result cannot be stored")
+    @Test
+    @SuppressWarnings("unchecked")
+    public void execute_resultNotStored() {
+        //Given
+        final RedissonClient failingClient = mock(RedissonClient.class);
+        final RBucket<Object> bucket = mock(RBucket.class);
+        when(failingClient.getBucket(anyString(), any())).thenReturn(bucket);
+        when(bucket.trySet(any(), anyLong(), any())).thenReturn(true);
+        doThrow(new RedisException("Connection lost")).when(bucket).set(any(), anyLong(), any());
+        final IdempotencyStore failingStore = new IdempotencyStore(failingClient, 60000L, 60000L, 5000L);
+
+        //When
+        final String bookingId = failingStore.execute("key-5", Operation.RESERVE, REQUEST, () -> BOOKING_ID);
+
+        //Then the key is kept in flight, so a retry does not book again
+        assertEquals(BOOKING_ID, bookingId);
+        verify(bucket, never()).delete();
+    }
+}
@@ -0,0 +1,46 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.domain.entity.Booking;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class OccupancyIndexTest {
+
+    private static final String SITE = "default";
+    private static final String SITE2 = "north";
+    private static final LocalDate FROM = LocalDate.now().plusDays(1);
+
+    @DisplayName("Test changes applied while the index is rebuilt are kept")
+    @Test
+    public void rebuild_concurrentChanges() {
+        //Given
+        final OccupancyIndex index = new OccupancyIndex(null);
+        index.occupy(SITE, FROM, FROM.plusDays(1));
+
+        //When
+        index.rebuild(() -> {
+            //Committed after the bookings were read, so they are missing from them
+            index.release(SITE, FROM, FROM.plusDays(1));
+            index.occupy(SITE, FROM.plusDays(4), FROM.plusDays(6));
+            index.occupy(SITE2, FROM, FROM.plusDays(1));
+            index.release(SITE2, FROM, FROM.plusDays(1));
+            return List.of(new Booking(SITE, null, FROM, FROM.plusDays(1)),
+                    new Booking(SITE, null, FROM.plusDays(2), FROM.plusDays(3)));
+        });
+
+        //Then
+        assertEquals(List.of(FROM, FROM.plusDays(1), FROM.plusDays(3), FROM.plusDays(6)),
+                index.getFreeNights(SITE, FROM, FROM.plusDays(7)));
+        assertEquals(List.of(FROM), index.getFreeNights(SITE2, FROM, FROM.plusDays(1)));
+
+        //Once rebuilt, changes are not kept for the next one
+        index.occupy(SITE, FROM, FROM.plusDays(1));
+        index.rebuild(List::of);
+        assertEquals(7, index.getFreeNights(SITE, FROM, FROM.plusDays(7)).size());
+    }
+}
@@ -0,0 +1,156 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.domain.entity.Booking;
+import com.upgrade.islandbooking.domain.entity.Person;
+import com.upgrade.islandbooking.domain.repository.BookingRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import redis.embedded.RedisServer;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class OccupancySnapshotTest {
+
+    private static final LocalDate FROM = LocalDate.now().plusDays(1);
+    private static final String SITE = "default";
+    private static final Person PERSON = new Person("javier@gmail.com", "Javier", "Digruttola");
+
+    @TempDir
+    Path directory;
+
+    private RedisServer redisServer;
+    private RedissonClient redissonClient;
+    private final List<OccupancyIndex> indexes = new ArrayList<>();
+    private final List<AvailabilityChangeBroadcaster> broadcasters = new ArrayList<>();
+    private final List<OccupancySnapshot> snapshots = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        redisServer = new RedisServer(6379);
+        redisServer.start();
+        redissonClient = Redisson.create();
+    }
+
+    @AfterEach
+    public void afterTest() {
+        snapshots.forEach(OccupancySnapshot::shutdown);
+        broadcasters.forEach(AvailabilityChangeBroadcaster::unsubscribe);
+        redissonClient.shutdown();
+        redisServer.stop();
+    }
+
+    /**
+     * @return the broadcaster of a new node, whose index loads the given bookings from the database
+     */
+    private AvailabilityChangeBroadcaster startNode(BookingRepository bookingRepository, boolean load) {
+        final OccupancyIndex occupancyIndex = new OccupancyIndex(bookingRepository);
+        indexes.add(occupancyIndex);
+        final AvailabilityChangeBroadcaster broadcaster = new AvailabilityChangeBroadcaster(occupancyIndex,
+                new AvailabilityCache(100), redissonClient);
+        broadcaster.subscribe();
+        broadcasters.add(broadcaster);
+        final OccupancySnapshot snapshot = new OccupancySnapshot(occupancyIndex, broadcaster, true, load,
+                directory.resolve("occupancy.snapshot").toString(), 60000L);
+        snapshot.init();
+        snapshots.add(snapshot);
+        return broadcaster;
+    }
+
+    private static BookingRepository repositoryWith(Booking... bookings) {
+        final BookingRepository bookingRepository = Mockito.mock(BookingRepository.class);
+        Mockito.when(bookingRepository.findAll()).thenReturn(List.of(bookings));
+        return bookingRepository;
+    }
+
+    @DisplayName("Test a node loads the snapshot written by another one without querying the bookings")
+    @Test
+    public void load_upToDate() {
+        //Given
+        final AvailabilityChangeBroadcaster node1 = startNode(repositoryWith(
+                new Booking(SITE, PERSON, FROM, FROM.plusDays(2))), false);
+        node1.nightsTaken(SITE, FROM.plusDays(3), FROM.plusDays(4));
+        snapshots.get(0).write();
+
+        //When
+        final BookingRepository bookingRepository = repositoryWith();
+        startNode(bookingRepository, true);
+
+        //Then
+        Mockito.verify(bookingRepository, Mockito.never()).findAll();
+        assertEquals(List.of(FROM.plusDays(2), FROM.plusDays(4)),
+                indexes.get(1).getFreeNights(SITE, FROM, FROM.plusDays(5)));
+    }
+
+    @DisplayName("Test a snapshot older than the latest change is reloaded from the database in background")
+    @Test
+    public void load_stale() throws InterruptedException {
+        //Given
+        final Booking booking = new Booking(SITE, PERSON, FROM, FROM.plusDays(2));
+        final AvailabilityChangeBroadcaster node1 = startNode(repositoryWith(booking), false);
+        snapshots.get(0).write();
+        node1.nightsReleased(SITE, FROM, FROM.plusDays(2));
+
+        //When
+        final BookingRepository bookingRepository = repositoryWith();
+        startNode(bookingRepository, true);
+
+        //Then
+        Mockito.verify(bookingRepository, Mockito.timeout(5000)).findAll();
+        //The nights of the snapshot are answered until the index is reloaded
+        final List<LocalDate> freeNights = List.of(FROM, FROM.plusDays(1));
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!freeNights.equals(indexes.get(1).getFreeNights(SITE, FROM, FROM.plusDays(2)))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(freeNights, indexes.get(1).getFreeNights(SITE, FROM, FROM.plusDays(2)));
+    }
+
+    @DisplayName("Test the changes made while a stale snapshot is reloaded are kept, and the index is up to date")
+    @Test
+    public void load_staleWithChanges() throws InterruptedException {
+        //Given
+        final Booking booking = new Booking(SITE, PERSON, FROM, FROM.plusDays(2));
+        final AvailabilityChangeBroadcaster node1 = startNode(repositoryWith(booking), false);
+        snapshots.get(0).write();
+        node1.nightsReleased(SITE, FROM, FROM.plusDays(2));
+        //A booking made by the new node while its index is reloaded, after the bookings were read
+        final BookingRepository bookingRepository = Mockito.mock(BookingRepository.class);
+        Mockito.when(bookingRepository.findAll()).thenAnswer(invocation -> {
+            broadcasters.get(1).nightsTaken(SITE, FROM.plusDays(3), FROM.plusDays(4));
+            return List.of();
+        });
+
+        //When
+        startNode(bookingRepository, true);
+
+        //Then
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (snapshots.get(1).getSequence() != node1.getSequence() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(node1.getSequence(), snapshots.get(1).getSequence());
+        final List<LocalDate> freeNights = List.of(FROM, FROM.plusDays(1), FROM.plusDays(2), FROM.plusDays(4));
+        assertEquals(freeNights, indexes.get(1).getFreeNights(SITE, FROM, FROM.plusDays(5)));
+
+        //When
+        snapshots.get(1).write();
+        final BookingRepository upToDateRepository = repositoryWith();
+        startNode(upToDateRepository, true);
+
+        //Then
+        Mockito.verify(upToDateRepository, Mockito.never()).findAll();
+        assertEquals(freeNights, indexes.get(2).getFreeNights(SITE, FROM, FROM.plusDays(5)));
+    }
+}
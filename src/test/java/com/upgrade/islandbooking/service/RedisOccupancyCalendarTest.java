@@ -0,0 +1,98 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.domain.entity.Booking;
+import com.upgrade.islandbooking.domain.entity.Person;
+import com.upgrade.islandbooking.vo.DateIntervalVo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import redis.embedded.RedisServer;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RedisOccupancyCalendarTest {
+
+    //Not aligned to a byte of the bitmap, so ranges cross byte boundaries
+    private static final LocalDate FROM = LocalDate.ofEpochDay(20005);
+    private static final String SITE = "default";
+    private static final String SITE2 = "north";
+
+    private RedisServer redisServer;
+
+    private RedissonClient redissonClient;
+
+    private RedisOccupancyCalendar calendar;
+
+    @BeforeEach
+    public void setUp() {
+        redisServer = new RedisServer(6379);
+        redisServer.start();
+        redissonClient = Redisson.create();
+        calendar = new RedisOccupancyCalendar(redissonClient);
+    }
+
+    @AfterEach
+    public void afterTest() {
+        redissonClient.shutdown();
+        redisServer.stop();
+    }
+
+    private static Booking newBooking(String site, LocalDate from, LocalDate to) {
+        return new Booking(site, new Person(site + from + "@foo.com", "Javier", "Digruttola"), from, to);
+    }
+
+    @DisplayName("Test rebuilding and reading the calendar")
+    @Test
+    public void rebuild() {
+        //When
+        calendar.rebuild(List.of(SITE, SITE2), List.of(newBooking(SITE, FROM, FROM.plusDays(3)),
+                newBooking(SITE, FROM.plusDays(10), FROM.plusDays(12)), newBooking(SITE2, FROM.plusDays(3),
+                        FROM.plusDays(5))));
+
+        //Then
+        assertTrue(calendar.exists(SITE));
+        assertTrue(calendar.exists(SITE2));
+        assertFalse(calendar.isFree(SITE, FROM.plusDays(2), FROM.plusDays(4), null, null));
+        assertTrue(calendar.isFree(SITE, FROM.plusDays(3), FROM.plusDays(10), null, null));
+        assertTrue(calendar.isFree(SITE, FROM.plusDays(1), FROM.plusDays(4), FROM, FROM.plusDays(3)));
+        assertEquals(List.of(FROM.minusDays(1), FROM.plusDays(3)),
+                calendar.getFreeNights(SITE, FROM.minusDays(1), FROM.plusDays(4)));
+        assertEquals(List.of(new DateIntervalVo(FROM.minusDays(1), FROM), new DateIntervalVo(FROM.plusDays(3),
+                        FROM.plusDays(10)), new DateIntervalVo(FROM.plusDays(12), FROM.plusDays(100))),
+                calendar.getFreeIntervals(SITE, FROM.minusDays(1), FROM.plusDays(100)));
+        assertEquals(List.of(FROM.plusDays(2), FROM.plusDays(5)),
+                calendar.getFreeNights(SITE2, FROM.plusDays(2), FROM.plusDays(6)));
+    }
+
+    @DisplayName("Test occupying and releasing nights")
+    @Test
+    public void occupy_release() {
+        //Given
+        calendar.rebuild(List.of(SITE), List.of());
+
+        //When
+        calendar.occupy(SITE, FROM, FROM.plusDays(3));
+
+        //Then
+        assertTrue(calendar.exists(SITE));
+        assertEquals(List.of(FROM.minusDays(1), FROM.plusDays(3)), calendar.getFreeNights(SITE, FROM.minusDays(1),
+                FROM.plusDays(4)));
+        assertTrue(calendar.isFree(SITE2, FROM, FROM.plusDays(3), null, null));
+
+        //When
+        calendar.release(SITE, FROM.plusDays(1), FROM.plusDays(2));
+
+        //Then
+        assertEquals(List.of(FROM.plusDays(1), FROM.plusDays(3)), calendar.getFreeNights(SITE, FROM,
+                FROM.plusDays(4)));
+        assertTrue(calendar.isFree(SITE, LocalDate.ofEpochDay(-5), LocalDate.ofEpochDay(0), null, null));
+    }
+}
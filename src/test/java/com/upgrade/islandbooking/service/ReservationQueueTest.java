@@ -0,0 +1,105 @@
+package com.upgrade.islandbooking.service;
+
+import com.upgrade.islandbooking.exception.Error;
+import com.upgrade.islandbooking.exception.ServiceException;
+import com.upgrade.islandbooking.vo.BookingReserveVo;
+import com.upgrade.islandbooking.vo.ReservationStatusVo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+
+@ExtendWith(MockitoExtension.class)
+public class ReservationQueueTest {
+
+    private static final LocalDate FROM = LocalDate.now().plusDays(1);
+    private static final LocalDate TO = FROM.plusDays(2);
+    private static final String BOOKING_ID = "0190a4b8-2c1e-7a3f-8b2d-4c5e6f708192";
+
+    @Mock
+    private BookingService bookingService;
+
+    private ReservationQueue queue;
+
+    private ReservationQueue createQueue(int capacity, int workers) {
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final BookingMetrics metrics = new BookingMetrics(registry);
+        queue = new ReservationQueue(bookingService, metrics, new AuditLogger(metrics), registry, capacity, workers,
+                60000L);
+        return queue;
+    }
+
+    private static BookingReserveVo newRequest(String email) {
+        return new BookingReserveVo(email, "Javier", "Digruttola", FROM, TO);
+    }
+
+    @AfterEach
+    public void shutdown() throws InterruptedException {
+        queue.shutdown();
+    }
+
+    @DisplayName("Test async reserve")
+    @Test
+    public void submit() throws Exception {
+        //Given
+        createQueue(10, 2);
+        Mockito.when(bookingService.reserve(any(BookingReserveVo.class)))
+                .thenReturn(BOOKING_ID)
+                .thenThrow(new ServiceException(Error.DATE_RANGE_IS_BEING_USED, new Object[]{FROM, TO}));
+
+        //When
+        final String ticket = queue.submit(newRequest("first@foo.com"));
+        final ReservationStatusVo first = queue.getResult(ticket).get(5, TimeUnit.SECONDS);
+        final String ticket2 = queue.submit(newRequest("second@foo.com"));
+        final ReservationStatusVo second = queue.getResult(ticket2).get(5, TimeUnit.SECONDS);
+
+        //Then
+        assertEquals(ReservationStatusVo.done(ticket, BOOKING_ID), first);
+        assertEquals(ReservationStatusVo.failed(ticket2, Error.DATE_RANGE_IS_BEING_USED), second);
+        final ServiceException e = assertThrows(ServiceException.class, () -> queue.getResult("unknown"));
+        assertEquals(Error.RESERVATION_NOT_FOUND, e.getError());
+    }
+
+    @DisplayName("Test async reserve with the queue full")
+    @Test
+    public void submit_queueFull() throws Exception {
+        //Given
+        createQueue(1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(bookingService.reserve(any(BookingReserveVo.class))).then(invocation -> {
+            release.await();
+            return BOOKING_ID;
+        });
+
+        //When
+        final String running = queue.submit(newRequest("first@foo.com"));
+        for (int i = 0; i < 50 && queue.getDepth() > 0; i++) {
+            Thread.sleep(10L);
+        }
+        final String waiting = queue.submit(newRequest("second@foo.com"));
+        final ServiceException e = assertThrows(ServiceException.class,
+                () -> queue.submit(newRequest("third@foo.com")));
+
+        //Then
+        assertEquals(Error.RESERVATION_QUEUE_FULL, e.getError());
+        assertEquals(1, queue.getDepth());
+        assertFalse(queue.getResult(waiting).isDone());
+
+        release.countDown();
+        assertEquals(ReservationStatusVo.Status.DONE, queue.getResult(running).get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(ReservationStatusVo.Status.DONE, queue.getResult(waiting).get(5, TimeUnit.SECONDS).getStatus());
+    }
+}